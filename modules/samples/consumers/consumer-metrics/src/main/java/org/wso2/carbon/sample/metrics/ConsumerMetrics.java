@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event count, error count and latency metrics of a consumer. Receiving threads only update striped counters and their
+ * own latency recorder, while a background reporter thread collects, logs and exports the metrics of each interval,
+ * so measuring adds no contention and no formatting to the receiving path.
+ * <p/>
+ * Settings can be given as system properties prefixed with "metrics." (ex: -Dmetrics.reportInterval=5000):
+ * reportInterval in milliseconds, warmUpCount events excluded from the summary, dir to export the intervals to and
+ * formats to export as (csv, json and hlog, all by default). Each format is written to the file named after the
+ * consumer with the format's extension in the export directory. Events stamped with a producer id and sequence are
+ * checked for gaps, duplicates and reordering in a window of sequenceWindow sequences per producer, see
+ * {@link SequenceTracker}.
+ */
+public class ConsumerMetrics {
+
+    public static final String PROPERTY_PREFIX = "metrics.";
+
+    private static Log log = LogFactory.getLog(ConsumerMetrics.class);
+
+    private final String name;
+    private final StripedCounter events = new StripedCounter();
+    private final StripedCounter errors = new StripedCounter();
+    private final LatencyRecorder latencies = new LatencyRecorder();
+    private final List<MetricsExporter> exporters = new ArrayList<MetricsExporter>();
+    private SequenceTracker sequences = new SequenceTracker(1 << 16);
+    private long reportInterval = 1000;
+    private long warmUpCount = 0;
+    private File outputDirectory;
+    private ScheduledExecutorService reporter;
+    private Thread shutdownHook;
+
+    // Reporter state, guarded by reportLock
+    private final Object reportLock = new Object();
+    private final DecimalFormat decimalFormat = new DecimalFormat("#.##");
+    private final Histogram measuredLatencies = new Histogram(3);
+    private long lastReportTime;
+    private long lastEvents;
+    private long lastErrors;
+    private long[] lastSequenceTotals = new long[3];
+    private long measuredStartTime = -1;
+    private long measuredStartEvents;
+
+    public ConsumerMetrics(String name) {
+        this.name = name;
+    }
+
+    public static ConsumerMetrics fromSystemProperties(String name) {
+        ConsumerMetrics metrics = new ConsumerMetrics(name);
+        metrics.setReportInterval(getLong("reportInterval", metrics.getReportInterval()));
+        metrics.setWarmUpCount(getLong("warmUpCount", metrics.getWarmUpCount()));
+        metrics.setSequenceWindow((int) getLong("sequenceWindow", metrics.getSequenceWindow()));
+        String directory = getString("dir", null);
+        if (directory != null) {
+            metrics.setOutputDirectory(new File(directory));
+            for (String format : getString("formats", "csv,json,hlog").split(",")) {
+                format = format.trim();
+                if ("csv".equalsIgnoreCase(format)) {
+                    metrics.addExporter(new CsvMetricsExporter());
+                } else if ("json".equalsIgnoreCase(format)) {
+                    metrics.addExporter(new JsonMetricsExporter());
+                } else if ("hlog".equalsIgnoreCase(format)) {
+                    metrics.addExporter(new HistogramLogExporter());
+                } else if (!format.isEmpty()) {
+                    throw new IllegalArgumentException("Unknown metrics format '" + format + "'");
+                }
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Records a received event and its latency.
+     *
+     * @param latency latency in milliseconds
+     */
+    public void recordEvent(long latency) {
+        events.increment();
+        latencies.record(latency);
+    }
+
+    /**
+     * Records received events without a latency.
+     */
+    public void recordEvents(long count) {
+        events.add(count);
+    }
+
+    /**
+     * Records a latency without counting an event, for consumers which measure the latency of a sample of the events.
+     *
+     * @param latency latency in milliseconds
+     */
+    public void recordLatency(long latency) {
+        latencies.record(latency);
+    }
+
+    /**
+     * Records an event which could not be processed.
+     */
+    public void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * Records the producer id and sequence number stamped on a received event.
+     */
+    public void recordSequence(long producerId, long sequence) {
+        sequences.record(producerId, sequence);
+    }
+
+    /**
+     * @return number of events received so far
+     */
+    public long getEventCount() {
+        return events.sum();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return time between two reports in milliseconds
+     */
+    public long getReportInterval() {
+        return reportInterval;
+    }
+
+    public void setReportInterval(long reportInterval) {
+        if (reportInterval < 1) {
+            throw new IllegalArgumentException("Report interval should be positive, but found " + reportInterval);
+        }
+        this.reportInterval = reportInterval;
+    }
+
+    /**
+     * @return number of events received before the measurement starts, which are left out of the summary
+     */
+    public long getWarmUpCount() {
+        return warmUpCount;
+    }
+
+    public void setWarmUpCount(long warmUpCount) {
+        this.warmUpCount = warmUpCount;
+    }
+
+    /**
+     * @return number of sequence numbers per producer checked for duplicates and reordering
+     */
+    public int getSequenceWindow() {
+        return sequences.getWindowSize();
+    }
+
+    /**
+     * Sets the sequence window, which should be done before any sequence is recorded.
+     */
+    public void setSequenceWindow(int sequenceWindow) {
+        if (sequenceWindow != sequences.getWindowSize()) {
+            sequences = new SequenceTracker(sequenceWindow);
+        }
+    }
+
+    public File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    public void setOutputDirectory(File outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Adds an exporter, which writes to the file named after this consumer in the output directory. Should be called
+     * before starting.
+     */
+    public void addExporter(MetricsExporter exporter) {
+        exporters.add(exporter);
+    }
+
+    /**
+     * Starts reporting, if not started yet. The final report is made when stopping or when the JVM shuts down.
+     */
+    public synchronized void start() {
+        if (reporter != null) {
+            return;
+        }
+        if (outputDirectory != null && !outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            log.error("Cannot create the metrics directory " + outputDirectory.getAbsolutePath());
+        }
+        for (Iterator<MetricsExporter> iterator = exporters.iterator(); iterator.hasNext(); ) {
+            MetricsExporter exporter = iterator.next();
+            File file = new File(outputDirectory, name + "." + exporter.getFileExtension());
+            try {
+                exporter.open(file);
+                log.info("Writing " + name + " metrics to " + file.getAbsolutePath());
+            } catch (IOException e) {
+                log.error("Cannot write " + name + " metrics to " + file.getAbsolutePath() + ": " + e.getMessage(), e);
+                iterator.remove();
+            }
+        }
+
+        lastReportTime = System.currentTimeMillis();
+        reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "metrics-reporter-" + name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        reporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    report();
+                } catch (Throwable t) {
+                    log.error("Error when reporting " + name + " metrics", t);
+                }
+            }
+        }, reportInterval, reportInterval, TimeUnit.MILLISECONDS);
+
+        shutdownHook = new Thread() {
+            @Override
+            public void run() {
+                ConsumerMetrics.this.stop();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Stops reporting, reports the last interval and logs a summary of the whole run.
+     */
+    public synchronized void stop() {
+        if (reporter == null) {
+            return;
+        }
+        reporter.shutdown();
+        try {
+            reporter.awaitTermination(reportInterval, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reporter = null;
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ignored) {
+            // Already shutting down
+        }
+
+        synchronized (reportLock) {
+            sequences.flush();
+            report();
+            StringBuilder summary = new StringBuilder("[").append(name).append("] Received ").append(lastEvents)
+                    .append(" events in total");
+            if (measuredStartTime >= 0) {
+                long measuredTime = lastReportTime - measuredStartTime;
+                long measuredEvents = lastEvents - measuredStartEvents;
+                summary.append(", ").append(measuredEvents).append(" events after warm up in ").append(measuredTime)
+                        .append(" ms with throughput of ")
+                        .append(decimalFormat.format(measuredTime > 0 ? measuredEvents * 1000d / measuredTime : 0))
+                        .append(" events per second");
+                appendLatencies(summary, measuredLatencies);
+            }
+            if (sequences.getProducerCount() > 0) {
+                summary.append("; from ").append(sequences.getProducerCount()).append(" producers");
+                appendSequences(summary, lastSequenceTotals[0], lastSequenceTotals[1], lastSequenceTotals[2]);
+            }
+            log.info(summary);
+            for (MetricsExporter exporter : exporters) {
+                exporter.close();
+            }
+        }
+    }
+
+    private void report() {
+        synchronized (reportLock) {
+            long currentTime = System.currentTimeMillis();
+            long totalEvents = events.sum();
+            long totalErrors = errors.sum();
+            Histogram intervalLatencies = latencies.getIntervalHistogram();
+            long[] sequenceTotals = sequences.getTotals();
+            boolean warmUp = totalEvents <= warmUpCount && warmUpCount > 0;
+            MetricsSnapshot snapshot = new MetricsSnapshot(name, lastReportTime, currentTime, totalEvents - lastEvents,
+                    totalEvents, totalErrors - lastErrors, sequenceTotals[0] - lastSequenceTotals[0],
+                    sequenceTotals[1] - lastSequenceTotals[1], sequenceTotals[2] - lastSequenceTotals[2], warmUp,
+                    intervalLatencies);
+            if (!warmUp) {
+                if (measuredStartTime < 0) {
+                    measuredStartTime = lastReportTime;
+                    measuredStartEvents = lastEvents;
+                }
+                measuredLatencies.add(intervalLatencies);
+            }
+            lastReportTime = currentTime;
+            lastEvents = totalEvents;
+            lastErrors = totalErrors;
+            lastSequenceTotals = sequenceTotals;
+
+            if (snapshot.getEvents() > 0 || snapshot.getErrors() > 0) {
+                StringBuilder message = new StringBuilder("[").append(name).append("] Received ")
+                        .append(snapshot.getEvents()).append(" events in ")
+                        .append(snapshot.getEndTime() - snapshot.getStartTime())
+                        .append(" ms with throughput of ").append(decimalFormat.format(snapshot.getThroughput()))
+                        .append(" events per second, total ").append(totalEvents);
+                appendLatencies(message, intervalLatencies);
+                if (snapshot.getErrors() > 0) {
+                    message.append(", errors: ").append(snapshot.getErrors());
+                }
+                if (sequences.getProducerCount() > 0) {
+                    appendSequences(message, snapshot.getGaps(), snapshot.getDuplicates(), snapshot.getOutOfOrder());
+                }
+                if (warmUp) {
+                    message.append(" (warm up)");
+                }
+                log.info(message);
+            }
+            for (MetricsExporter exporter : exporters) {
+                exporter.export(snapshot);
+            }
+        }
+    }
+
+    private void appendLatencies(StringBuilder builder, Histogram histogram) {
+        if (histogram.getTotalCount() > 0) {
+            builder.append("; Latency(ms) - Avg: ").append(decimalFormat.format(histogram.getMean()))
+                    .append(", p50: ").append(histogram.getValueAtPercentile(50))
+                    .append(", p90: ").append(histogram.getValueAtPercentile(90))
+                    .append(", p99: ").append(histogram.getValueAtPercentile(99))
+                    .append(", p99.9: ").append(histogram.getValueAtPercentile(99.9))
+                    .append(", Max: ").append(histogram.getMaxValue());
+        }
+    }
+
+    private void appendSequences(StringBuilder builder, long gaps, long duplicates, long outOfOrder) {
+        builder.append("; Sequence - gaps: ").append(gaps).append(", duplicates: ").append(duplicates)
+                .append(", out of order: ").append(outOfOrder);
+    }
+
+    protected static String getString(String name, String defaultValue) {
+        String value = System.getProperty(PROPERTY_PREFIX + name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    protected static long getLong(String name, long defaultValue) {
+        String value = getString(name, null);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+}
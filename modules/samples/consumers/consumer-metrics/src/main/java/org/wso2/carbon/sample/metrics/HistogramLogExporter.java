@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.metrics;
+
+import org.HdrHistogram.HistogramLogWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Writes the latency histogram of each interval in the HdrHistogram interval log format, which can be plotted with
+ * the HdrHistogram log tools.
+ */
+public class HistogramLogExporter implements MetricsExporter {
+
+    private PrintStream printStream;
+    private HistogramLogWriter logWriter;
+    private long baseTime;
+
+    @Override
+    public void open(File file) throws IOException {
+        printStream = new PrintStream(new FileOutputStream(file), true, "UTF-8");
+        logWriter = new HistogramLogWriter(printStream);
+        baseTime = System.currentTimeMillis();
+        logWriter.outputLogFormatVersion();
+        logWriter.outputStartTime(baseTime);
+        logWriter.setBaseTime(baseTime);
+        logWriter.outputLegend();
+    }
+
+    @Override
+    public void export(MetricsSnapshot snapshot) {
+        // Latencies are in milliseconds, so they are written without scaling
+        logWriter.outputIntervalHistogram((snapshot.getStartTime() - baseTime) / 1000d,
+                (snapshot.getEndTime() - baseTime) / 1000d, snapshot.getLatencies(), 1);
+    }
+
+    @Override
+    public void close() {
+        printStream.close();
+    }
+
+    @Override
+    public String getFileExtension() {
+        return "hlog";
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.metrics;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Writes one JSON object per interval and line, which tools reading JSON lines can load directly.
+ */
+public class JsonMetricsExporter implements MetricsExporter {
+
+    private PrintWriter writer;
+
+    @Override
+    public void open(File file) throws IOException {
+        writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    }
+
+    @Override
+    public void export(MetricsSnapshot snapshot) {
+        Histogram latencies = snapshot.getLatencies();
+        writer.println(String.format(Locale.US, "{\"name\":\"%s\",\"startTime\":%d,\"endTime\":%d,\"warmUp\":%b,"
+                        + "\"events\":%d,\"totalEvents\":%d,\"errors\":%d,\"throughput\":%.2f,\"latency\":{"
+                        + "\"count\":%d,\"mean\":%.3f,\"p50\":%d,\"p90\":%d,\"p99\":%d,\"p99.9\":%d,\"max\":%d},"
+                        + "\"gaps\":%d,\"duplicates\":%d,\"outOfOrder\":%d}",
+                snapshot.getName(), snapshot.getStartTime(), snapshot.getEndTime(), snapshot.isWarmUp(),
+                snapshot.getEvents(), snapshot.getTotalEvents(), snapshot.getErrors(), snapshot.getThroughput(),
+                latencies.getTotalCount(), latencies.getMean(), latencies.getValueAtPercentile(50),
+                latencies.getValueAtPercentile(90), latencies.getValueAtPercentile(99),
+                latencies.getValueAtPercentile(99.9), latencies.getMaxValue(), snapshot.getGaps(),
+                snapshot.getDuplicates(), snapshot.getOutOfOrder()));
+        writer.flush();
+    }
+
+    @Override
+    public void close() {
+        writer.close();
+    }
+
+    @Override
+    public String getFileExtension() {
+        return "json";
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Finds the "timestamp" fields and "event" objects of a JSON body while its bytes arrive, without decoding the body
+ * into a String. The body can be one event or an array of events. The scanner follows JSON strings, so only object
+ * keys match, and a timestamp value may be split over several reads.
+ * <p/>
+ * Each timestamp found records a latency against the receive time. The events of a body are counted once the whole
+ * body is scanned, as the number of "event" keys or, for custom mappings without them, of timestamps. Events stamped
+ * with "producerId" and "sequence" attributes record their sequence, see {@link SequenceTracker}.
+ */
+public class JsonTimestampScanner {
+
+    private static final byte[] TIMESTAMP = {'t', 'i', 'm', 'e', 's', 't', 'a', 'm', 'p'};
+    private static final byte[] EVENT = {'e', 'v', 'e', 'n', 't'};
+    private static final byte[] PRODUCER_ID = {'p', 'r', 'o', 'd', 'u', 'c', 'e', 'r', 'I', 'd'};
+    private static final byte[] SEQUENCE = {'s', 'e', 'q', 'u', 'e', 'n', 'c', 'e'};
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int OUTSIDE_STRING = 0;
+    private static final int IN_STRING = 1;
+    private static final int AFTER_STRING = 2;
+    private static final int BEFORE_NUMBER = 3;
+    private static final int IN_NUMBER = 4;
+
+    private static final int TIMESTAMP_KEY = 0;
+    private static final int PRODUCER_ID_KEY = 1;
+    private static final int SEQUENCE_KEY = 2;
+
+    private final ConsumerMetrics metrics;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private long receivedTime;
+    private int state;
+    private boolean escaped;
+    private int timestampMatch;
+    private int eventMatch;
+    private int producerIdMatch;
+    private int sequenceMatch;
+    private int numberKey;
+    private boolean quotedNumber;
+    private long number;
+    private int events;
+    private int timestamps;
+    private boolean hasProducerId;
+    private long producerId;
+    private boolean hasSequence;
+    private long sequence;
+
+    public JsonTimestampScanner(ConsumerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Prepares the scanner for a new body.
+     *
+     * @param receivedTime time the body was received at, to measure the latency of its events against
+     */
+    public void reset(long receivedTime) {
+        this.receivedTime = receivedTime;
+        state = OUTSIDE_STRING;
+        events = 0;
+        timestamps = 0;
+        hasProducerId = false;
+        hasSequence = false;
+    }
+
+    /**
+     * Reads and scans the next part of the body through the scanner's own buffer.
+     *
+     * @return number of bytes read, or -1 at the end of the body
+     */
+    public int read(InputStream in) throws IOException {
+        int read = in.read(buffer);
+        if (read > 0) {
+            scan(buffer, 0, read);
+        }
+        return read;
+    }
+
+    public void scan(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            byte b = bytes[i];
+            switch (state) {
+                case OUTSIDE_STRING:
+                    if (b == '"') {
+                        startString();
+                    }
+                    break;
+                case IN_STRING:
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                        timestampMatch = -1;
+                        eventMatch = -1;
+                        producerIdMatch = -1;
+                        sequenceMatch = -1;
+                    } else if (b == '"') {
+                        state = AFTER_STRING;
+                    } else {
+                        timestampMatch = match(TIMESTAMP, timestampMatch, b);
+                        eventMatch = match(EVENT, eventMatch, b);
+                        producerIdMatch = match(PRODUCER_ID, producerIdMatch, b);
+                        sequenceMatch = match(SEQUENCE, sequenceMatch, b);
+                    }
+                    break;
+                case AFTER_STRING:
+                    if (b == ':') {
+                        if (timestampMatch == TIMESTAMP.length) {
+                            startNumber(TIMESTAMP_KEY);
+                        } else if (producerIdMatch == PRODUCER_ID.length) {
+                            startNumber(PRODUCER_ID_KEY);
+                        } else if (sequenceMatch == SEQUENCE.length) {
+                            startNumber(SEQUENCE_KEY);
+                        } else {
+                            if (eventMatch == EVENT.length) {
+                                events++;
+                            }
+                            state = OUTSIDE_STRING;
+                        }
+                    } else if (!isWhitespace(b)) {
+                        // The string was a value, b is a separator
+                        state = OUTSIDE_STRING;
+                    }
+                    break;
+                case BEFORE_NUMBER:
+                    if (b >= '0' && b <= '9') {
+                        number = b - '0';
+                        state = IN_NUMBER;
+                    } else if (b == '"' && !quotedNumber) {
+                        quotedNumber = true;
+                    } else if (!isWhitespace(b)) {
+                        // Not a number, skip the value
+                        if (quotedNumber) {
+                            startString();
+                        } else {
+                            state = OUTSIDE_STRING;
+                            i--;
+                        }
+                    }
+                    break;
+                default:
+                    if (b >= '0' && b <= '9') {
+                        number = number * 10 + (b - '0');
+                    } else {
+                        recordNumber();
+                        if (quotedNumber && b != '"') {
+                            // The rest of a string value such as "123abc"
+                            startString();
+                        } else {
+                            state = OUTSIDE_STRING;
+                        }
+                    }
+            }
+        }
+    }
+
+    /**
+     * Counts the events of the scanned body.
+     *
+     * @return false if the body had neither events nor timestamps
+     */
+    public boolean finish() {
+        if (state == IN_NUMBER) {
+            recordNumber();
+        }
+        int count = Math.max(events, timestamps);
+        if (count == 0) {
+            metrics.recordError();
+            return false;
+        }
+        metrics.recordEvents(count);
+        return true;
+    }
+
+    /**
+     * Records the body as failed, when it could not be read completely.
+     */
+    public void fail() {
+        metrics.recordError();
+    }
+
+    private void startString() {
+        state = IN_STRING;
+        escaped = false;
+        timestampMatch = 0;
+        eventMatch = 0;
+        producerIdMatch = 0;
+        sequenceMatch = 0;
+    }
+
+    private void startNumber(int key) {
+        numberKey = key;
+        quotedNumber = false;
+        state = BEFORE_NUMBER;
+    }
+
+    private void recordNumber() {
+        switch (numberKey) {
+            case TIMESTAMP_KEY:
+                timestamps++;
+                metrics.recordLatency(receivedTime - number);
+                return;
+            case PRODUCER_ID_KEY:
+                producerId = number;
+                hasProducerId = true;
+                break;
+            default:
+                sequence = number;
+                hasSequence = true;
+        }
+        // An event's producer id and sequence may come in either order
+        if (hasProducerId && hasSequence) {
+            metrics.recordSequence(producerId, sequence);
+            hasProducerId = false;
+            hasSequence = false;
+        }
+    }
+
+    /**
+     * @return number of bytes of the key matched including b, or -1 if the string does not match the key
+     */
+    private static int match(byte[] key, int matched, byte b) {
+        if (matched < 0 || matched >= key.length || key[matched] != b) {
+            return -1;
+        }
+        return matched + 1;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+}
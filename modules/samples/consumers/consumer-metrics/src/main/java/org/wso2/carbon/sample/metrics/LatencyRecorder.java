@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Records latencies into a histogram per recording thread, so recording threads never contend with each other. The
+ * reporter collects the values recorded since its last collection from all the threads into one histogram.
+ */
+public class LatencyRecorder {
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final List<ThreadRecorder> threadRecorders = new CopyOnWriteArrayList<ThreadRecorder>();
+    private final ThreadLocal<ThreadRecorder> threadRecorder = new ThreadLocal<ThreadRecorder>() {
+        @Override
+        protected ThreadRecorder initialValue() {
+            ThreadRecorder recorder = new ThreadRecorder();
+            threadRecorders.add(recorder);
+            return recorder;
+        }
+    };
+    private final Histogram intervalHistogram = new Histogram(SIGNIFICANT_DIGITS);
+
+    /**
+     * @param latency latency in milliseconds, negative values caused by clock differences are recorded as zero
+     */
+    public void record(long latency) {
+        threadRecorder.get().recorder.recordValue(Math.max(0, latency));
+    }
+
+    /**
+     * Collects the latencies recorded by all threads since the previous call. Should only be called by one thread.
+     *
+     * @return the latencies of the interval, valid until the next call
+     */
+    public Histogram getIntervalHistogram() {
+        intervalHistogram.reset();
+        for (ThreadRecorder recorder : threadRecorders) {
+            recorder.intervalHistogram = recorder.recorder.getIntervalHistogram(recorder.intervalHistogram);
+            intervalHistogram.add(recorder.intervalHistogram);
+        }
+        return intervalHistogram;
+    }
+
+    private static class ThreadRecorder {
+        private final SingleWriterRecorder recorder = new SingleWriterRecorder(SIGNIFICANT_DIGITS);
+        private Histogram intervalHistogram;
+    }
+}
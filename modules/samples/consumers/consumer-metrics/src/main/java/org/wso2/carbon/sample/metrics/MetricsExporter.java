@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.metrics;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes the snapshots of a consumer to a file. Exporters are called by the reporter thread only.
+ */
+public interface MetricsExporter {
+
+    void open(File file) throws IOException;
+
+    void export(MetricsSnapshot snapshot);
+
+    void close();
+
+    /**
+     * @return extension of the files written by this exporter
+     */
+    String getFileExtension();
+}
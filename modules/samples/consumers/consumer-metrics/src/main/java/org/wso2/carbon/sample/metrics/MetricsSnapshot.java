@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.metrics;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Metrics of one reporting interval of a consumer.
+ */
+public class MetricsSnapshot {
+
+    private final String name;
+    private final long startTime;
+    private final long endTime;
+    private final long events;
+    private final long totalEvents;
+    private final long errors;
+    private final long gaps;
+    private final long duplicates;
+    private final long outOfOrder;
+    private final boolean warmUp;
+    private final Histogram latencies;
+
+    public MetricsSnapshot(String name, long startTime, long endTime, long events, long totalEvents, long errors,
+                           long gaps, long duplicates, long outOfOrder, boolean warmUp, Histogram latencies) {
+        this.name = name;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.events = events;
+        this.totalEvents = totalEvents;
+        this.errors = errors;
+        this.gaps = gaps;
+        this.duplicates = duplicates;
+        this.outOfOrder = outOfOrder;
+        this.warmUp = warmUp;
+        this.latencies = latencies;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return start of the interval in milliseconds since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return end of the interval in milliseconds since the epoch
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * @return number of events received in the interval
+     */
+    public long getEvents() {
+        return events;
+    }
+
+    /**
+     * @return number of events received since the consumer started
+     */
+    public long getTotalEvents() {
+        return totalEvents;
+    }
+
+    /**
+     * @return number of events in the interval which could not be processed
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return number of sequence numbers found missing in the interval, see {@link SequenceTracker}
+     */
+    public long getGaps() {
+        return gaps;
+    }
+
+    /**
+     * @return number of events in the interval with a sequence number already received
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return number of events in the interval received after an event with a higher sequence number
+     */
+    public long getOutOfOrder() {
+        return outOfOrder;
+    }
+
+    /**
+     * @return true if the consumer had not received its warm up events by the end of the interval
+     */
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    /**
+     * @return events per second in the interval
+     */
+    public double getThroughput() {
+        return endTime > startTime ? events * 1000d / (endTime - startTime) : 0;
+    }
+
+    /**
+     * @return latencies in milliseconds recorded in the interval, which are only valid while the snapshot is exported
+     */
+    public Histogram getLatencies() {
+        return latencies;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Detects lost, duplicated and reordered events from the producer id and sequence number the performance producers
+ * stamp on them. Each producer gets a sliding window of one bit per sequence number. A sequence seen twice in the
+ * window is a duplicate, a sequence below the highest one seen is out of order, and a sequence still unseen when the
+ * window slides past it is a gap. A sequence older than the window counts as out of order, as it can no longer be
+ * told apart from a duplicate, so the window should be wider than the reordering expected.
+ * <p/>
+ * Events of one producer may arrive on several threads, so each window is locked while it is updated. Different
+ * producers do not contend.
+ */
+public class SequenceTracker {
+
+    /**
+     * Attribute names which carry the stamp in the events.
+     */
+    public static final String PRODUCER_ID_ATTRIBUTE = "producerId";
+    public static final String SEQUENCE_ATTRIBUTE = "sequence";
+
+    private final ConcurrentMap<Long, ProducerWindow> producers = new ConcurrentHashMap<Long, ProducerWindow>();
+    private final int windowSize;
+
+    /**
+     * @param windowSize number of sequence numbers tracked per producer, rounded up to a multiple of 64
+     */
+    public SequenceTracker(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Sequence window should be positive, but found " + windowSize);
+        }
+        this.windowSize = (windowSize + 63) & ~63;
+    }
+
+    public void record(long producerId, long sequence) {
+        ProducerWindow window = producers.get(producerId);
+        if (window == null) {
+            ProducerWindow newWindow = new ProducerWindow(windowSize);
+            window = producers.putIfAbsent(producerId, newWindow);
+            if (window == null) {
+                window = newWindow;
+            }
+        }
+        window.record(sequence);
+    }
+
+    /**
+     * Counts the sequence numbers still unseen below the highest sequence of each producer as gaps, for the final
+     * report. Events received afterwards from the same producers count as out of order.
+     */
+    public void flush() {
+        for (ProducerWindow window : producers.values()) {
+            window.flush();
+        }
+    }
+
+    /**
+     * @return number of producers seen
+     */
+    public int getProducerCount() {
+        return producers.size();
+    }
+
+    /**
+     * @return gaps, duplicates and out of order events of all producers so far, in that order
+     */
+    public long[] getTotals() {
+        long[] totals = new long[3];
+        for (ProducerWindow window : producers.values()) {
+            window.addTotals(totals);
+        }
+        return totals;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    private static class ProducerWindow {
+        private final long[] words;
+        private final int mask;
+        private long base = -1;
+        private long highest = -1;
+        private long gaps;
+        private long duplicates;
+        private long outOfOrder;
+
+        private ProducerWindow(int windowSize) {
+            words = new long[windowSize >>> 6];
+            mask = windowSize - 1;
+        }
+
+        private synchronized void record(long sequence) {
+            if (highest < 0) {
+                base = sequence;
+                highest = sequence;
+                set(sequence);
+                return;
+            }
+            if (sequence < base) {
+                outOfOrder++;
+                return;
+            }
+            if (sequence - base >= words.length << 6) {
+                slide(sequence - (words.length << 6) + 1);
+            }
+            int index = (int) (sequence & mask);
+            if ((words[index >>> 6] & (1L << index)) != 0) {
+                duplicates++;
+                return;
+            }
+            words[index >>> 6] |= 1L << index;
+            if (sequence < highest) {
+                outOfOrder++;
+            } else {
+                highest = sequence;
+            }
+        }
+
+        private void set(long sequence) {
+            int index = (int) (sequence & mask);
+            words[index >>> 6] |= 1L << index;
+        }
+
+        /**
+         * Moves the start of the window to newBase, counting the sequences which leave the window unseen as gaps.
+         */
+        private void slide(long newBase) {
+            long end = Math.min(newBase, base + (words.length << 6));
+            long sequence = base;
+            while (sequence < end) {
+                int index = (int) (sequence & mask);
+                if ((index & 63) == 0 && end - sequence >= 64) {
+                    gaps += 64 - Long.bitCount(words[index >>> 6]);
+                    words[index >>> 6] = 0;
+                    sequence += 64;
+                } else {
+                    if ((words[index >>> 6] & (1L << index)) == 0) {
+                        gaps++;
+                    }
+                    words[index >>> 6] &= ~(1L << index);
+                    sequence++;
+                }
+            }
+            // Sequences skipped over without ever being inside the window
+            gaps += newBase - end;
+            base = newBase;
+        }
+
+        private synchronized void flush() {
+            if (highest >= 0 && highest >= base) {
+                slide(highest + 1);
+            }
+        }
+
+        private synchronized void addTotals(long[] totals) {
+            totals[0] += gaps;
+            totals[1] += duplicates;
+            totals[2] += outOfOrder;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter which spreads its updates over several cells, each on its own cache line, so that threads counting
+ * concurrently rarely contend on the same cell. Reading the count sums the cells, which is meant for the reporter and
+ * not for the counting threads. This is the idea of LongAdder, which is not available on Java 7.
+ */
+public class StripedCounter {
+
+    // Longs per cell, so that two cells never share a cache line, even with adjacent line prefetching
+    private static final int PADDING = 16;
+    private static final AtomicInteger nextThreadIndex = new AtomicInteger();
+    private static final ThreadLocal<Integer> threadIndex = new ThreadLocal<Integer>() {
+        @Override
+        protected Integer initialValue() {
+            return nextThreadIndex.getAndIncrement();
+        }
+    };
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param stripes minimum number of cells, rounded up to a power of two
+     */
+    public StripedCounter(int stripes) {
+        int cellCount = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.mask = cellCount - 1;
+        this.cells = new AtomicLongArray(cellCount * PADDING);
+    }
+
+    public void add(long value) {
+        cells.getAndAdd((threadIndex.get() & mask) * PADDING, value);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * @return the sum of the cells, which does not include updates made concurrently with the call
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += PADDING) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+}
@@ -20,6 +20,8 @@ package org.wso2.cep.sample;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.sample.metrics.ConsumerMetrics;
+import org.wso2.carbon.sample.metrics.JsonTimestampScanner;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -28,43 +30,104 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.text.DecimalFormat;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Receives JSON events and measures their throughput and latency. The readMode init parameter selects how request
+ * bodies are read:
+ * <ul>
+ * <li>nonBlocking (default): Servlet 3.1 non-blocking reads, scanning the bytes as they arrive with a
+ * {@link JsonTimestampScanner}. Falls back to streaming when the container does not support non-blocking reads.</li>
+ * <li>streaming: blocking reads, scanning the bytes as they arrive.</li>
+ * <li>buffered: reads the whole body into a String and finds the first timestamp with a regex.</li>
+ * </ul>
+ * The scanning modes count every event of batched JSON array bodies.
+ */
 public class JsonConsumerLogService extends HttpServlet {
 
     private static Log log = LogFactory.getLog(JsonConsumerLogService.class);
 
-    private DecimalFormat decimalFormat = new DecimalFormat("#");
-    private static int elapsedCount = 50000;
-    private static AtomicLong eventCount = new AtomicLong(0);
-    private static long lastTime;
-    private static AtomicLong latency = new AtomicLong(0);
+    private static final String NON_BLOCKING = "nonBlocking";
+    private static final String STREAMING = "streaming";
+    private static final String BUFFERED = "buffered";
+
+    private static final ConsumerMetrics metrics = ConsumerMetrics.fromSystemProperties("JsonConsumerLogService");
+    private final Queue<JsonTimestampScanner> scannerPool = new ConcurrentLinkedQueue<JsonTimestampScanner>();
     private Pattern eventPattern;
+    private String readMode;
 
     public void init() throws ServletException {
         log.info("Logger service initiated");
-        eventCount.set(0);
-        lastTime = System.currentTimeMillis();
         eventPattern = Pattern.compile("(\"timestamp\":(\\d+))");
+        readMode = getInitParameter("readMode") == null ? NON_BLOCKING : getInitParameter("readMode").trim();
+        if (NON_BLOCKING.equals(readMode) && !isNonBlockingReadSupported()) {
+            log.info("The container does not support non-blocking reads, reading requests in streaming mode");
+            readMode = STREAMING;
+        } else if (!NON_BLOCKING.equals(readMode) && !STREAMING.equals(readMode) && !BUFFERED.equals(readMode)) {
+            throw new ServletException("Unknown read mode '" + readMode + "', expected one of " + NON_BLOCKING + ", "
+                    + STREAMING + " or " + BUFFERED);
+        }
+        log.info("Reading requests in " + readMode + " mode");
+        metrics.start();
+    }
+
+    public void destroy() {
+        metrics.stop();
     }
 
     public void doGet(HttpServletRequest request,
                       HttpServletResponse response)
             throws ServletException, IOException {
-        this.inputStreamToString(request.getInputStream());
+        receive(request);
     }
 
     public void doPost(HttpServletRequest request,
                        HttpServletResponse response)
             throws ServletException, IOException {
-        this.inputStreamToString(request.getInputStream());
+        receive(request);
     }
 
-    private void inputStreamToString(InputStream in) throws IOException {
+    private void receive(HttpServletRequest request) throws IOException {
         long receivedTime = System.currentTimeMillis();
+        if (BUFFERED.equals(readMode)) {
+            this.inputStreamToString(request.getInputStream(), receivedTime);
+            return;
+        }
+        JsonTimestampScanner scanner = scannerPool.poll();
+        if (scanner == null) {
+            scanner = new JsonTimestampScanner(metrics);
+        }
+        scanner.reset(receivedTime);
+        if (NON_BLOCKING.equals(readMode) && request.isAsyncSupported()) {
+            NonBlockingJsonReader.read(request.startAsync(), scanner, scannerPool);
+        } else {
+            try {
+                InputStream in = request.getInputStream();
+                while (scanner.read(in) != -1) {
+                    // Scanned while reading
+                }
+                if (!scanner.finish()) {
+                    log.error("unable to extract timestamp from received event");
+                }
+            } finally {
+                scannerPool.offer(scanner);
+            }
+        }
+    }
+
+    private static boolean isNonBlockingReadSupported() {
+        try {
+            Class.forName("javax.servlet.ReadListener");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private void inputStreamToString(InputStream in, long receivedTime) throws IOException {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         byte[] buff = new byte[1024];
         int i;
@@ -76,20 +139,9 @@ public class JsonConsumerLogService extends HttpServlet {
         Matcher eventPatternMatcher = eventPattern.matcher(receivedMessage);
         if (eventPatternMatcher.find()) {
             long sentTime = Long.parseLong(eventPatternMatcher.group(2));
-            latency.addAndGet(receivedTime - sentTime);
-            eventCount.addAndGet(1);
-            if (eventCount.get() % elapsedCount == 0) {
-                long currentTime = System.currentTimeMillis();
-                long elapsedTime = currentTime - lastTime;
-                double throughputPerSecond = (((double) elapsedCount) / elapsedTime) * 1000;
-                lastTime = currentTime;
-                log.info("Sent " + elapsedCount + " sensor events in " + elapsedTime +
-                         " milliseconds with total throughput of " + decimalFormat.format(throughputPerSecond) +
-                         " events per second.");
-                log.info("Receiving Latency: " + (double) latency.get() / elapsedCount);
-                latency = new AtomicLong(0);
-            }
+            metrics.recordEvent(receivedTime - sentTime);
         } else {
+            metrics.recordError();
             log.error("unable to extract timestamp from received event");
         }
     }
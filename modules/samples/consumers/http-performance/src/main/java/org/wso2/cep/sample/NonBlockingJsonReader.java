@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.cep.sample;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.sample.metrics.JsonTimestampScanner;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import java.io.IOException;
+import java.util.Queue;
+
+/**
+ * Scans a request body with Servlet 3.1 non-blocking reads, so that no container thread waits for slow request bodies.
+ * Only loaded when the container supports non-blocking reads.
+ */
+class NonBlockingJsonReader implements ReadListener {
+
+    private static Log log = LogFactory.getLog(NonBlockingJsonReader.class);
+
+    private final AsyncContext asyncContext;
+    private final ServletInputStream in;
+    private final JsonTimestampScanner scanner;
+    private final Queue<JsonTimestampScanner> scannerPool;
+
+    NonBlockingJsonReader(AsyncContext asyncContext, ServletInputStream in, JsonTimestampScanner scanner,
+                          Queue<JsonTimestampScanner> scannerPool) {
+        this.asyncContext = asyncContext;
+        this.in = in;
+        this.scanner = scanner;
+        this.scannerPool = scannerPool;
+    }
+
+    /**
+     * Starts reading the body of the request of the given context.
+     */
+    static void read(AsyncContext asyncContext, JsonTimestampScanner scanner,
+                     Queue<JsonTimestampScanner> scannerPool) throws IOException {
+        ServletInputStream in = asyncContext.getRequest().getInputStream();
+        in.setReadListener(new NonBlockingJsonReader(asyncContext, in, scanner, scannerPool));
+    }
+
+    @Override
+    public void onDataAvailable() throws IOException {
+        while (in.isReady() && !in.isFinished()) {
+            if (scanner.read(in) == -1) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void onAllDataRead() throws IOException {
+        if (!scanner.finish()) {
+            log.error("unable to extract timestamp from received event");
+        }
+        complete();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        scanner.fail();
+        log.error("Error when reading the received events", throwable);
+        complete();
+    }
+
+    private void complete() {
+        scannerPool.offer(scanner);
+        asyncContext.complete();
+    }
+}
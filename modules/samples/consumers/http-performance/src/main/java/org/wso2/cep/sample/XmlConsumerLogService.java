@@ -20,53 +20,84 @@ package org.wso2.cep.sample;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.sample.metrics.ConsumerMetrics;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.xml.stream.XMLStreamException;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.text.DecimalFormat;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Receives XML events and measures their throughput and latency. The readMode init parameter selects how request
+ * bodies are read: streaming (default) pulls the events from the request stream with a {@link XmlTimestampParser} and
+ * counts every event of batched events documents, while buffered reads the whole body into a String and finds the
+ * first timestamp with a regex.
+ */
 public class XmlConsumerLogService extends HttpServlet {
 
     private static Log log = LogFactory.getLog(XmlConsumerLogService.class);
 
-    private DecimalFormat decimalFormat = new DecimalFormat("#");
-    private static int elapsedCount = 50000;
-    private static AtomicLong eventCount = new AtomicLong(0);
-    private static long lastTime;
-    private long sentTime;
-    private Pattern eventPattern;
+    private static final String STREAMING = "streaming";
+    private static final String BUFFERED = "buffered";
 
-    private static AtomicLong latency = new AtomicLong(0);
+    private static final ConsumerMetrics metrics = ConsumerMetrics.fromSystemProperties("XmlConsumerLogService");
+    private Pattern eventPattern;
+    private XmlTimestampParser parser;
+    private boolean buffered;
 
     public void init() throws ServletException {
         log.info("Logger service initiated");
-        eventCount.set(0);
-        lastTime = System.currentTimeMillis();
         eventPattern = Pattern.compile("(<timestamp>(\\d+))");
+        parser = new XmlTimestampParser(metrics);
+        String readMode = getInitParameter("readMode") == null ? STREAMING : getInitParameter("readMode").trim();
+        if (!STREAMING.equals(readMode) && !BUFFERED.equals(readMode)) {
+            throw new ServletException("Unknown read mode '" + readMode + "', expected " + STREAMING + " or "
+                    + BUFFERED);
+        }
+        buffered = BUFFERED.equals(readMode);
+        log.info("Reading requests in " + readMode + " mode");
+        metrics.start();
+    }
+
+    public void destroy() {
+        metrics.stop();
     }
 
     public void doGet(HttpServletRequest request,
                       HttpServletResponse response)
             throws ServletException, IOException {
-        this.inputStreamToString(request.getInputStream());
+        receive(request);
     }
 
     public void doPost(HttpServletRequest request,
                        HttpServletResponse response)
             throws ServletException, IOException {
-        this.inputStreamToString(request.getInputStream());
+        receive(request);
     }
 
-    private String inputStreamToString(InputStream in) throws IOException {
+    private void receive(HttpServletRequest request) throws IOException {
         long receivedTime = System.currentTimeMillis();
+        if (buffered) {
+            this.inputStreamToString(request.getInputStream(), receivedTime);
+            return;
+        }
+        try {
+            if (!parser.parse(request.getInputStream(), receivedTime)) {
+                log.error("unable to extract timestamp from received event");
+            }
+        } catch (XMLStreamException e) {
+            metrics.recordError();
+            log.error("Error when parsing the received events: " + e.getMessage(), e);
+        }
+    }
+
+    private String inputStreamToString(InputStream in, long receivedTime) throws IOException {
 
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         byte[] buff = new byte[1024];
@@ -79,27 +110,13 @@ public class XmlConsumerLogService extends HttpServlet {
 
         Matcher eventPatternMatcher = eventPattern.matcher(message);
         if (eventPatternMatcher.find()) {
-            sentTime = Long.parseLong(eventPatternMatcher.group(2));
+            long sentTime = Long.parseLong(eventPatternMatcher.group(2));
+            metrics.recordEvent(receivedTime - sentTime);
         } else {
+            metrics.recordError();
             log.error("unable to extract timestamp from received event");
         }
 
-        latency.addAndGet(receivedTime - sentTime);
-
-        eventCount.addAndGet(1);
-
-        if (eventCount.get() % elapsedCount == 0) {
-
-            long currentTime = System.currentTimeMillis();
-            long elapsedTime = currentTime - lastTime;
-            double throughputPerSecond = (((double) elapsedCount) / elapsedTime) * 1000;
-            lastTime = currentTime;
-
-            log.info("Sent " + elapsedCount + " sensor events in time (ms) for throughput of : " + elapsedTime +
-                    ", " + decimalFormat.format(throughputPerSecond) + ", Latency: " + (double) latency.get() / elapsedCount);
-            latency = new AtomicLong(0);
-        }
-
         return message;
     }
 
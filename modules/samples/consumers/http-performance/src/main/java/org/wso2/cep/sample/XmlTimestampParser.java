@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.cep.sample;
+
+import org.wso2.carbon.sample.metrics.ConsumerMetrics;
+import org.wso2.carbon.sample.metrics.SequenceTracker;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+
+/**
+ * Pulls the events of an XML body from the request stream with StAX. The body can be one event or an events document
+ * with many event children. The digits of each timestamp element are parsed from the parser's character buffer, and
+ * all other content is skipped without creating strings.
+ * <p/>
+ * Each timestamp found records a latency against the receive time. The events of a body are counted as the number of
+ * event elements or, for custom mappings without them, of timestamps. Events stamped with producerId and sequence
+ * elements record their sequence, see {@link SequenceTracker}. A timestamp, producerId or sequence element which is
+ * empty or holds anything but digits and surrounding whitespace is recorded as an error.
+ */
+public class XmlTimestampParser {
+
+    private static final String EVENT = "event";
+    private static final String TIMESTAMP = "timestamp";
+
+    private static final int NO_NUMBER = 0;
+    private static final int TIMESTAMP_NUMBER = 1;
+    private static final int PRODUCER_ID_NUMBER = 2;
+    private static final int SEQUENCE_NUMBER = 3;
+    // More digits could overflow a long
+    private static final int MAX_DIGITS = 18;
+
+    private final XMLInputFactory inputFactory;
+    private final ConsumerMetrics metrics;
+
+    public XmlTimestampParser(ConsumerMetrics metrics) {
+        this.metrics = metrics;
+        // The factory is configured once and shared by all requests
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    /**
+     * Parses a body and records its events.
+     *
+     * @param in           request body
+     * @param receivedTime time the body was received at, to measure the latency of its events against
+     * @return false if the body had neither events nor timestamps
+     */
+    public boolean parse(InputStream in, long receivedTime) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+        int events = 0;
+        int timestamps = 0;
+        int numberElement = NO_NUMBER;
+        long number = 0;
+        int digits = 0;
+        boolean afterDigits = false;
+        boolean invalidNumber = false;
+        boolean hasProducerId = false;
+        long producerId = 0;
+        boolean hasSequence = false;
+        long sequence = 0;
+        try {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        String name = reader.getLocalName();
+                        if (EVENT.equals(name)) {
+                            events++;
+                            hasProducerId = false;
+                            hasSequence = false;
+                        } else if (TIMESTAMP.equals(name)) {
+                            numberElement = TIMESTAMP_NUMBER;
+                        } else if (SequenceTracker.PRODUCER_ID_ATTRIBUTE.equals(name)) {
+                            numberElement = PRODUCER_ID_NUMBER;
+                        } else if (SequenceTracker.SEQUENCE_ATTRIBUTE.equals(name)) {
+                            numberElement = SEQUENCE_NUMBER;
+                        } else {
+                            // A child element inside a number element makes it invalid
+                            invalidNumber = true;
+                            break;
+                        }
+                        number = 0;
+                        digits = 0;
+                        afterDigits = false;
+                        invalidNumber = false;
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                        if (numberElement != NO_NUMBER && !invalidNumber) {
+                            // Without coalescing, the digits may come in several parts
+                            char[] characters = reader.getTextCharacters();
+                            int end = reader.getTextStart() + reader.getTextLength();
+                            for (int i = reader.getTextStart(); i < end; i++) {
+                                char c = characters[i];
+                                if (c >= '0' && c <= '9' && !afterDigits && digits < MAX_DIGITS) {
+                                    number = number * 10 + (c - '0');
+                                    digits++;
+                                } else if (Character.isWhitespace(c)) {
+                                    afterDigits = digits > 0;
+                                } else {
+                                    invalidNumber = true;
+                                    break;
+                                }
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (numberElement == NO_NUMBER) {
+                            break;
+                        }
+                        boolean valid = digits > 0 && !invalidNumber;
+                        if (!valid) {
+                            metrics.recordError();
+                        }
+                        if (numberElement == TIMESTAMP_NUMBER) {
+                            timestamps++;
+                            if (valid) {
+                                metrics.recordLatency(receivedTime - number);
+                            }
+                        } else if (numberElement == PRODUCER_ID_NUMBER) {
+                            producerId = number;
+                            hasProducerId = valid;
+                        } else {
+                            sequence = number;
+                            hasSequence = valid;
+                        }
+                        numberElement = NO_NUMBER;
+                        if (hasProducerId && hasSequence) {
+                            metrics.recordSequence(producerId, sequence);
+                            hasProducerId = false;
+                            hasSequence = false;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        int count = Math.max(events, timestamps);
+        if (count == 0) {
+            metrics.recordError();
+            return false;
+        }
+        metrics.recordEvents(count);
+        return true;
+    }
+}
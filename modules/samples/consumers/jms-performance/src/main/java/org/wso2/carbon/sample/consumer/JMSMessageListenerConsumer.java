@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.consumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.sample.metrics.ConsumerMetrics;
+import org.wso2.carbon.sample.metrics.SequenceTracker;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+
+/**
+ * Receives the messages of a queue or topic through a {@link MessageListener} on the provider's delivery thread,
+ * instead of polling for them from a thread of its own. With CLIENT_ACKNOWLEDGE the messages are acknowledged once
+ * every ackBatchSize messages, which acknowledges all messages the session delivered up to then.
+ */
+public class JMSMessageListenerConsumer implements MessageListener {
+    private static Log log = LogFactory.getLog(JMSMessageListenerConsumer.class);
+
+    private final String destinationName;
+    private final boolean topic;
+    private final ConsumerMetrics metrics;
+    private int acknowledgeMode = Session.DUPS_OK_ACKNOWLEDGE;
+    private int ackBatchSize = 100;
+    private int prefetch = 0;
+    private Connection connection;
+    private String consumerId;
+
+    // only used from the delivery thread of the session
+    private int unacknowledged;
+
+    JMSMessageListenerConsumer(String destinationName, boolean topic, ConsumerMetrics metrics) {
+        this.destinationName = destinationName;
+        this.topic = topic;
+        this.metrics = metrics;
+    }
+
+    public void listen(String consumerId) throws JMSException {
+        this.consumerId = consumerId;
+        ConnectionFactory connectionFactory = topic ? JNDIContext.getInstance().getTopicConnectionFactory()
+                : JNDIContext.getInstance().getQueueConnectionFactory();
+        connection = connectionFactory.createConnection();
+        try {
+            Session session = connection.createSession(false, acknowledgeMode);
+            String name = prefetch > 0 ? destinationName + "?consumer.prefetchSize=" + prefetch : destinationName;
+            Destination destination = topic ? session.createTopic(name) : session.createQueue(name);
+            session.createConsumer(destination).setMessageListener(this);
+            connection.start();
+        } catch (JMSException e) {
+            connection.close();
+            throw e;
+        }
+        log.info("Starting " + (topic ? "topic" : "queue") + " listener # " + consumerId + " on " + destinationName);
+    }
+
+    public void onMessage(Message message) {
+        long currentTime = System.currentTimeMillis();
+        try {
+            if (message instanceof MapMessage) {
+                metrics.recordEvent(currentTime - ((MapMessage) message).getLong("time"));
+                recordSequence((MapMessage) message, metrics);
+            } else {
+                metrics.recordEvents(1);
+                metrics.recordError();
+            }
+            if (acknowledgeMode == Session.CLIENT_ACKNOWLEDGE && ++unacknowledged >= ackBatchSize) {
+                message.acknowledge();
+                unacknowledged = 0;
+            }
+        } catch (JMSException e) {
+            metrics.recordError();
+            log.error("Error when processing a message of consumer # " + consumerId, e);
+        }
+    }
+
+    /**
+     * Records the producer id and sequence of a message stamped with them.
+     */
+    static void recordSequence(MapMessage message, ConsumerMetrics metrics) throws JMSException {
+        if (message.itemExists(SequenceTracker.SEQUENCE_ATTRIBUTE)
+                && message.itemExists(SequenceTracker.PRODUCER_ID_ATTRIBUTE)) {
+            metrics.recordSequence(message.getLong(SequenceTracker.PRODUCER_ID_ATTRIBUTE),
+                    message.getLong(SequenceTracker.SEQUENCE_ATTRIBUTE));
+        }
+    }
+
+    /**
+     * Closes the connection. With CLIENT_ACKNOWLEDGE the messages received after the last acknowledgement are
+     * redelivered to the next consumer.
+     */
+    public void shutdown() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (JMSException e) {
+                log.error("Error when closing the connection of consumer # " + consumerId, e);
+            }
+        }
+    }
+
+    /**
+     * @return Session.AUTO_ACKNOWLEDGE, Session.CLIENT_ACKNOWLEDGE or Session.DUPS_OK_ACKNOWLEDGE
+     */
+    public int getAcknowledgeMode() {
+        return acknowledgeMode;
+    }
+
+    public void setAcknowledgeMode(int acknowledgeMode) {
+        this.acknowledgeMode = acknowledgeMode;
+    }
+
+    /**
+     * @return number of messages acknowledged together with CLIENT_ACKNOWLEDGE
+     */
+    public int getAckBatchSize() {
+        return ackBatchSize;
+    }
+
+    public void setAckBatchSize(int ackBatchSize) {
+        if (ackBatchSize < 1) {
+            throw new IllegalArgumentException("Acknowledgement batch size should be positive, but found "
+                    + ackBatchSize);
+        }
+        this.ackBatchSize = ackBatchSize;
+    }
+
+    /**
+     * @return number of messages the broker may push to the consumer ahead of processing, set through the ActiveMQ
+     * consumer.prefetchSize destination option, or zero to keep the broker's default
+     */
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    public void setPrefetch(int prefetch) {
+        this.prefetch = prefetch;
+    }
+}
@@ -20,6 +20,7 @@ package org.wso2.carbon.sample.consumer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.sample.metrics.ConsumerMetrics;
 
 import javax.jms.*;
 import javax.naming.NamingException;
@@ -32,13 +33,11 @@ public class JMSQueueMessageConsumer implements Runnable {
     private String queueName = "";
     private boolean active = true;
     private String consumerId;
-    private int consumers;
-    private int warmUpCount;
+    private ConsumerMetrics metrics;
 
-    JMSQueueMessageConsumer(String queueName, int consumers, int warmUpCount) {
+    JMSQueueMessageConsumer(String queueName, ConsumerMetrics metrics) {
         this.queueName = queueName;
-        this.consumers = consumers;
-        this.warmUpCount = warmUpCount;
+        this.metrics = metrics;
     }
 
     public void listen(String consumerId)
@@ -76,33 +75,15 @@ public class JMSQueueMessageConsumer implements Runnable {
             Destination destination = session.createQueue(queueName);
             MessageConsumer consumer = session.createConsumer(destination);
 
-            int count = 0;
-            long totalLatency = 0;
-            long lastTimestamp = System.currentTimeMillis();
-
             while (active) {
                 Message message = consumer.receive(1000);
                 if (message != null) {
 //                    if (message instanceof MapMessage) {
                     MapMessage mapMessage = (MapMessage) message;
                     long currentTime = System.currentTimeMillis();
-                    long sentTimestamp = (Long) mapMessage.getObject("time");
-
-                    totalLatency = totalLatency + (currentTime - sentTimestamp);
-
-                    int logCount = 1000;
-
-                    if ((count % logCount == 0) && (count > warmUpCount)) {
-                        double rate = (logCount * 1000.0d / (System.currentTimeMillis() - lastTimestamp));
-                        log.info("Consumer: " + consumerId + " (" +
-                                logCount + " received) rate: " + rate
-                                + " Latency:" + (totalLatency / (logCount * 1.0d)));
-//                            log.info("total latency:" + totalLatency);
-                        log.info("Total rate: " + (int) (consumers * rate));
-                        totalLatency = 0;
-                        lastTimestamp = System.currentTimeMillis();
-                    }
-                    count++;
+                    long sentTimestamp = mapMessage.getLong("time");
+                    metrics.recordEvent(currentTime - sentTimestamp);
+                    JMSMessageListenerConsumer.recordSequence(mapMessage, metrics);
                 }
             }
             log.info("Finished listening for messages.");
@@ -18,28 +18,63 @@
 
 package org.wso2.carbon.sample.consumer;
 
+import org.wso2.carbon.sample.metrics.ConsumerMetrics;
+
+import javax.jms.JMSException;
+import javax.jms.Session;
 import javax.naming.NamingException;
 
+/**
+ * Starts the JMS performance consumers. By default each consumer polls a queue from its own thread. With
+ * -Djms.mode=listener the messages are delivered to a {@link JMSMessageListenerConsumer} instead, configured with
+ * -Djms.destinationType=queue|topic, -Djms.ackMode=dupsOk|client|auto, -Djms.ackBatchSize and -Djms.prefetch.
+ */
 public class JmsMain {
 
 
-    public static void main(String[] args) throws NamingException, InterruptedException {
+    public static void main(String[] args) throws NamingException, InterruptedException, JMSException {
 
         int consumers = 50;
         int warmUpCount = 50000;
         String queueName = "myQueue";
-        if (args.length> 0) {
+        if (args.length > 0 && !args[0].trim().isEmpty()) {
             queueName = args[0].trim();
         }
-        if (args.length > 1) {
+        if (args.length > 1 && !args[1].trim().isEmpty()) {
             consumers = Integer.parseInt(args[1].trim());
         }
-        if (args.length > 2) {
+        if (args.length > 2 && !args[2].trim().isEmpty()) {
             warmUpCount = Integer.parseInt(args[2].trim());
         }
 
+        ConsumerMetrics metrics = ConsumerMetrics.fromSystemProperties("JMSQueueMessageConsumer");
+        metrics.setWarmUpCount(warmUpCount);
+        metrics.start();
+        if ("listener".equalsIgnoreCase(System.getProperty("jms.mode", "").trim())) {
+            boolean topic = "topic".equalsIgnoreCase(System.getProperty("jms.destinationType", "").trim());
+            int acknowledgeMode = getAcknowledgeMode(System.getProperty("jms.ackMode", "dupsOk").trim());
+            for (int i = 0; i < consumers; i++) {
+                JMSMessageListenerConsumer consumer = new JMSMessageListenerConsumer(queueName, topic, metrics);
+                consumer.setAcknowledgeMode(acknowledgeMode);
+                consumer.setAckBatchSize(Integer.getInteger("jms.ackBatchSize", consumer.getAckBatchSize()));
+                consumer.setPrefetch(Integer.getInteger("jms.prefetch", consumer.getPrefetch()));
+                consumer.listen("" + i);
+            }
+            return;
+        }
         for (int i = 0;i < consumers; i++) {
-            new JMSQueueMessageConsumer("myQueue", consumers, warmUpCount/consumers).listen("" + i);
+            new JMSQueueMessageConsumer(queueName, metrics).listen("" + i);
+        }
+    }
+
+    private static int getAcknowledgeMode(String name) {
+        if ("dupsOk".equalsIgnoreCase(name)) {
+            return Session.DUPS_OK_ACKNOWLEDGE;
+        } else if ("client".equalsIgnoreCase(name)) {
+            return Session.CLIENT_ACKNOWLEDGE;
+        } else if ("auto".equalsIgnoreCase(name)) {
+            return Session.AUTO_ACKNOWLEDGE;
         }
+        throw new IllegalArgumentException("Unknown acknowledgement mode " + name + ", use dupsOk, client or auto");
     }
 }
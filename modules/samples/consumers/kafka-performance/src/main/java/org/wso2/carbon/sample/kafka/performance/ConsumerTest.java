@@ -22,63 +22,38 @@ import kafka.consumer.ConsumerIterator;
 import kafka.consumer.KafkaStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-
-import java.text.DecimalFormat;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import org.wso2.carbon.sample.metrics.ConsumerMetrics;
+import org.wso2.carbon.sample.metrics.JsonTimestampScanner;
 
 public class ConsumerTest implements Runnable {
     private static Log log = LogFactory.getLog(ConsumerTest.class);
-    DecimalFormat decimalFormat = new DecimalFormat("#");
 
     private KafkaStream kafkaStream;
+    private ConsumerMetrics metrics;
 
-    private long sentTime = 0;
-    private long receivedTime = 0;
-    private static int elapsedCount = 100000;
-
-    //Atomic Variables
-    private static AtomicLong eventCount = new AtomicLong(0);
-    private static AtomicLong latency = new AtomicLong(0);
-    private static AtomicLong lastTime = new AtomicLong(System.currentTimeMillis());
-
-    public ConsumerTest(KafkaStream stream) {
+    public ConsumerTest(KafkaStream stream, ConsumerMetrics metrics) {
         kafkaStream = stream;
+        this.metrics = metrics;
     }
 
     public void run() {
         try {
             log.info("start consuming");
             ConsumerIterator<byte[], byte[]> iterator = kafkaStream.iterator();
-            Pattern eventPattern = Pattern.compile("(timestamp\":(\\d+))");
+            JsonTimestampScanner scanner = new JsonTimestampScanner(metrics);
 
             while (iterator.hasNext()) {
-                String message = new String(iterator.next().message());
-                receivedTime = System.currentTimeMillis();
+                byte[] message = iterator.next().message();
+                scanner.reset(System.currentTimeMillis());
 
-                //Time stamp pattern match for json format event
-                Matcher eventPatternMatcher = eventPattern.matcher(message);
-                if (eventPatternMatcher.find()) {
-                    sentTime = Long.parseLong(eventPatternMatcher.group(2));
-                } else {
+                //Time stamp and sequence scan for json format event
+                scanner.scan(message, 0, message.length);
+                if (!scanner.finish()) {
+                    metrics.recordEvents(1);
                     log.error("unable to extract timestamp from received event");
                 }
-
-                latency.addAndGet(receivedTime - sentTime);
-                eventCount.incrementAndGet();
-
-                if (eventCount.get() % elapsedCount == 0) {
-                    long currentTime = System.currentTimeMillis();
-                    long elapsedTime = currentTime - lastTime.getAndSet(currentTime);
-                    double throughputPerSecond = (((double) elapsedCount) / elapsedTime) * 1000;
-                    log.info("Received " + elapsedCount + " sensor events in " + elapsedTime +
-                            " milliseconds with total throughput of " + decimalFormat.format(throughputPerSecond) +
-                            " events per second. Average latency is " + (double) latency.get() / elapsedCount + " milliseconds per event.");
-                    latency.set(0);
-                }
             }
-            log.info("Received Total of " + eventCount.get() + " sensor events");
+            log.info("Received Total of " + metrics.getEventCount() + " sensor events");
         } catch (Throwable t) {
             log.error("Error when receiving messages", t);
         }
@@ -21,6 +21,7 @@ package org.wso2.carbon.sample.kafka.performance;
 import kafka.consumer.ConsumerConfig;
 import kafka.consumer.KafkaStream;
 import kafka.javaapi.consumer.ConsumerConnector;
+import org.wso2.carbon.sample.metrics.ConsumerMetrics;
 
 import java.util.HashMap;
 import java.util.List;
@@ -32,6 +33,7 @@ import java.util.concurrent.Executors;
 public class KafkaConsumer {
     private final ConsumerConnector consumer;
     private final String topic;
+    private final ConsumerMetrics metrics = ConsumerMetrics.fromSystemProperties("KafkaConsumer");
     private ExecutorService executor;
 
     public KafkaConsumer(String zookeeperUrl, String groupId, String topic) {
@@ -40,11 +42,25 @@ public class KafkaConsumer {
         this.topic = topic;
     }
 
+    /**
+     * Consumes the topic with the high level consumer by default. With -Dkafka.mode=partition every partition is
+     * fetched in batches by its own thread from the brokers of -Dkafka.brokerList, see {@link PartitionedKafkaConsumer}.
+     */
     public static void main(String[] args) {
         String zookeeperUrl = args[0];
         String groupId = args[1];
         String topic = args[2];
         int noOfConsumers = Integer.parseInt(args[3]);
+        if ("partition".equalsIgnoreCase(System.getProperty("kafka.mode", "").trim())) {
+            PartitionedKafkaConsumer partitionedConsumer = new PartitionedKafkaConsumer(
+                    System.getProperty("kafka.brokerList", "localhost:9092"), topic,
+                    ConsumerMetrics.fromSystemProperties("KafkaPartitionConsumer"));
+            partitionedConsumer.setFetchSize(Integer.getInteger("kafka.fetchSize", partitionedConsumer.getFetchSize()));
+            partitionedConsumer.setMaxWait(Integer.getInteger("kafka.maxWait", partitionedConsumer.getMaxWait()));
+            partitionedConsumer.setFromEarliest("earliest".equalsIgnoreCase(System.getProperty("kafka.startOffset")));
+            partitionedConsumer.start();
+            return;
+        }
         KafkaConsumer kafkaConsumer = new KafkaConsumer(zookeeperUrl, groupId, topic);
         kafkaConsumer.start(noOfConsumers);
     }
@@ -59,8 +75,9 @@ public class KafkaConsumer {
         executor = Executors.newFixedThreadPool(numOfConsumers);
 
         //Create an object to consume the messages
+        metrics.start();
         for (final KafkaStream stream : streams) {
-            executor.submit(new ConsumerTest(stream));
+            executor.submit(new ConsumerTest(stream, metrics));
         }
     }
 
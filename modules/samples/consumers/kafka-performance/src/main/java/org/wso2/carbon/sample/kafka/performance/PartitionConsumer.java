@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.kafka.performance;
+
+import kafka.api.FetchRequest;
+import kafka.api.FetchRequestBuilder;
+import kafka.api.PartitionOffsetRequestInfo;
+import kafka.cluster.Broker;
+import kafka.common.ErrorMapping;
+import kafka.common.TopicAndPartition;
+import kafka.javaapi.FetchResponse;
+import kafka.javaapi.OffsetRequest;
+import kafka.javaapi.OffsetResponse;
+import kafka.javaapi.consumer.SimpleConsumer;
+import kafka.message.MessageAndOffset;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.sample.metrics.ConsumerMetrics;
+import org.wso2.carbon.sample.metrics.JsonTimestampScanner;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+/**
+ * Consumes one partition of a topic in fetched batches. The timestamps are scanned from the message bytes without
+ * decoding them, all messages of a batch are measured against the time the batch arrived, and the offset, high
+ * watermark and event count of the partition are kept for the lag report of {@link PartitionedKafkaConsumer}.
+ */
+public class PartitionConsumer implements Runnable {
+    private static Log log = LogFactory.getLog(PartitionConsumer.class);
+
+    private static final int SO_TIMEOUT = 100000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long RETRY_DELAY = 1000;
+
+    private final PartitionedKafkaConsumer owner;
+    private final String topic;
+    private final int partition;
+    private final String clientId;
+    private final JsonTimestampScanner scanner;
+    private final ConsumerMetrics metrics;
+    private SimpleConsumer consumer;
+    private volatile boolean running = true;
+
+    // written by the consumer thread only and read by the reporter
+    private volatile long offset = -1;
+    private volatile long highWatermark = -1;
+    private volatile long eventCount;
+
+    public PartitionConsumer(PartitionedKafkaConsumer owner, int partition, ConsumerMetrics metrics) {
+        this.owner = owner;
+        this.topic = owner.getTopic();
+        this.partition = partition;
+        this.clientId = "performance-consumer-" + topic + "-" + partition;
+        this.scanner = new JsonTimestampScanner(metrics);
+        this.metrics = metrics;
+    }
+
+    public void run() {
+        try {
+            Broker leader = owner.findLeader(partition);
+            consumer = new SimpleConsumer(leader.host(), leader.port(), SO_TIMEOUT, BUFFER_SIZE, clientId);
+            offset = fetchOffset(owner.isFromEarliest());
+            log.info("Consuming partition " + partition + " of " + topic + " from offset " + offset + " at "
+                    + leader.host() + ":" + leader.port());
+            while (running) {
+                FetchRequest request = new FetchRequestBuilder().clientId(clientId)
+                        .addFetch(topic, partition, offset, owner.getFetchSize())
+                        .maxWait(owner.getMaxWait()).minBytes(1).build();
+                FetchResponse response = consumer.fetch(request);
+                if (response.hasError()) {
+                    handleError(response.errorCode(topic, partition));
+                    continue;
+                }
+                consume(response);
+            }
+        } catch (Throwable t) {
+            log.error("Error when consuming partition " + partition + " of " + topic, t);
+        } finally {
+            if (consumer != null) {
+                consumer.close();
+            }
+        }
+    }
+
+    private void consume(FetchResponse response) {
+        long receivedTime = System.currentTimeMillis();
+        long nextOffset = offset;
+        long events = 0;
+        for (MessageAndOffset messageAndOffset : response.messageSet(topic, partition)) {
+            // a compressed batch starts from its first message, which may be before the requested offset
+            if (messageAndOffset.offset() < nextOffset) {
+                continue;
+            }
+            ByteBuffer payload = messageAndOffset.message().payload();
+            if (payload != null) {
+                scanner.reset(receivedTime);
+                if (payload.hasArray()) {
+                    scanner.scan(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+                } else {
+                    byte[] bytes = new byte[payload.remaining()];
+                    payload.get(bytes);
+                    scanner.scan(bytes, 0, bytes.length);
+                }
+                if (!scanner.finish()) {
+                    // a message without timestamp is still one consumed event
+                    metrics.recordEvents(1);
+                }
+                events++;
+            }
+            nextOffset = messageAndOffset.nextOffset();
+        }
+        eventCount += events;
+        offset = nextOffset;
+        highWatermark = response.highWatermark(topic, partition);
+    }
+
+    private void handleError(short errorCode) throws InterruptedException {
+        if (errorCode == ErrorMapping.OffsetOutOfRangeCode()) {
+            long latest = fetchOffset(false);
+            log.warn("Offset " + offset + " of partition " + partition + " is out of range, continuing from "
+                    + latest);
+            offset = latest;
+            return;
+        }
+        log.warn("Error code " + errorCode + " when fetching partition " + partition + " of " + topic
+                + ", looking up the leader again");
+        consumer.close();
+        Thread.sleep(RETRY_DELAY);
+        Broker leader = owner.findLeader(partition);
+        consumer = new SimpleConsumer(leader.host(), leader.port(), SO_TIMEOUT, BUFFER_SIZE, clientId);
+    }
+
+    private long fetchOffset(boolean earliest) {
+        TopicAndPartition topicAndPartition = new TopicAndPartition(topic, partition);
+        long time = earliest ? kafka.api.OffsetRequest.EarliestTime() : kafka.api.OffsetRequest.LatestTime();
+        OffsetRequest request = new OffsetRequest(
+                Collections.singletonMap(topicAndPartition, new PartitionOffsetRequestInfo(time, 1)),
+                kafka.api.OffsetRequest.CurrentVersion(), clientId);
+        OffsetResponse response = consumer.getOffsetsBefore(request);
+        if (response.hasError()) {
+            throw new IllegalStateException("Error code " + response.errorCode(topic, partition)
+                    + " when fetching the offset of partition " + partition + " of " + topic);
+        }
+        return response.offsets(topic, partition)[0];
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    /**
+     * @return offset of the next message to consume, or -1 before the first fetch
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return number of messages the partition is behind its high watermark as of the last fetch, or -1 before it
+     */
+    public long getLag() {
+        long watermark = highWatermark;
+        return watermark < 0 ? -1 : Math.max(0, watermark - offset);
+    }
+
+    public long getEventCount() {
+        return eventCount;
+    }
+}
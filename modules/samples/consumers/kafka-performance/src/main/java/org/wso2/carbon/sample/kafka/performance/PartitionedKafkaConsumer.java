@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.kafka.performance;
+
+import kafka.cluster.Broker;
+import kafka.javaapi.PartitionMetadata;
+import kafka.javaapi.TopicMetadata;
+import kafka.javaapi.TopicMetadataRequest;
+import kafka.javaapi.TopicMetadataResponse;
+import kafka.javaapi.consumer.SimpleConsumer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.sample.metrics.ConsumerMetrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consumes every partition of a topic with its own {@link PartitionConsumer} thread, fetching straight from the
+ * partition leaders instead of through the high level consumer, and logs the offset, lag and rate of each partition
+ * at the metrics report interval. Offsets are not committed, so the consumer group is not used.
+ */
+public class PartitionedKafkaConsumer {
+    private static Log log = LogFactory.getLog(PartitionedKafkaConsumer.class);
+
+    private static final int SO_TIMEOUT = 100000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final List<String> brokers;
+    private final String topic;
+    private final ConsumerMetrics metrics;
+    private final List<PartitionConsumer> partitionConsumers = new ArrayList<PartitionConsumer>();
+    private int fetchSize = 1024 * 1024;
+    private int maxWait = 100;
+    private boolean fromEarliest = false;
+    private ExecutorService executor;
+    private ScheduledExecutorService reporter;
+
+    /**
+     * @param brokerList comma separated host:port list of the brokers to look the partition leaders up from
+     */
+    public PartitionedKafkaConsumer(String brokerList, String topic, ConsumerMetrics metrics) {
+        this.brokers = new ArrayList<String>();
+        for (String broker : brokerList.split(",")) {
+            if (!broker.trim().isEmpty()) {
+                brokers.add(broker.trim());
+            }
+        }
+        this.topic = topic;
+        this.metrics = metrics;
+    }
+
+    public void start() {
+        List<PartitionMetadata> partitions = fetchMetadata().partitionsMetadata();
+        if (partitions.isEmpty()) {
+            throw new IllegalStateException("Topic " + topic + " has no partitions");
+        }
+        metrics.start();
+        executor = Executors.newFixedThreadPool(partitions.size());
+        for (PartitionMetadata partition : partitions) {
+            PartitionConsumer partitionConsumer = new PartitionConsumer(this, partition.partitionId(), metrics);
+            partitionConsumers.add(partitionConsumer);
+            executor.submit(partitionConsumer);
+        }
+        log.info("Consuming " + partitions.size() + " partitions of " + topic);
+
+        reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "partition-lag-reporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long interval = metrics.getReportInterval();
+        reporter.scheduleAtFixedRate(new Runnable() {
+            private final long[] lastCounts = new long[partitionConsumers.size()];
+            private long lastTime = System.nanoTime();
+
+            public void run() {
+                long now = System.nanoTime();
+                double seconds = (now - lastTime) / 1e9;
+                lastTime = now;
+                StringBuilder report = new StringBuilder("Partition lag of ").append(topic).append(':');
+                long totalLag = 0;
+                for (int i = 0; i < partitionConsumers.size(); i++) {
+                    PartitionConsumer partitionConsumer = partitionConsumers.get(i);
+                    long count = partitionConsumer.getEventCount();
+                    long lag = partitionConsumer.getLag();
+                    totalLag += Math.max(0, lag);
+                    report.append("\n  partition ").append(partitionConsumer.getPartition())
+                            .append(": offset=").append(partitionConsumer.getOffset())
+                            .append(", lag=").append(lag)
+                            .append(", rate=").append(Math.round((count - lastCounts[i]) / seconds)).append(" events/s");
+                    lastCounts[i] = count;
+                }
+                report.append("\n  total lag=").append(totalLag);
+                log.info(report);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        for (PartitionConsumer partitionConsumer : partitionConsumers) {
+            partitionConsumer.stop();
+        }
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+        metrics.stop();
+    }
+
+    /**
+     * @return the current leader of the partition, as known by the first broker that answers
+     */
+    Broker findLeader(int partition) {
+        for (PartitionMetadata metadata : fetchMetadata().partitionsMetadata()) {
+            if (metadata.partitionId() == partition) {
+                if (metadata.leader() == null) {
+                    throw new IllegalStateException("Partition " + partition + " of " + topic + " has no leader");
+                }
+                return metadata.leader();
+            }
+        }
+        throw new IllegalStateException("Topic " + topic + " has no partition " + partition);
+    }
+
+    private TopicMetadata fetchMetadata() {
+        RuntimeException lastError = null;
+        for (String broker : brokers) {
+            int separator = broker.lastIndexOf(':');
+            String host = separator < 0 ? broker : broker.substring(0, separator);
+            int port = separator < 0 ? 9092 : Integer.parseInt(broker.substring(separator + 1));
+            SimpleConsumer consumer = new SimpleConsumer(host, port, SO_TIMEOUT, BUFFER_SIZE, "performance-lookup");
+            try {
+                TopicMetadataResponse response = consumer.send(
+                        new TopicMetadataRequest(Collections.singletonList(topic)));
+                for (TopicMetadata metadata : response.topicsMetadata()) {
+                    if (topic.equals(metadata.topic())) {
+                        return metadata;
+                    }
+                }
+            } catch (RuntimeException e) {
+                log.warn("Unable to fetch the metadata of " + topic + " from " + broker + ": " + e.getMessage());
+                lastError = e;
+            } finally {
+                consumer.close();
+            }
+        }
+        throw new IllegalStateException("No broker of " + brokers + " knows topic " + topic, lastError);
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * @return maximum number of bytes fetched from a partition in one request
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * @return time in milliseconds a fetch waits on the broker for new messages
+     */
+    public int getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(int maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * @return true to consume the partitions from their earliest offsets instead of only the new messages
+     */
+    public boolean isFromEarliest() {
+        return fromEarliest;
+    }
+
+    public void setFromEarliest(boolean fromEarliest) {
+        this.fromEarliest = fromEarliest;
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.performance;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.databridge.agent.AgentHolder;
+import org.wso2.carbon.databridge.agent.DataPublisher;
+import org.wso2.carbon.databridge.commons.Credentials;
+import org.wso2.carbon.databridge.commons.Event;
+import org.wso2.carbon.databridge.commons.StreamDefinition;
+import org.wso2.carbon.databridge.core.AgentCallback;
+import org.wso2.carbon.sample.load.EventSchema;
+import org.wso2.carbon.sample.load.EventSender;
+import org.wso2.carbon.sample.load.EventSenderFactory;
+import org.wso2.carbon.sample.load.LoadConfig;
+import org.wso2.carbon.sample.load.LoadEvent;
+import org.wso2.carbon.sample.load.LoadRunner;
+import org.wso2.carbon.sample.load.SensorEventGenerator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the Thrift and Binary databridge protocols over TCP and SSL at several agent batch sizes.
+ * <p/>
+ * Every combination runs in a fresh JVM holding both a {@link TestWso2EventServer} receiver and a {@link DataPublisher},
+ * which publishes the same seeded sensor workload to it. The producer ids of the events are derived from the seed too,
+ * since the generated values depend on them. Events carry their send time from {@link System#nanoTime()} in the
+ * timestamp meta attribute, so the receiver measures the latency of each event exactly. The CPU time of the JVM
+ * during the measured phase covers both the sending and the receiving side of the protocol. The coordinating JVM
+ * collects one result line per combination and logs them as a table. A combination which does not finish within
+ * -Dload.combinationTimeout seconds (600 by default) is destroyed and left out of the table.
+ */
+public class ProtocolBenchmark {
+    private static Log log = LogFactory.getLog(ProtocolBenchmark.class);
+
+    private static final String RUN = "run";
+    private static final String RESULT_PREFIX = "PROTOCOL_BENCHMARK_RESULT";
+    private static final long RECEIVE_TIMEOUT = 120000;
+    private static final long EXIT_CHECK_INTERVAL = 500;
+    private static final long OUTPUT_TIMEOUT = 10000;
+    /**
+     * Events handed to the data publisher are serialised later from its queue, so each sender cycles through this
+     * many events instead of reusing one.
+     */
+    private static final int EVENT_POOL_SIZE = 131072;
+
+    public static void main(String[] args) throws Exception {
+        if (RUN.equals(args[0])) {
+            runCombination(args);
+        } else {
+            compare(args);
+        }
+    }
+
+    /**
+     * Runs every combination in its own JVM and logs the results.
+     */
+    private static void compare(String[] args) throws Exception {
+        String host = args[0];
+        int port = Integer.parseInt(args[1]);
+        String eventCount = args[2];
+        String warmUpCount = args[3];
+        String seed = args[4];
+        String[] protocols = args[5].split(",");
+        String[] transports = args[6].split(",");
+        String[] batchSizes = args[7].split(",");
+
+        List<String[]> results = new ArrayList<String[]>();
+        int combination = 0;
+        for (String protocol : protocols) {
+            for (String transport : transports) {
+                for (String batchSize : batchSizes) {
+                    // A new port per combination, since the previous receiver's port may not be released yet
+                    String combinationPort = String.valueOf(port + combination++);
+                    log.info("Benchmarking " + protocol + " over " + transport + " with batch size " + batchSize);
+                    String[] result = runInNewJvm(RUN, protocol.trim(), transport.trim(), batchSize.trim(), host,
+                            combinationPort, eventCount, warmUpCount, seed);
+                    if (result == null) {
+                        log.error("Benchmark of " + protocol + " over " + transport + " with batch size " + batchSize
+                                + " did not complete");
+                    } else {
+                        results.add(result);
+                    }
+                }
+            }
+        }
+
+        StringBuilder table = new StringBuilder("Protocol benchmark results for ").append(eventCount)
+                .append(" events:\n");
+        table.append(String.format("%-8s %-9s %10s %14s %10s %10s %10s %10s %12s%n", "protocol", "transport",
+                "batchSize", "events/sec", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "cpu us/event"));
+        for (String[] result : results) {
+            table.append(String.format("%-8s %-9s %10s %14s %10s %10s %10s %10s %12s%n", (Object[]) result));
+        }
+        log.info(table);
+    }
+
+    private static String[] runInNewJvm(String... args) throws Exception {
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-Xmx" + Runtime.getRuntime().maxMemory() / (1024 * 1024) + "m");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        for (Map.Entry<Object, Object> property : System.getProperties().entrySet()) {
+            if (property.getKey().toString().startsWith(LoadConfig.PROPERTY_PREFIX)) {
+                command.add("-D" + property.getKey() + "=" + property.getValue());
+            }
+        }
+        command.add(ProtocolBenchmark.class.getName());
+        for (String arg : args) {
+            command.add(arg);
+        }
+        long timeout = Long.getLong(LoadConfig.PROPERTY_PREFIX + "combinationTimeout", 600) * 1000;
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        boolean exited = false;
+        try {
+            // The output is read on its own thread, so that a hung JVM cannot block the deadline check
+            OutputReader output = new OutputReader(process.getInputStream());
+            Thread outputThread = new Thread(output, "benchmark-output");
+            outputThread.setDaemon(true);
+            outputThread.start();
+
+            long deadline = System.currentTimeMillis() + timeout;
+            while (!exited) {
+                try {
+                    process.exitValue();
+                    exited = true;
+                } catch (IllegalThreadStateException e) {
+                    if (System.currentTimeMillis() >= deadline) {
+                        log.error("Benchmark JVM did not finish within " + timeout + " ms, destroying it");
+                        return null;
+                    }
+                    Thread.sleep(EXIT_CHECK_INTERVAL);
+                }
+            }
+            outputThread.join(OUTPUT_TIMEOUT);
+            return output.result;
+        } finally {
+            if (!exited) {
+                process.destroy();
+            }
+        }
+    }
+
+    /**
+     * Runs one combination in this JVM and prints its result line.
+     */
+    private static void runCombination(String[] args) throws Exception {
+        String protocol = args[1];
+        String transport = args[2];
+        int batchSize = Integer.parseInt(args[3]);
+        String host = args[4];
+        int port = Integer.parseInt(args[5]);
+        long eventCount = Long.parseLong(args[6]);
+        long warmUpCount = Long.parseLong(args[7]);
+        long seed = Long.parseLong(args[8]);
+
+        BenchmarkCallback callback = new BenchmarkCallback(warmUpCount, eventCount);
+        TestWso2EventServer server = new TestWso2EventServer();
+        server.start(host, port, protocol, callback);
+
+        WSO2EventServerUtil.setTrustStoreParams();
+        AgentHolder.setConfigPath(writeAgentConfig(batchSize).getAbsolutePath());
+        // Both receivers listen for SSL on the port 100 above the TCP port
+        String receiverUrl = "ssl".equalsIgnoreCase(transport) ? "ssl://" + host + ":" + (port + 100)
+                : "tcp://" + host + ":" + port;
+        DataPublisher dataPublisher = new DataPublisher(protocol, receiverUrl, null, "admin", "admin");
+
+        LoadConfig config = LoadConfig.fromSystemProperties();
+        config.setEventCount(eventCount);
+        config.setWarmUpCount(warmUpCount);
+        config.setAgents(1);
+        // The generated values depend on the producer id, which is random by default
+        config.setProducerId(seed);
+        new LoadRunner(config, new SensorEventGenerator(seed), new NanoTimeSenderFactory(dataPublisher))
+                .run(ProtocolBenchmark.class, args);
+
+        boolean received = callback.await(RECEIVE_TIMEOUT);
+        dataPublisher.shutdownWithAgent();
+        server.stop();
+        if (!received) {
+            log.error("Received only " + callback.received.get() + " of " + (warmUpCount + eventCount) + " events");
+            System.exit(1);
+        }
+
+        DecimalFormat decimalFormat = new DecimalFormat("#.###");
+        Histogram histogram = callback.latencies;
+        double elapsedSeconds = (callback.endTime - callback.startTime) / 1e9;
+        System.out.println(RESULT_PREFIX + " " + protocol + " " + transport + " " + batchSize + " "
+                + decimalFormat.format(eventCount / elapsedSeconds) + " "
+                + decimalFormat.format(histogram.getValueAtPercentile(50) / 1000d) + " "
+                + decimalFormat.format(histogram.getValueAtPercentile(99) / 1000d) + " "
+                + decimalFormat.format(histogram.getValueAtPercentile(99.9) / 1000d) + " "
+                + decimalFormat.format(histogram.getMaxValue() / 1000d) + " "
+                + (callback.startCpuTime < 0 ? "n/a" : decimalFormat.format(
+                (callback.endCpuTime - callback.startCpuTime) / 1000d / eventCount)));
+        System.exit(0);
+    }
+
+    private static File writeAgentConfig(int batchSize) throws Exception {
+        String agentConfig = new String(Files.readAllBytes(new File(WSO2EventServerUtil.getDataAgentConfigPath())
+                .toPath()), "UTF-8").replaceAll("<BatchSize>\\d+</BatchSize>", "<BatchSize>" + batchSize
+                + "</BatchSize>");
+        File file = File.createTempFile("data-agent-config-" + batchSize + "-", ".xml");
+        file.deleteOnExit();
+        Files.write(file.toPath(), agentConfig.getBytes("UTF-8"));
+        return file;
+    }
+
+    /**
+     * @return CPU time used by this JVM in nanoseconds, or -1 if the JVM does not provide it
+     */
+    private static long getProcessCpuTime() {
+        OperatingSystemMXBean operatingSystemMXBean = ManagementFactory.getOperatingSystemMXBean();
+        if (operatingSystemMXBean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) operatingSystemMXBean).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    /**
+     * Prints the output of a benchmark JVM and keeps its result line.
+     */
+    private static class OutputReader implements Runnable {
+        private final InputStream in;
+        private volatile String[] result;
+
+        private OutputReader(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public void run() {
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.startsWith(RESULT_PREFIX)) {
+                            result = line.substring(RESULT_PREFIX.length()).trim().split(" ");
+                        } else {
+                            System.out.println(line);
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                log.error("Error when reading the output of the benchmark JVM", e);
+            }
+        }
+    }
+
+    /**
+     * Publishes each event with its send time from {@link System#nanoTime()} in the timestamp meta attribute. The
+     * events are taken from a pool created with the sender, so that sending does not allocate attribute arrays.
+     */
+    private static class NanoTimeSenderFactory implements EventSenderFactory {
+        private final DataPublisher dataPublisher;
+
+        private NanoTimeSenderFactory(DataPublisher dataPublisher) {
+            this.dataPublisher = dataPublisher;
+        }
+
+        @Override
+        public EventSender createSender(int workerId) {
+            final EventSchema schema = SensorEventGenerator.SENSOR_STREAM;
+            final Event[] pool = new Event[EVENT_POOL_SIZE];
+            for (int i = 0; i < pool.length; i++) {
+                pool[i] = new Event(schema.getStreamId(), 0, new Object[schema.getMetaDataNames().length],
+                        new Object[schema.getCorrelationDataNames().length],
+                        new Object[schema.getPayloadDataNames().length]);
+            }
+            return new EventSender() {
+                private int index = 0;
+
+                @Override
+                public void send(LoadEvent loadEvent) {
+                    Event event = pool[index];
+                    index = index + 1 == pool.length ? 0 : index + 1;
+
+                    Object[] metaData = event.getMetaData();
+                    System.arraycopy(loadEvent.getMetaData(), 0, metaData, 0, metaData.length);
+                    metaData[0] = System.nanoTime();
+                    System.arraycopy(loadEvent.getCorrelationData(), 0, event.getCorrelationData(), 0,
+                            event.getCorrelationData().length);
+                    System.arraycopy(loadEvent.getPayloadData(), 0, event.getPayloadData(), 0,
+                            event.getPayloadData().length);
+                    event.setTimeStamp(loadEvent.getTimestamp());
+                    dataPublisher.publish(event);
+                }
+
+                @Override
+                public void flush() {
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public void measurementStarted() {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+    /**
+     * Records the latency of the measured events and the time and CPU time at the start and the end of the measured
+     * phase, as seen by the receiver.
+     */
+    private static class BenchmarkCallback implements AgentCallback {
+        private final long warmUpCount;
+        private final long totalCount;
+        private final AtomicLong received = new AtomicLong(0);
+        private final Histogram latencies = new ConcurrentHistogram(3);
+        private final CountDownLatch receivedLatch = new CountDownLatch(1);
+        private volatile long startTime;
+        private volatile long startCpuTime;
+        private volatile long endTime;
+        private volatile long endCpuTime;
+
+        private BenchmarkCallback(long warmUpCount, long eventCount) {
+            this.warmUpCount = warmUpCount;
+            this.totalCount = warmUpCount + eventCount;
+        }
+
+        @Override
+        public void definedStream(StreamDefinition streamDefinition, int tenantID) {
+        }
+
+        @Override
+        public void removeStream(StreamDefinition streamDefinition, int tenantID) {
+        }
+
+        @Override
+        public void receive(List<Event> eventList, Credentials credentials) {
+            long currentTime = System.nanoTime();
+            long count = received.addAndGet(eventList.size());
+            long index = count - eventList.size();
+            // The measured phase starts with the batch completing the warm-up, or with the first batch without one
+            if (warmUpCount == 0 ? index == 0 : index < warmUpCount && count >= warmUpCount) {
+                startTime = currentTime;
+                startCpuTime = getProcessCpuTime();
+            }
+            for (Event event : eventList) {
+                if (index++ >= warmUpCount) {
+                    // Latencies are recorded in microseconds
+                    latencies.recordValue(Math.max(0, (currentTime - (Long) event.getMetaData()[0]) / 1000));
+                }
+            }
+            if (count >= totalCount && receivedLatch.getCount() > 0) {
+                endTime = currentTime;
+                endCpuTime = getProcessCpuTime();
+                receivedLatch.countDown();
+            }
+        }
+
+        private boolean await(long timeout) throws InterruptedException {
+            return receivedLatch.await(timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+}
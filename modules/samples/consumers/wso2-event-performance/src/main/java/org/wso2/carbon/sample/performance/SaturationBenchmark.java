@@ -0,0 +1,461 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.performance;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.databridge.agent.AgentHolder;
+import org.wso2.carbon.databridge.agent.DataPublisher;
+import org.wso2.carbon.databridge.commons.Credentials;
+import org.wso2.carbon.databridge.commons.Event;
+import org.wso2.carbon.databridge.commons.StreamDefinition;
+import org.wso2.carbon.databridge.core.AgentCallback;
+import org.wso2.carbon.sample.load.EventGenerator;
+import org.wso2.carbon.sample.load.EventSender;
+import org.wso2.carbon.sample.load.EventSenderFactory;
+import org.wso2.carbon.sample.load.LoadConfig;
+import org.wso2.carbon.sample.load.LoadEvent;
+import org.wso2.carbon.sample.load.LoadResult;
+import org.wso2.carbon.sample.load.LoadRunner;
+import org.wso2.carbon.sample.load.SchemaEventGenerator;
+import org.wso2.carbon.sample.load.SensorEventGenerator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the highest rate a CEP server sustains for the execution plans deployed on it.
+ * <p/>
+ * The benchmark publishes to the server's wso2event receiver and hosts a {@link TestWso2EventServer} receiver for the
+ * server's wso2event publisher, so it works with any plan whose output is published to this host. Each step waits for
+ * the output of the previous steps to stop, offers a fixed rate in open loop for a fixed time, then waits for its own
+ * output to drain. Output events timestamped before the step started are not counted. A step is sustained when the
+ * server accepted the offered rate, the share of output events per input event held up against the first step, and
+ * the p99 latency of the output events stayed within the SLO. Rates are swept upwards in fixed increments until the
+ * first step which is not sustained, or searched by bisection between the start and the maximum rate.
+ * <p/>
+ * The steps are logged as a table, written to saturation.csv and drawn in saturation.svg, which plots the accepted
+ * throughput and the p99 latency against the offered rate so the knee of the curve shows on one chart.
+ */
+public class SaturationBenchmark {
+    private static Log log = LogFactory.getLog(SaturationBenchmark.class);
+
+    /**
+     * Share of the offered rate, and of the first step's output per input event, a step may miss and still count as
+     * sustained.
+     */
+    private static final double TOLERANCE = 0.05;
+    private static final long QUIET_PERIOD = 1000;
+    private static final String USAGE = "Usage: SaturationBenchmark <receiverUrl> <host> <port> <protocol> "
+            + "<step|binary> <startRate> <maxRate> <rateStep> <stepDuration(s)> <sloP99(ms)> <outputDirectory> "
+            + "[<streamDefinition>], with 0 < startRate <= maxRate and a positive rateStep, stepDuration and sloP99";
+    /**
+     * Number of step durations to wait at most for the output of the previous steps to stop before a step starts.
+     */
+    private static final int SETTLE_STEPS = 3;
+
+    private final DataPublisher dataPublisher;
+    private final StepCallback callback;
+    private final EventGenerator generator;
+    private final long stepDuration;
+    private final double sloP99;
+    private double baselineOutputRatio = -1;
+
+    public SaturationBenchmark(DataPublisher dataPublisher, StepCallback callback, EventGenerator generator,
+                               long stepDuration, double sloP99) {
+        this.dataPublisher = dataPublisher;
+        this.callback = callback;
+        this.generator = generator;
+        this.stepDuration = stepDuration;
+        this.sloP99 = sloP99;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 11) {
+            log.error(USAGE);
+            System.exit(1);
+        }
+        String receiverUrl = args[0];
+        String host = args[1];
+        String protocol = args[3];
+        String search = args[4];
+        File outputDirectory = new File(args[10]);
+        int port;
+        double startRate;
+        double maxRate;
+        double rateStep;
+        long stepDuration;
+        double sloP99;
+        try {
+            port = Integer.parseInt(args[2]);
+            startRate = Double.parseDouble(args[5]);
+            maxRate = Double.parseDouble(args[6]);
+            rateStep = Double.parseDouble(args[7]);
+            stepDuration = Long.parseLong(args[8]) * 1000;
+            sloP99 = Double.parseDouble(args[9]);
+        } catch (NumberFormatException e) {
+            log.error("Invalid number: " + e.getMessage() + ". " + USAGE);
+            System.exit(1);
+            return;
+        }
+        // A rate step or resolution of 0 would never reach the maximum rate
+        if (!(startRate > 0 && maxRate >= startRate && rateStep > 0 && stepDuration > 0 && sloP99 > 0)
+                || !("step".equalsIgnoreCase(search) || "binary".equalsIgnoreCase(search))) {
+            log.error("Invalid benchmark settings: search " + search + ", startRate " + startRate + ", maxRate "
+                    + maxRate + ", rateStep " + rateStep + ", stepDuration " + stepDuration / 1000 + " s, sloP99 "
+                    + sloP99 + " ms. " + USAGE);
+            System.exit(1);
+        }
+
+        StepCallback callback = new StepCallback();
+        TestWso2EventServer server = new TestWso2EventServer();
+        if (args.length > 11 && !args[11].trim().isEmpty()) {
+            server.addStreamDefinition(WSO2EventServerUtil.loadStream(new File(args[11].trim())));
+        }
+        server.start(host, port, protocol, callback);
+
+        WSO2EventServerUtil.setTrustStoreParams();
+        AgentHolder.setConfigPath(WSO2EventServerUtil.getDataAgentConfigPath());
+        DataPublisher dataPublisher = new DataPublisher(protocol, receiverUrl, null, "admin", "admin");
+        EventGenerator generator = SchemaEventGenerator.fromSystemProperties(new SensorEventGenerator());
+
+        SaturationBenchmark benchmark = new SaturationBenchmark(dataPublisher, callback, generator, stepDuration,
+                sloP99);
+        try {
+            log.info("Warming up at " + startRate + " events/s");
+            benchmark.runStep(startRate);
+            List<Step> steps = "binary".equalsIgnoreCase(search)
+                    ? benchmark.bisect(startRate, maxRate, rateStep) : benchmark.sweep(startRate, maxRate, rateStep);
+            benchmark.report(steps, outputDirectory);
+        } finally {
+            dataPublisher.shutdownWithAgent();
+            server.stop();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Raises the rate by rateStep from startRate until a step is not sustained or maxRate is passed.
+     */
+    public List<Step> sweep(double startRate, double maxRate, double rateStep) throws Exception {
+        if (rateStep <= 0) {
+            throw new IllegalArgumentException("Rate step should be positive, but found " + rateStep);
+        }
+        List<Step> steps = new ArrayList<Step>();
+        for (double rate = startRate; rate <= maxRate; rate += rateStep) {
+            Step step = runStep(rate);
+            steps.add(step);
+            if (!step.isSustained()) {
+                break;
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * Bisects between startRate and maxRate until the sustained and unsustained rates are less than resolution apart.
+     */
+    public List<Step> bisect(double startRate, double maxRate, double resolution) throws Exception {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("Resolution should be positive, but found " + resolution);
+        }
+        List<Step> steps = new ArrayList<Step>();
+        Step low = runStep(startRate);
+        steps.add(low);
+        if (!low.isSustained()) {
+            return steps;
+        }
+        Step high = runStep(maxRate);
+        steps.add(high);
+        if (high.isSustained()) {
+            return steps;
+        }
+        double lowRate = startRate;
+        double highRate = maxRate;
+        while (highRate - lowRate > resolution) {
+            double rate = (lowRate + highRate) / 2;
+            Step step = runStep(rate);
+            steps.add(step);
+            if (step.isSustained()) {
+                lowRate = rate;
+            } else {
+                highRate = rate;
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * Offers the rate for the step duration and waits until the output of the step has been received.
+     */
+    public Step runStep(double rate) throws Exception {
+        // Output of an overloaded step may still be arriving, and would be counted against this step
+        if (!waitForQuiet(SETTLE_STEPS * stepDuration)) {
+            log.warn("Output of the previous step was still arriving after " + SETTLE_STEPS * stepDuration
+                    + " ms, events timestamped before the step are not counted");
+        }
+        callback.reset(System.currentTimeMillis());
+        LoadConfig config = LoadConfig.fromSystemProperties();
+        config.setRate(rate);
+        config.setOpenLoop(true);
+        config.setRampTime(0);
+        config.setWarmUpCount(0);
+        config.setEventCount(Math.max(1, Math.round(rate * stepDuration / 1000d)));
+        config.setAgents(1);
+        LoadResult result = new LoadRunner(config, generator, new PublisherSenderFactory(dataPublisher))
+                .run(SaturationBenchmark.class, new String[0]);
+
+        // The output of the step is complete once no event arrived for a while
+        waitForQuiet(stepDuration);
+        long received = callback.received.get();
+        Histogram latencies = callback.latencies.getIntervalHistogram();
+        if (callback.discarded.get() > 0) {
+            log.info("Discarded " + callback.discarded.get() + " output events of the previous steps");
+        }
+
+        Step step = new Step(rate, result.getThroughput(), result.getSentEvents(), received,
+                latencies.getTotalCount() > 0 ? latencies.getValueAtPercentile(99) : -1, result.getFailedThreads());
+        if (baselineOutputRatio < 0 && step.sentEvents > 0) {
+            // The first step tells how many output events the deployed plans emit per input event
+            baselineOutputRatio = received / (double) step.sentEvents;
+            if (received == 0) {
+                log.error("No output events were received, publish the output of the plans to this receiver");
+            }
+        }
+        step.sustained = result.getFailedThreads() == 0
+                && step.acceptedRate >= rate * (1 - TOLERANCE)
+                && step.sentEvents > 0 && baselineOutputRatio > 0
+                && received / (double) step.sentEvents >= baselineOutputRatio * (1 - TOLERANCE)
+                && step.p99 >= 0 && step.p99 <= sloP99;
+        log.info(String.format(Locale.US, "Offered %.0f events/s, accepted %.0f events/s, received %d of %d events, "
+                + "p99 %d ms: %s", rate, step.acceptedRate, received, step.sentEvents, step.p99,
+                step.sustained ? "sustained" : "not sustained"));
+        return step;
+    }
+
+    /**
+     * Waits until no output event arrived for the quiet period.
+     *
+     * @param maxWait time to wait at most in milliseconds
+     * @return false if events were still arriving after maxWait
+     */
+    private boolean waitForQuiet(long maxWait) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + maxWait;
+        long arrived = callback.arrived.get();
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(QUIET_PERIOD);
+            long current = callback.arrived.get();
+            if (current == arrived) {
+                return true;
+            }
+            arrived = current;
+        }
+        return false;
+    }
+
+    private void report(List<Step> steps, File outputDirectory) throws IOException {
+        Collections.sort(steps, new Comparator<Step>() {
+            @Override
+            public int compare(Step step1, Step step2) {
+                return Double.compare(step1.offeredRate, step2.offeredRate);
+            }
+        });
+        Step maxSustained = null;
+        for (Step step : steps) {
+            if (step.isSustained() && (maxSustained == null || step.acceptedRate > maxSustained.acceptedRate)) {
+                maxSustained = step;
+            }
+        }
+
+        StringBuilder table = new StringBuilder("Saturation benchmark with p99 SLO of ").append(sloP99)
+                .append(" ms:\n");
+        table.append(String.format("%14s %14s %12s %12s %8s %10s%n", "offered/sec", "accepted/sec", "sent",
+                "received", "p99 ms", "sustained"));
+        for (Step step : steps) {
+            table.append(String.format(Locale.US, "%14.0f %14.0f %12d %12d %8d %10s%n", step.offeredRate,
+                    step.acceptedRate, step.sentEvents, step.receivedEvents, step.p99, step.isSustained()));
+        }
+        table.append(maxSustained == null ? "No offered rate was sustained"
+                : String.format(Locale.US, "Maximum sustainable throughput: %.0f events/s", maxSustained.acceptedRate));
+        log.info(table);
+
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + outputDirectory.getAbsolutePath());
+        }
+        File csvFile = new File(outputDirectory, "saturation.csv");
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(csvFile), "UTF-8"));
+        try {
+            writer.println("offeredRate,acceptedRate,sentEvents,receivedEvents,p99,sustained");
+            for (Step step : steps) {
+                writer.println(String.format(Locale.US, "%.2f,%.2f,%d,%d,%d,%b", step.offeredRate, step.acceptedRate,
+                        step.sentEvents, step.receivedEvents, step.p99, step.isSustained()));
+            }
+        } finally {
+            writer.close();
+        }
+        File chartFile = new File(outputDirectory, "saturation.svg");
+        SaturationChart.write(chartFile, steps, sloP99, maxSustained);
+        log.info("Wrote " + csvFile.getAbsolutePath() + " and " + chartFile.getAbsolutePath());
+    }
+
+    /**
+     * Result of one offered rate.
+     */
+    public static class Step {
+        private final double offeredRate;
+        private final double acceptedRate;
+        private final long sentEvents;
+        private final long receivedEvents;
+        private final long p99;
+        private boolean sustained;
+
+        private Step(double offeredRate, double acceptedRate, long sentEvents, long receivedEvents, long p99,
+                     int failedThreads) {
+            this.offeredRate = offeredRate;
+            this.acceptedRate = failedThreads > 0 ? 0 : acceptedRate;
+            this.sentEvents = sentEvents;
+            this.receivedEvents = receivedEvents;
+            this.p99 = p99;
+        }
+
+        public double getOfferedRate() {
+            return offeredRate;
+        }
+
+        /**
+         * @return events per second the server's receiver took in
+         */
+        public double getAcceptedRate() {
+            return acceptedRate;
+        }
+
+        public long getSentEvents() {
+            return sentEvents;
+        }
+
+        public long getReceivedEvents() {
+            return receivedEvents;
+        }
+
+        /**
+         * @return p99 latency of the output events in milliseconds, or -1 if none were received
+         */
+        public long getP99() {
+            return p99;
+        }
+
+        public boolean isSustained() {
+            return sustained;
+        }
+    }
+
+    /**
+     * Counts the output events of the server and records their latency, per step. Events timestamped before the step
+     * started are output of the previous steps, and are discarded.
+     */
+    static class StepCallback implements AgentCallback {
+        private final AtomicLong arrived = new AtomicLong(0);
+        private final AtomicLong received = new AtomicLong(0);
+        private final AtomicLong discarded = new AtomicLong(0);
+        private final Recorder latencies = new Recorder(3);
+        private volatile long stepStartTime = Long.MAX_VALUE;
+
+        private void reset(long startTime) {
+            stepStartTime = startTime;
+            received.set(0);
+            discarded.set(0);
+            latencies.reset();
+        }
+
+        @Override
+        public void definedStream(StreamDefinition streamDefinition, int tenantID) {
+        }
+
+        @Override
+        public void removeStream(StreamDefinition streamDefinition, int tenantID) {
+        }
+
+        @Override
+        public void receive(List<Event> eventList, Credentials credentials) {
+            long currentTime = System.currentTimeMillis();
+            long startTime = stepStartTime;
+            int stepEvents = 0;
+            for (Event event : eventList) {
+                if (event.getTimeStamp() >= startTime) {
+                    latencies.recordValue(Math.max(0, currentTime - event.getTimeStamp()));
+                    stepEvents++;
+                }
+            }
+            arrived.addAndGet(eventList.size());
+            received.addAndGet(stepEvents);
+            discarded.addAndGet(eventList.size() - stepEvents);
+        }
+    }
+
+    /**
+     * Publishes copies of the generated events, since the data publisher queues them.
+     */
+    private static class PublisherSenderFactory implements EventSenderFactory {
+        private final DataPublisher dataPublisher;
+
+        private PublisherSenderFactory(DataPublisher dataPublisher) {
+            this.dataPublisher = dataPublisher;
+        }
+
+        @Override
+        public EventSender createSender(int workerId) {
+            return new EventSender() {
+                @Override
+                public void send(LoadEvent event) {
+                    dataPublisher.publish(new Event(event.getSchema().getStreamId(), event.getTimestamp(),
+                            event.getMetaData().clone(), event.getCorrelationData().clone(),
+                            event.getPayloadData().clone()));
+                }
+
+                @Override
+                public void flush() {
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public void measurementStarted() {
+        }
+
+        @Override
+        public void shutdown() {
+            // The data publisher is shared by all the steps
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.performance;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Draws the steps of a {@link SaturationBenchmark} as an SVG chart: the accepted throughput on the left axis and the
+ * p99 latency on the right axis, both against the offered rate, with the SLO and the maximum sustainable rate marked.
+ * Unsustained steps are drawn hollow.
+ */
+class SaturationChart {
+
+    private static final int WIDTH = 900;
+    private static final int HEIGHT = 540;
+    private static final int LEFT = 90;
+    private static final int RIGHT = 90;
+    private static final int TOP = 60;
+    private static final int BOTTOM = 70;
+    private static final int TICKS = 5;
+    private static final String THROUGHPUT_COLOR = "#1f77b4";
+    private static final String LATENCY_COLOR = "#d62728";
+    private static final String LIMIT_COLOR = "#2ca02c";
+
+    private SaturationChart() {
+    }
+
+    static void write(File file, List<SaturationBenchmark.Step> steps, double sloP99,
+                      SaturationBenchmark.Step maxSustained) throws IOException {
+        double maxRate = 1;
+        long maxLatency = (long) Math.ceil(sloP99);
+        for (SaturationBenchmark.Step step : steps) {
+            maxRate = Math.max(maxRate, Math.max(step.getOfferedRate(), step.getAcceptedRate()));
+            maxLatency = Math.max(maxLatency, step.getP99());
+        }
+        maxRate *= 1.05;
+        double latencyScale = Math.max(1, maxLatency * 1.2);
+
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            out.println(String.format("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%d\" height=\"%d\" "
+                    + "font-family=\"sans-serif\" font-size=\"12\">", WIDTH, HEIGHT));
+            out.println("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>");
+            out.println(text(WIDTH / 2, 30, "middle", 16, "black", "Throughput and p99 latency by offered rate"));
+
+            // Grid and axes
+            for (int i = 0; i <= TICKS; i++) {
+                double y = y(i / (double) TICKS);
+                out.println(line(LEFT, y, WIDTH - RIGHT, y, "#e0e0e0", ""));
+                out.println(text(LEFT - 8, y + 4, "end", 12, THROUGHPUT_COLOR, format(maxRate * i / TICKS)));
+                out.println(text(WIDTH - RIGHT + 8, y + 4, "start", 12, LATENCY_COLOR,
+                        format(latencyScale * i / TICKS)));
+                double x = x(i / (double) TICKS);
+                out.println(text(x, HEIGHT - BOTTOM + 18, "middle", 12, "black", format(maxRate * i / TICKS)));
+            }
+            out.println(line(LEFT, TOP, LEFT, HEIGHT - BOTTOM, "black", ""));
+            out.println(line(WIDTH - RIGHT, TOP, WIDTH - RIGHT, HEIGHT - BOTTOM, "black", ""));
+            out.println(line(LEFT, HEIGHT - BOTTOM, WIDTH - RIGHT, HEIGHT - BOTTOM, "black", ""));
+            out.println(text(WIDTH / 2, HEIGHT - 25, "middle", 13, "black", "offered events/s"));
+            out.println(String.format(Locale.US, "<text transform=\"translate(25,%d) rotate(-90)\" "
+                    + "text-anchor=\"middle\" fill=\"%s\">accepted events/s</text>", HEIGHT / 2, THROUGHPUT_COLOR));
+            out.println(String.format(Locale.US, "<text transform=\"translate(%d,%d) rotate(90)\" "
+                    + "text-anchor=\"middle\" fill=\"%s\">p99 latency (ms)</text>", WIDTH - 25, HEIGHT / 2,
+                    LATENCY_COLOR));
+
+            // Ideal throughput, SLO and the maximum sustainable rate
+            out.println(line(x(0), y(0), x(1), y(1), "#999999", "stroke-dasharray=\"4,4\""));
+            double sloY = y(sloP99 / latencyScale);
+            out.println(line(LEFT, sloY, WIDTH - RIGHT, sloY, LATENCY_COLOR, "stroke-dasharray=\"6,4\""));
+            out.println(text(WIDTH - RIGHT - 4, sloY - 6, "end", 12, LATENCY_COLOR, "SLO " + format(sloP99) + " ms"));
+            if (maxSustained != null) {
+                double limitX = x(maxSustained.getOfferedRate() / maxRate);
+                out.println(line(limitX, TOP, limitX, HEIGHT - BOTTOM, LIMIT_COLOR, "stroke-dasharray=\"6,4\""));
+                out.println(text(limitX + 4, TOP + 14, "start", 12, LIMIT_COLOR, "max sustainable "
+                        + format(maxSustained.getAcceptedRate()) + " events/s"));
+            }
+
+            // Series
+            StringBuilder throughput = new StringBuilder();
+            StringBuilder latency = new StringBuilder();
+            for (SaturationBenchmark.Step step : steps) {
+                double x = x(step.getOfferedRate() / maxRate);
+                throughput.append(String.format(Locale.US, "%.1f,%.1f ", x, y(step.getAcceptedRate() / maxRate)));
+                if (step.getP99() >= 0) {
+                    latency.append(String.format(Locale.US, "%.1f,%.1f ", x, y(step.getP99() / latencyScale)));
+                }
+            }
+            out.println(polyline(throughput, THROUGHPUT_COLOR));
+            out.println(polyline(latency, LATENCY_COLOR));
+            for (SaturationBenchmark.Step step : steps) {
+                double x = x(step.getOfferedRate() / maxRate);
+                String fill = step.isSustained() ? null : "white";
+                out.println(String.format(Locale.US, "<circle cx=\"%.1f\" cy=\"%.1f\" r=\"4\" stroke=\"%s\" "
+                                + "fill=\"%s\"/>", x, y(step.getAcceptedRate() / maxRate), THROUGHPUT_COLOR,
+                        fill == null ? THROUGHPUT_COLOR : fill));
+                if (step.getP99() >= 0) {
+                    double latencyY = y(step.getP99() / latencyScale);
+                    out.println(String.format(Locale.US, "<rect x=\"%.1f\" y=\"%.1f\" width=\"7\" height=\"7\" "
+                                    + "stroke=\"%s\" fill=\"%s\"/>", x - 3.5, latencyY - 3.5, LATENCY_COLOR,
+                            fill == null ? LATENCY_COLOR : fill));
+                }
+            }
+            out.println("</svg>");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @param fraction share of the horizontal axis, from zero to one
+     */
+    private static double x(double fraction) {
+        return LEFT + fraction * (WIDTH - LEFT - RIGHT);
+    }
+
+    /**
+     * @param fraction share of the vertical axis, from zero at the bottom to one at the top
+     */
+    private static double y(double fraction) {
+        return HEIGHT - BOTTOM - fraction * (HEIGHT - TOP - BOTTOM);
+    }
+
+    private static String line(double x1, double y1, double x2, double y2, String color, String attributes) {
+        return String.format(Locale.US, "<line x1=\"%.1f\" y1=\"%.1f\" x2=\"%.1f\" y2=\"%.1f\" stroke=\"%s\" %s/>",
+                x1, y1, x2, y2, color, attributes);
+    }
+
+    private static String polyline(StringBuilder points, String color) {
+        return "<polyline points=\"" + points.toString().trim() + "\" fill=\"none\" stroke=\"" + color
+                + "\" stroke-width=\"2\"/>";
+    }
+
+    private static String text(double x, double y, String anchor, int size, String color, String text) {
+        return String.format(Locale.US, "<text x=\"%.1f\" y=\"%.1f\" text-anchor=\"%s\" font-size=\"%d\" "
+                + "fill=\"%s\">%s</text>", x, y, anchor, size, color, text);
+    }
+
+    private static String format(double value) {
+        return value >= 10 || value == Math.rint(value) ? String.format(Locale.US, "%.0f", value)
+                : String.format(Locale.US, "%.1f", value);
+    }
+}
@@ -21,6 +21,7 @@ package org.wso2.carbon.sample.performance;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.databridge.commons.Credentials;
+import org.wso2.carbon.databridge.commons.Attribute;
 import org.wso2.carbon.databridge.commons.Event;
 import org.wso2.carbon.databridge.commons.StreamDefinition;
 import org.wso2.carbon.databridge.commons.thrift.data.ThriftEventBundle;
@@ -37,36 +38,44 @@ import org.wso2.carbon.databridge.core.internal.authentication.AuthenticationHan
 import org.wso2.carbon.databridge.receiver.binary.conf.BinaryDataReceiverConfiguration;
 import org.wso2.carbon.databridge.receiver.binary.internal.BinaryDataReceiver;
 import org.wso2.carbon.databridge.receiver.thrift.ThriftDataReceiver;
+import org.wso2.carbon.sample.metrics.ConsumerMetrics;
+import org.wso2.carbon.sample.metrics.SequenceTracker;
 import org.wso2.carbon.user.api.UserStoreException;
 
+import java.io.File;
 import java.io.IOException;
-import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class TestWso2EventServer {
     private static Log log = LogFactory.getLog(TestWso2EventServer.class);
     private ThriftDataReceiver thriftDataReceiver;
     private BinaryDataReceiver binaryDataReceiver;
-    private AtomicLong counter = new AtomicLong(0);
     private AbstractStreamDefinitionStore streamDefinitionStore = new InMemoryStreamDefinitionStore();
+    private final List<StreamDefinition> streamDefinitions = new ArrayList<StreamDefinition>();
     private static final TestWso2EventServer testServer = new TestWso2EventServer();
 
 
     public static void main(String[] args) throws DataBridgeException, StreamDefinitionStoreException {
+        final ConsumerMetrics metrics = ConsumerMetrics.fromSystemProperties("TestWso2EventServer");
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
             public void run() {
                 try {
-                    log.info("Final event count: " + testServer.counter.get());
+                    log.info("Final event count: " + metrics.getEventCount());
                 } catch (Throwable t) {
                     log.error("Unexpected error when running shutdown hook:" + t.getMessage(), t);
                 }
             }
         });
         log.info("Shutdown hook added.");
-        testServer.start(args[0], Integer.parseInt(args[1]), args[2], Integer.parseInt(args[3]), args[4]);
+        if (args.length > 4 && !args[4].trim().isEmpty()) {
+            testServer.addStreamDefinition(WSO2EventServerUtil.loadStream(new File(args[4].trim())));
+        }
+        metrics.start();
+        testServer.start(args[0], Integer.parseInt(args[1]), args[2], args[3], metrics);
         synchronized (testServer) {
             try {
                 testServer.wait();
@@ -77,7 +86,43 @@ public class TestWso2EventServer {
     }
 
 
-    public void start(String host, int receiverPort, String protocol, final int elapsedCount, String calcType)
+    /**
+     * @param calcType throughput to measure latencies against the receive time of each batch, latency to measure them
+     *                 against the receive time of each event, or raw-latency to skip decoding the events
+     */
+    public void start(String host, int receiverPort, String protocol, String calcType, ConsumerMetrics metrics)
+            throws DataBridgeException, StreamDefinitionStoreException {
+        if ("latency".equalsIgnoreCase(calcType)) {
+            start(host, receiverPort, protocol, new MetricsAgentCallback(metrics, true));
+        } else if ("raw-latency".equalsIgnoreCase(calcType)) {
+            start(host, receiverPort, protocol, new RawDataLatencyAgentCallback(metrics));
+        } else {
+            start(host, receiverPort, protocol, new MetricsAgentCallback(metrics, false));
+        }
+    }
+
+    public void start(String host, int receiverPort, String protocol, AgentCallback agentCallback)
+            throws DataBridgeException, StreamDefinitionStoreException {
+        start(host, receiverPort, protocol, agentCallback, null);
+    }
+
+    public void start(String host, int receiverPort, String protocol, RawDataAgentCallback rawDataAgentCallback)
+            throws DataBridgeException, StreamDefinitionStoreException {
+        start(host, receiverPort, protocol, null, rawDataAgentCallback);
+    }
+
+    /**
+     * Adds a stream to receive besides the sensor stream, such as a stream stamped with the producerId and sequence
+     * attributes. Should be called before starting.
+     */
+    public void addStreamDefinition(StreamDefinition streamDefinition) {
+        if (streamDefinition != null) {
+            streamDefinitions.add(streamDefinition);
+        }
+    }
+
+    private void start(String host, int receiverPort, String protocol, AgentCallback agentCallback,
+                       RawDataAgentCallback rawDataAgentCallback)
             throws DataBridgeException, StreamDefinitionStoreException {
         WSO2EventServerUtil.setKeyStoreParams();
 
@@ -110,14 +155,19 @@ public class TestWso2EventServer {
 
         }, streamDefinitionStore, WSO2EventServerUtil.getDataBridgeConfigPath());
 
-        streamDefinitionStore.saveStreamDefinitionToStore(WSO2EventServerUtil.loadStream(), -1234);
+        List<StreamDefinition> definitions = new ArrayList<StreamDefinition>(streamDefinitions);
+        definitions.add(0, WSO2EventServerUtil.loadStream());
+        for (StreamDefinition streamDefinition : definitions) {
+            streamDefinitionStore.saveStreamDefinitionToStore(streamDefinition, -1234);
+        }
 
-        if ("latency".equalsIgnoreCase(calcType)) {
-            databridge.subscribe(new LatencyAgentCallback(elapsedCount));
-        } else if ("raw-latency".equalsIgnoreCase(calcType)) {
-            databridge.subscribe(new RawDataLatencyAgentCallback(elapsedCount));
+        if (agentCallback != null) {
+            databridge.subscribe(agentCallback);
+            for (StreamDefinition streamDefinition : definitions) {
+                agentCallback.definedStream(streamDefinition, -1234);
+            }
         } else {
-            databridge.subscribe(new ThroughputAgentCallback(elapsedCount));
+            databridge.subscribe(rawDataAgentCallback);
         }
 
 
@@ -136,144 +186,96 @@ public class TestWso2EventServer {
         log.info("Test Server Started");
     }
 
-    class ThroughputAgentCallback implements AgentCallback {
-        private AtomicLong totalDelay = new AtomicLong(0);
-        private AtomicLong lastIndex = new AtomicLong(0);
-        private AtomicLong lastCounter = new AtomicLong(0);
-        private AtomicLong lastTime = new AtomicLong(System.currentTimeMillis());
-        private AtomicBoolean calcInProgress = new AtomicBoolean(false);
-        private DecimalFormat decimalFormat = new DecimalFormat("#.##");
-        private int elapsedCount = 0;
-
-        public ThroughputAgentCallback(int elapsedCount) {
-            this.elapsedCount = elapsedCount;
+    /**
+     * Records the received events with their latency, measured against the receive time of each event or, which is
+     * cheaper, against the receive time of the batch. Events of streams with producerId and sequence attributes also
+     * record their sequence.
+     */
+    static class MetricsAgentCallback implements AgentCallback {
+        private final ConsumerMetrics metrics;
+        private final boolean perEventTime;
+        // Section and index of the producer id and of the sequence attributes by stream id
+        private final ConcurrentMap<String, int[]> sequenceAttributes = new ConcurrentHashMap<String, int[]>();
+
+        public MetricsAgentCallback(ConsumerMetrics metrics, boolean perEventTime) {
+            this.metrics = metrics;
+            this.perEventTime = perEventTime;
         }
 
         public void definedStream(StreamDefinition streamDefinition,
                                   int tenantID) {
-        }
-
-        @Override
-        public void removeStream(StreamDefinition streamDefinition, int tenantID) {
-            //To change body of implemented methods use File | Settings | File Templates.
-            log.info("Test");
-        }
-
-        @Override
-        public void receive(List<Event> eventList, Credentials credentials) {
-            long currentTime = System.currentTimeMillis();
-            long currentBatchTotalDelay = 0;
-            for (Event event : eventList) {
-                currentBatchTotalDelay = currentBatchTotalDelay + (currentTime - event.getTimeStamp());
-            }
-            /** Following section should ideally be atomic **/
-            long localTotalDelay = totalDelay.addAndGet(currentBatchTotalDelay);
-            long localCounter = counter.addAndGet(eventList.size());
-            /** End of wish for atomic section **/
-
-            long index = localCounter / elapsedCount;
-
-            if (lastIndex.get() != index) {
-                if (calcInProgress.compareAndSet(false, true)) {
-                    //TODO Can be made thread safe further
-                    lastIndex.set(index);
-                    long currentWindowEventsReceived = localCounter - lastCounter.getAndSet(localCounter);
-                    //log.info("Current time: " + System.currentTimeMillis() + ", Event received time: " + currentTime + ", Last calculation time: " + lastTime.get());
-                    long elapsedTime = currentTime - lastTime.getAndSet(currentTime);
-                    double throughputPerSecond = (((double) currentWindowEventsReceived) / elapsedTime) * 1000;
-
-                    log.info("[" + Thread.currentThread().getName() + "] Received " + currentWindowEventsReceived + " sensor events in " + elapsedTime
-                            + " milliseconds with total throughput of " + decimalFormat.format(throughputPerSecond)
-                            + " events per second. Average delay is " + decimalFormat.format(localTotalDelay / (double) currentWindowEventsReceived));
-                    totalDelay.addAndGet(-localTotalDelay);
-                    calcInProgress.set(false);
-                }
+            int[] producerId = findAttribute(streamDefinition, SequenceTracker.PRODUCER_ID_ATTRIBUTE);
+            int[] sequence = findAttribute(streamDefinition, SequenceTracker.SEQUENCE_ATTRIBUTE);
+            if (producerId != null && sequence != null) {
+                sequenceAttributes.put(streamDefinition.getStreamId(),
+                        new int[]{producerId[0], producerId[1], sequence[0], sequence[1]});
             }
         }
-    }
-
-    class LatencyAgentCallback implements AgentCallback {
-        private AtomicLong totalDelay = new AtomicLong(0);
-        private AtomicLong lastIndex = new AtomicLong(0);
-        private AtomicLong lastCounter = new AtomicLong(0);
-        private AtomicLong lastTime = new AtomicLong(System.currentTimeMillis());
-        private AtomicLong maxLatency = new AtomicLong(0);
-        private AtomicLong minLatency = new AtomicLong(Long.MAX_VALUE);
-        private AtomicBoolean calcInProgress = new AtomicBoolean(false);
-        private DecimalFormat decimalFormat = new DecimalFormat("#.##");
-        private int elapsedCount = 0;
-
-        public LatencyAgentCallback(int elapsedCount) {
-            this.elapsedCount = elapsedCount;
-        }
-
-        public void definedStream(StreamDefinition streamDefinition,
-                                  int tenantID) {
-        }
 
         @Override
         public void removeStream(StreamDefinition streamDefinition, int tenantID) {
-            //To change body of implemented methods use File | Settings | File Templates.
-            log.info("Test");
+            sequenceAttributes.remove(streamDefinition.getStreamId());
         }
 
         @Override
         public void receive(List<Event> eventList, Credentials credentials) {
             long currentTime = System.currentTimeMillis();
-//            log.info("Received batch of " + eventList.size() + " events at: " + currentTime);
-            long currentBatchTotalDelay = 0;
+            String streamId = null;
+            int[] attributes = null;
             for (Event event : eventList) {
-                currentTime = System.currentTimeMillis();
-                long currentEventLatency = currentTime - event.getTimeStamp();
-//                log.info("Received event: " + event.getMetaData()[3] + " at " + currentTime +
-//                        "; Event timestamp and value of timestamp attribute: " + event.getMetaData()[0] + ", "
-//                        + event.getTimeStamp() + "; Latency(ms) : " + currentEventLatency);
-                long currentMaxLatency = maxLatency.get();
-                if (currentEventLatency > currentMaxLatency) {
-                    maxLatency.compareAndSet(currentMaxLatency, currentEventLatency);
+                if (perEventTime) {
+                    currentTime = System.currentTimeMillis();
+                }
+                metrics.recordEvent(currentTime - event.getTimeStamp());
+                if (!event.getStreamId().equals(streamId)) {
+                    streamId = event.getStreamId();
+                    attributes = sequenceAttributes.get(streamId);
                 }
-                long currentMinLatency = minLatency.get();
-                if (currentEventLatency < currentMinLatency) {
-                    minLatency.compareAndSet(currentMinLatency, currentEventLatency);
+                if (attributes != null) {
+                    Object producerId = getAttribute(event, attributes[0], attributes[1]);
+                    Object sequence = getAttribute(event, attributes[2], attributes[3]);
+                    if (producerId instanceof Number && sequence instanceof Number) {
+                        metrics.recordSequence(((Number) producerId).longValue(), ((Number) sequence).longValue());
+                    }
                 }
-                currentBatchTotalDelay = currentBatchTotalDelay + currentEventLatency;
             }
-            long localCounter = counter.addAndGet(eventList.size());
-            long localTotalDelay = totalDelay.addAndGet(currentBatchTotalDelay);
-
-            long index = localCounter / elapsedCount;
-
-            if (lastIndex.get() != index) {
-                if (calcInProgress.compareAndSet(false, true)) {
-                    lastIndex.set(index);
-                    long currentWindowEventsReceived = localCounter - lastCounter.getAndSet(localCounter);
-                    long elapsedTime = currentTime - lastTime.getAndSet(currentTime);
-                    log.info("Received " + currentWindowEventsReceived + " events in " + elapsedTime + " ms; Latency - Avg: "
-                            + decimalFormat.format(localTotalDelay / (double) currentWindowEventsReceived)
-                            + ", Min: " + minLatency.get() + ", Max: " + maxLatency.get());
-                    maxLatency.set(0);
-                    minLatency.set(Long.MAX_VALUE);
-                    totalDelay.addAndGet(-localTotalDelay);
-                    calcInProgress.set(false);
+        }
+
+        /**
+         * @return section (meta, correlation or payload) and index of the attribute, or null if the stream has none
+         */
+        private static int[] findAttribute(StreamDefinition streamDefinition, String name) {
+            List<List<Attribute>> sections = new ArrayList<List<Attribute>>();
+            sections.add(streamDefinition.getMetaData());
+            sections.add(streamDefinition.getCorrelationData());
+            sections.add(streamDefinition.getPayloadData());
+            for (int i = 0; i < sections.size(); i++) {
+                List<Attribute> attributes = sections.get(i);
+                for (int j = 0; attributes != null && j < attributes.size(); j++) {
+                    if (name.equals(attributes.get(j).getName())) {
+                        return new int[]{i, j};
+                    }
                 }
             }
+            return null;
+        }
 
+        private static Object getAttribute(Event event, int section, int index) {
+            Object[] data = section == 0 ? event.getMetaData()
+                    : section == 1 ? event.getCorrelationData() : event.getPayloadData();
+            return data != null && index < data.length ? data[index] : null;
         }
     }
 
-    class RawDataLatencyAgentCallback implements RawDataAgentCallback {
-        private AtomicLong totalDelay = new AtomicLong(0);
-        private AtomicLong lastIndex = new AtomicLong(0);
-        private AtomicLong lastCounter = new AtomicLong(0);
-        private AtomicLong lastTime = new AtomicLong(System.currentTimeMillis());
-        private AtomicLong maxLatency = new AtomicLong(0);
-        private AtomicLong minLatency = new AtomicLong(Long.MAX_VALUE);
-        private AtomicBoolean calcInProgress = new AtomicBoolean(false);
-        private DecimalFormat decimalFormat = new DecimalFormat("#.##");
-        private int elapsedCount = 0;
-
-        public RawDataLatencyAgentCallback(int elapsedCount) {
-            this.elapsedCount = elapsedCount;
+    /**
+     * Records the received event bundles without decoding them. Only the first event of a bundle is decoded, so one
+     * latency is recorded per bundle.
+     */
+    static class RawDataLatencyAgentCallback implements RawDataAgentCallback {
+        private final ConsumerMetrics metrics;
+
+        public RawDataLatencyAgentCallback(ConsumerMetrics metrics) {
+            this.metrics = metrics;
         }
 
         public void definedStream(StreamDefinition streamDefinition,
@@ -282,8 +284,6 @@ public class TestWso2EventServer {
 
         @Override
         public void removeStream(StreamDefinition streamDefinition, int tenantID) {
-            //To change body of implemented methods use File | Settings | File Templates.
-            log.info("Test");
         }
 
         @Override
@@ -292,38 +292,9 @@ public class TestWso2EventServer {
             if (receivedObject instanceof EventComposite) {
                 EventComposite eventComposite = (EventComposite) receivedObject;
                 ThriftEventBundle thriftEventBundle = (ThriftEventBundle) eventComposite.getEventBundle();
-//                log.info("Received batch of " + thriftEventBundle.getEventNum() + " events at: " + currentTime);
-                long currentBatchTotalDelay = 0;
                 long eventTimestamp = thriftEventBundle.getLongAttributeList().get(0);
-                long currentEventLatency = currentTime - eventTimestamp;
-                long currentMaxLatency = maxLatency.get();
-                if (currentEventLatency > currentMaxLatency) {
-                    maxLatency.compareAndSet(currentMaxLatency, currentEventLatency);
-                }
-                long currentMinLatency = minLatency.get();
-                if (currentEventLatency < currentMinLatency) {
-                    minLatency.compareAndSet(currentMinLatency, currentEventLatency);
-                }
-                currentBatchTotalDelay = currentBatchTotalDelay + currentEventLatency;
-                long localCounter = counter.addAndGet(thriftEventBundle.getEventNum());
-                long localTotalDelay = totalDelay.addAndGet(currentBatchTotalDelay);
-
-                long index = localCounter / elapsedCount;
-
-                if (lastIndex.get() != index) {
-                    if (calcInProgress.compareAndSet(false, true)) {
-                        lastIndex.set(index);
-                        long currentWindowEventsReceived = localCounter - lastCounter.getAndSet(localCounter);
-                        long elapsedTime = currentTime - lastTime.getAndSet(currentTime);
-                        log.info("Received " + currentWindowEventsReceived + " events in " + elapsedTime + " ms; Latency - Avg: "
-                                + decimalFormat.format(localTotalDelay / (double) currentWindowEventsReceived)
-                                + ", Min: " + minLatency.get() + ", Max: " + maxLatency.get());
-                        maxLatency.set(0);
-                        minLatency.set(Long.MAX_VALUE);
-                        totalDelay.addAndGet(-localTotalDelay);
-                        calcInProgress.set(false);
-                    }
-                }
+                metrics.recordEvents(thriftEventBundle.getEventNum());
+                metrics.recordLatency(currentTime - eventTimestamp);
             }
         }
     }
@@ -39,14 +39,29 @@ public class WSO2EventServerUtil {
 
     }
 
+    public static void setTrustStoreParams() {
+        String trustStore = securityFile.getAbsolutePath();
+        System.setProperty("javax.net.ssl.trustStore", trustStore + "" + File.separator + "client-truststore.jks");
+        System.setProperty("javax.net.ssl.trustStorePassword", "wso2carbon");
+    }
+
     public static String getDataBridgeConfigPath() {
         return new File("src" + File.separator + "main" + File.separator + "resources"
                 + File.separator + "data-bridge-config.xml").getAbsolutePath();
     }
 
+    public static String getDataAgentConfigPath() {
+        return new File("src" + File.separator + "main" + File.separator + "resources"
+                + File.separator + "data-agent-config.xml").getAbsolutePath();
+    }
+
     public static StreamDefinition loadStream() {
-        File fileEntry = new File("src" + File.separator + "main" + File.separator + "resources" + File.separator
-                + "org.wso2.event.sensor.stream_1.0.0.json").getAbsoluteFile();
+        return loadStream(new File("src" + File.separator + "main" + File.separator + "resources" + File.separator
+                + "org.wso2.event.sensor.stream_1.0.0.json"));
+    }
+
+    public static StreamDefinition loadStream(File file) {
+        File fileEntry = file.getAbsoluteFile();
         BufferedReader bufferedReader = null;
         StreamDefinition streamDefinition = null;
         StringBuilder stringBuilder = new StringBuilder();
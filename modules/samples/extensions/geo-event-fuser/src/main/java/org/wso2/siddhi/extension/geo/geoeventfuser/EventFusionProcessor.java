@@ -18,29 +18,69 @@
 
 package org.wso2.siddhi.extension.geo.geoeventfuser;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.wso2.siddhi.core.config.ExecutionPlanContext;
 import org.wso2.siddhi.core.event.ComplexEventChunk;
 import org.wso2.siddhi.core.event.stream.StreamEvent;
 import org.wso2.siddhi.core.event.stream.StreamEventCloner;
+import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
 import org.wso2.siddhi.core.executor.ExpressionExecutor;
 import org.wso2.siddhi.core.executor.VariableExpressionExecutor;
 import org.wso2.siddhi.core.query.processor.Processor;
+import org.wso2.siddhi.core.query.processor.SchedulingProcessor;
 import org.wso2.siddhi.core.query.processor.stream.window.WindowProcessor;
+import org.wso2.siddhi.core.util.Scheduler;
 import org.wso2.siddhi.query.api.definition.Attribute;
 import org.wso2.siddhi.query.api.exception.ExecutionPlanValidationException;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fuses the events produced for the same eventId by each of the deployed execution plans into one event.
+ * <p/>
+ * geo:eventsFusion([groupName,] eventId, state, information [, timeout [, maxBufferedEvents [, emitPartial]]])
+ * <p/>
+ * Events are held until one event has arrived from each execution plan subscribed to the {@link FusionGroup} of the
+ * given name, or of the default group. A fusion still incomplete after the timeout (in
+ * milliseconds, one minute by default) is expired by a timer and emitted with the events it has, or dropped when
+ * emitPartial is false. When more than maxBufferedEvents events are held, the oldest fusions are evicted the same way.
+ */
+public class EventFusionProcessor extends WindowProcessor implements SchedulingProcessor {
+    private static final Log log = LogFactory.getLog(EventFusionProcessor.class);
+    private static final long DEFAULT_TIMEOUT = 60000;
+    private static final int DEFAULT_MAX_BUFFERED_EVENTS = 100000;
+    private static final long REPORT_INTERVAL = 60000;
 
-public class EventFusionProcessor extends WindowProcessor {
     private final String[] statesArray = new String[]{"OFFLINE", "NORMAL", "WARNING", "ALERTED"};
-    private ConcurrentMap<String, List<StreamEvent>> eventsBuffer = new ConcurrentHashMap<String, List<StreamEvent>>();
+    // Pending fusions in order of arrival, which is also the order of their expiry times
+    private Map<String, PendingFusion> eventsBuffer = new LinkedHashMap<String, PendingFusion>();
+    private int bufferedEvents;
     private int eventIdPosition;
     private int statePosition;
     private int informationPosition;
+    private long timeout = DEFAULT_TIMEOUT;
+    private int maxBufferedEvents = DEFAULT_MAX_BUFFERED_EVENTS;
+    private boolean emitPartial = true;
+    private FusionGroup group;
+    private Scheduler scheduler;
+    private StreamEventCloner streamEventCloner;
+    private long timerGranularity;
+    private long lastScheduledTime;
+    private int lastPlansCount;
+    private long lastReportTime;
+    private long lastReportedDiscards;
+
+    private final AtomicLong completedFusions = new AtomicLong();
+    private final AtomicLong expiredFusions = new AtomicLong();
+    private final AtomicLong evictedFusions = new AtomicLong();
+    private final AtomicLong droppedEvents = new AtomicLong();
 
     /**
      * Method called when initialising the extension.
@@ -50,17 +90,76 @@ public class EventFusionProcessor extends WindowProcessor {
      */
     @Override
     protected void init(ExpressionExecutor[] expressionExecutors, ExecutionPlanContext executionPlanContext) {
-        if (attributeExpressionExecutors.length != 3) {
-            throw new ExecutionPlanValidationException("Invalid no of arguments passed to geo:eventsFusion(<string> " +
-                    "eventId, <string> finalState, <string> information) function, required 3 arguments, but " +
-                    "found " + attributeExpressionExecutors.length);
+        // The optional group name comes first, where the eventId attribute could not be a constant
+        String groupName = FusionGroup.DEFAULT_GROUP;
+        int offset = 0;
+        if (attributeExpressionExecutors.length > 0 &&
+                attributeExpressionExecutors[0] instanceof ConstantExpressionExecutor) {
+            Object value = getConstant(0, "groupName");
+            if (!(value instanceof String)) {
+                throw new ExecutionPlanValidationException("groupName of geo:eventsFusion should be a string, but " +
+                        "found " + value);
+            }
+            groupName = (String) value;
+            offset = 1;
         }
-        Attribute eventIdAttr = ((VariableExpressionExecutor) attributeExpressionExecutors[0]).getAttribute();
+        int arguments = attributeExpressionExecutors.length - offset;
+        if (arguments < 3 || arguments > 6) {
+            throw new ExecutionPlanValidationException("Invalid no of arguments passed to geo:eventsFusion([<string> " +
+                    "groupName,] <string> eventId, <string> finalState, <string> information [, <long> timeout [, " +
+                    "<int> maxBufferedEvents [, <bool> emitPartial]]]) function, required 3 to 6 arguments after " +
+                    "the group name, but found " + arguments);
+        }
+        group = FusionGroup.getGroup(groupName);
+        Attribute eventIdAttr = ((VariableExpressionExecutor) attributeExpressionExecutors[offset]).getAttribute();
         eventIdPosition = inputDefinition.getAttributePosition(eventIdAttr.getName());
-        Attribute finalStateAttr = ((VariableExpressionExecutor) attributeExpressionExecutors[1]).getAttribute();
+        Attribute finalStateAttr = ((VariableExpressionExecutor) attributeExpressionExecutors[offset + 1])
+                .getAttribute();
         statePosition = inputDefinition.getAttributePosition(finalStateAttr.getName());
-        Attribute informationAttr = ((VariableExpressionExecutor) attributeExpressionExecutors[2]).getAttribute();
+        Attribute informationAttr = ((VariableExpressionExecutor) attributeExpressionExecutors[offset + 2])
+                .getAttribute();
         informationPosition = inputDefinition.getAttributePosition(informationAttr.getName());
+        if (arguments > 3) {
+            timeout = getConstantNumber(offset + 3, "timeout").longValue();
+            if (timeout <= 0) {
+                throw new ExecutionPlanValidationException("Fusion timeout of geo:eventsFusion should be positive, " +
+                        "but found " + timeout);
+            }
+        }
+        if (arguments > 4) {
+            maxBufferedEvents = getConstantNumber(offset + 4, "maxBufferedEvents").intValue();
+            if (maxBufferedEvents <= 0) {
+                throw new ExecutionPlanValidationException("maxBufferedEvents of geo:eventsFusion should be " +
+                        "positive, but found " + maxBufferedEvents);
+            }
+        }
+        if (arguments > 5) {
+            Object value = getConstant(offset + 5, "emitPartial");
+            if (!(value instanceof Boolean)) {
+                throw new ExecutionPlanValidationException("emitPartial of geo:eventsFusion should be a bool, but " +
+                        "found " + value);
+            }
+            emitPartial = (Boolean) value;
+        }
+        // Expiry is checked on a coarse grid, so that a burst of new fusions does not schedule one timer each
+        timerGranularity = Math.max(1, timeout / 10);
+        lastPlansCount = getDeployedExecutionPlansCount();
+    }
+
+    private Object getConstant(int index, String name) {
+        if (!(attributeExpressionExecutors[index] instanceof ConstantExpressionExecutor)) {
+            throw new ExecutionPlanValidationException(name + " of geo:eventsFusion should be a constant");
+        }
+        return ((ConstantExpressionExecutor) attributeExpressionExecutors[index]).getValue();
+    }
+
+    private Number getConstantNumber(int index, String name) {
+        Object value = getConstant(index, name);
+        if (!(value instanceof Integer || value instanceof Long)) {
+            throw new ExecutionPlanValidationException(name + " of geo:eventsFusion should be an int or long, but " +
+                    "found " + value);
+        }
+        return (Number) value;
     }
 
     /**
@@ -71,41 +170,165 @@ public class EventFusionProcessor extends WindowProcessor {
      * @param streamEventCloner {@link StreamEventCloner}
      */
     @Override
-    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
-                           StreamEventCloner streamEventCloner) {
+    protected synchronized void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                                        StreamEventCloner streamEventCloner) {
+        this.streamEventCloner = streamEventCloner;
+        long currentTime = executionPlanContext.getTimestampGenerator().currentTime();
+        int plansCount = getDeployedExecutionPlansCount();
+        boolean plansUndeployed = plansCount < lastPlansCount;
+        lastPlansCount = plansCount;
         while (streamEventChunk.hasNext()) {
             StreamEvent streamEvent = streamEventChunk.next();
+            if (plansUndeployed) {
+                // Fusions waiting for a plan which is gone can be completed with the events they already have
+                completeFusions(plansCount, streamEvent, streamEventChunk);
+                plansUndeployed = false;
+            }
+            expireFusions(currentTime, streamEvent, streamEventChunk);
+            if (streamEvent.getType() == StreamEvent.Type.TIMER) {
+                streamEventChunk.remove();
+                continue;
+            }
             String eventId = (String) streamEvent.getOutputData()[eventIdPosition];
-            if (eventsBuffer.containsKey(eventId)) {
-                eventsBuffer.get(eventId).add(streamEvent);
-                if (eventsBuffer.get(eventId).size() == getDeployedExecutionPlansCount()) {
-                    // Do the fusion here and return combined event.
-                    fuseEvent(streamEvent);
-                    eventsBuffer.remove(eventId);
-                } else {
-                    streamEventChunk.remove();
-                }
-            } else if (getDeployedExecutionPlansCount().equals(1)) {
+            PendingFusion fusion = eventsBuffer.get(eventId);
+            if (fusion == null && plansCount <= 1) {
                 // Here we do not need to fuse(combine) multiple events.
                 // Since we don't get multiple events, just pass through.
-                nextProcessor.process(streamEventChunk);
+                completedFusions.incrementAndGet();
+                continue;
+            }
+            if (fusion == null || fusion.size() + 1 < plansCount) {
+                while (bufferedEvents >= maxBufferedEvents && !eventsBuffer.isEmpty()) {
+                    evictOldestFusion(streamEvent, streamEventChunk);
+                }
+                fusion = eventsBuffer.get(eventId);
+            }
+            if (fusion == null) {
+                fusion = new PendingFusion(eventId, currentTime);
+                eventsBuffer.put(eventId, fusion);
+                scheduleExpiry(fusion.arrivalTime + timeout);
+            }
+            fusion.add(streamEvent, statePosition, informationPosition);
+            bufferedEvents++;
+            if (fusion.size() >= plansCount) {
+                // Do the fusion here and return combined event.
+                eventsBuffer.remove(eventId);
+                bufferedEvents -= fusion.size();
+                fuseEvent(streamEvent, fusion);
+                completedFusions.incrementAndGet();
             } else {
-                List<StreamEvent> buffer = new ArrayList<StreamEvent>();
-                buffer.add(streamEvent);
-                eventsBuffer.put(eventId, buffer);
                 streamEventChunk.remove();
             }
         }
+        reportDiscards(currentTime);
         nextProcessor.process(streamEventChunk);
     }
 
+    private void scheduleExpiry(long expiryTime) {
+        if (scheduler != null && expiryTime > lastScheduledTime) {
+            lastScheduledTime = (expiryTime / timerGranularity + 1) * timerGranularity;
+            scheduler.notifyAt(lastScheduledTime);
+        }
+    }
+
+    private void expireFusions(long currentTime, StreamEvent currentEvent,
+                               ComplexEventChunk<StreamEvent> streamEventChunk) {
+        Iterator<PendingFusion> iterator = eventsBuffer.values().iterator();
+        while (iterator.hasNext()) {
+            PendingFusion fusion = iterator.next();
+            if (fusion.arrivalTime + timeout > currentTime) {
+                break;
+            }
+            iterator.remove();
+            bufferedEvents -= fusion.size();
+            expiredFusions.incrementAndGet();
+            emitPartialFusion(fusion, currentEvent, streamEventChunk);
+        }
+    }
+
+    private void evictOldestFusion(StreamEvent currentEvent, ComplexEventChunk<StreamEvent> streamEventChunk) {
+        Iterator<PendingFusion> iterator = eventsBuffer.values().iterator();
+        PendingFusion fusion = iterator.next();
+        iterator.remove();
+        bufferedEvents -= fusion.size();
+        evictedFusions.incrementAndGet();
+        emitPartialFusion(fusion, currentEvent, streamEventChunk);
+    }
+
+    private void completeFusions(int plansCount, StreamEvent currentEvent,
+                                 ComplexEventChunk<StreamEvent> streamEventChunk) {
+        Iterator<PendingFusion> iterator = eventsBuffer.values().iterator();
+        while (iterator.hasNext()) {
+            PendingFusion fusion = iterator.next();
+            if (fusion.size() >= plansCount) {
+                iterator.remove();
+                bufferedEvents -= fusion.size();
+                completedFusions.incrementAndGet();
+                emitFusion(fusion, currentEvent, streamEventChunk);
+            }
+        }
+    }
+
+    private void emitPartialFusion(PendingFusion fusion, StreamEvent currentEvent,
+                                   ComplexEventChunk<StreamEvent> streamEventChunk) {
+        if (emitPartial) {
+            emitFusion(fusion, currentEvent, streamEventChunk);
+        } else {
+            droppedEvents.addAndGet(fusion.size());
+        }
+    }
+
+    private void emitFusion(PendingFusion fusion, StreamEvent currentEvent,
+                            ComplexEventChunk<StreamEvent> streamEventChunk) {
+        StreamEvent lastEvent = fusion.lastEvent;
+        if (lastEvent == null) {
+            // The fusion was restored from a snapshot, so its last event is rebuilt from the persisted data
+            lastEvent = streamEventCloner.copyStreamEvent(currentEvent);
+            lastEvent.setOutputData(fusion.lastOutputData.clone());
+            lastEvent.setTimestamp(fusion.lastTimestamp);
+            lastEvent.setType(StreamEvent.Type.CURRENT);
+        }
+        fuseEvent(lastEvent, fusion);
+        lastEvent.setNext(null);
+        streamEventChunk.insertBeforeCurrent(lastEvent);
+    }
+
+    private void reportDiscards(long currentTime) {
+        if (currentTime - lastReportTime < REPORT_INTERVAL) {
+            return;
+        }
+        long discards = expiredFusions.get() + evictedFusions.get();
+        if (discards != lastReportedDiscards) {
+            log.info("Incomplete fusions - expired: " + expiredFusions.get() + ", evicted: " + evictedFusions.get()
+                    + ", dropped events: " + droppedEvents.get() + ", completed fusions: " + completedFusions.get()
+                    + ", pending fusions: " + eventsBuffer.size() + ", buffered events: " + bufferedEvents);
+            lastReportedDiscards = discards;
+        }
+        lastReportTime = currentTime;
+    }
+
     /**
-     * Get number of deployed execution plans.
+     * Get number of deployed execution plans subscribed to the fusion group of this processor.
      *
      * @return number of deployed execution plans.
      */
-    public Integer getDeployedExecutionPlansCount() {
-        return ExecutionPlansCount.getNumberOfExecutionPlans();
+    public int getDeployedExecutionPlansCount() {
+        return group.getNumberOfExecutionPlans();
+    }
+
+    /**
+     * Fuse given {@link StreamEvent} with the events buffered for its eventId.
+     *
+     * @param event {@link StreamEvent} to fuse
+     */
+    public synchronized void fuseEvent(StreamEvent event) {
+        String eventId = (String) event.getOutputData()[eventIdPosition];
+        PendingFusion fusion = eventsBuffer.get(eventId);
+        if (fusion == null) {
+            fusion = new PendingFusion(eventId, event.getTimestamp());
+            fusion.add(event, statePosition, informationPosition);
+        }
+        fuseEvent(event, fusion);
     }
 
     /**
@@ -116,11 +339,10 @@ public class EventFusionProcessor extends WindowProcessor {
      * States will be in all caps to mimics
      * that states not get on the way.
      *
-     * @param event {@link StreamEvent} to fuse
+     * @param event  {@link StreamEvent} to fuse
+     * @param fusion states and information received for the eventId of the given event
      */
-    public void fuseEvent(StreamEvent event) {
-        String eventId = (String) event.getOutputData()[eventIdPosition];
-        List<StreamEvent> receivedEvents = eventsBuffer.get(eventId);
+    private void fuseEvent(StreamEvent event, PendingFusion fusion) {
         List<String> states = Arrays.asList(statesArray);
         Object[] outputData = event.getOutputData();
         String finalState = "";
@@ -129,17 +351,17 @@ public class EventFusionProcessor extends WindowProcessor {
         String warningStrings = "";
 
         Integer currentStateIndex = -1;
-        for (StreamEvent receivedEvent : receivedEvents) {
-            String eventState = (String) receivedEvent.getOutputData()[statePosition];
+        for (int i = 0; i < fusion.size(); i++) {
+            String eventState = fusion.states.get(i);
             Integer eventStateIndex = states.indexOf(eventState);
             if (eventStateIndex > currentStateIndex) {
                 finalState = eventState;
                 currentStateIndex = eventStateIndex;
             }
             if ("ALERTED".equals(eventState)) {
-                alertStrings += "," + receivedEvent.getOutputData()[informationPosition];
+                alertStrings += "," + fusion.information.get(i);
             } else if ("WARNING".equals(eventState)) {
-                warningStrings += "," + receivedEvent.getOutputData()[informationPosition];
+                warningStrings += "," + fusion.information.get(i);
             }
         }
 
@@ -158,6 +380,51 @@ public class EventFusionProcessor extends WindowProcessor {
         event.setOutputData(outputData);
     }
 
+    /**
+     * @return number of fusions emitted with one event from each execution plan
+     */
+    public long getCompletedFusions() {
+        return completedFusions.get();
+    }
+
+    /**
+     * @return number of incomplete fusions which timed out
+     */
+    public long getExpiredFusions() {
+        return expiredFusions.get();
+    }
+
+    /**
+     * @return number of incomplete fusions evicted to keep the buffered events under the limit
+     */
+    public long getEvictedFusions() {
+        return evictedFusions.get();
+    }
+
+    /**
+     * @return number of buffered events discarded with expired or evicted fusions when partial fusions are not emitted
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * @return number of events currently held for incomplete fusions
+     */
+    public synchronized int getBufferedEvents() {
+        return bufferedEvents;
+    }
+
+    @Override
+    public void setScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
     @Override
     public void start() {
         // Do nothing.
@@ -168,13 +435,94 @@ public class EventFusionProcessor extends WindowProcessor {
         // Do nothing.
     }
 
+    /**
+     * The pending fusions are persisted as a list of Object[] records holding only JDK types, see
+     * {@link PendingFusion#toSnapshot()}, so that they can be restored whichever bundle deserializes them. The record
+     * of a fusion is kept between snapshots and rebuilt only when the fusion has received events since, which makes a
+     * persistence cycle cost a list copy for the fusions that did not change.
+     *
+     * @return the pending fusion records in order of arrival
+     */
     @Override
-    public Object[] currentState() {
-        return new Object[]{eventsBuffer};
+    public synchronized Object[] currentState() {
+        List<Object[]> fusions = new ArrayList<Object[]>(eventsBuffer.size());
+        for (PendingFusion fusion : eventsBuffer.values()) {
+            fusions.add(fusion.toSnapshot());
+        }
+        return new Object[]{fusions};
     }
 
     @Override
-    public void restoreState(Object[] state) {
-        // Do nothing.
+    public synchronized void restoreState(Object[] state) {
+        eventsBuffer.clear();
+        bufferedEvents = 0;
+        lastScheduledTime = 0;
+        if (state.length == 0 || !(state[0] instanceof List)) {
+            // State persisted by an earlier version of the extension did not hold the buffered events
+            log.warn("Pending event fusions could not be restored from the persisted state, starting with none.");
+            return;
+        }
+        for (Object record : (List<?>) state[0]) {
+            PendingFusion fusion = PendingFusion.fromSnapshot((Object[]) record);
+            eventsBuffer.put(fusion.eventId, fusion);
+            bufferedEvents += fusion.size();
+            scheduleExpiry(fusion.arrivalTime + timeout);
+        }
+        log.info("Restored " + eventsBuffer.size() + " pending event fusions holding " + bufferedEvents + " events.");
+    }
+
+    /**
+     * States and information received so far for one eventId, and the last of the received events which is emitted
+     * as the fused event.
+     */
+    private static class PendingFusion {
+        private final String eventId;
+        private final long arrivalTime;
+        private final List<String> states = new ArrayList<String>(2);
+        private final List<String> information = new ArrayList<String>(2);
+        private StreamEvent lastEvent;
+        private Object[] lastOutputData;
+        private long lastTimestamp;
+        private Object[] snapshot;
+
+        private PendingFusion(String eventId, long arrivalTime) {
+            this.eventId = eventId;
+            this.arrivalTime = arrivalTime;
+        }
+
+        private void add(StreamEvent event, int statePosition, int informationPosition) {
+            Object[] outputData = event.getOutputData();
+            states.add((String) outputData[statePosition]);
+            information.add((String) outputData[informationPosition]);
+            lastEvent = event;
+            lastOutputData = outputData;
+            lastTimestamp = event.getTimestamp();
+            snapshot = null;
+        }
+
+        private int size() {
+            return states.size();
+        }
+
+        /**
+         * @return {eventId, arrivalTime, states, information, lastTimestamp, lastOutputData}
+         */
+        private Object[] toSnapshot() {
+            if (snapshot == null) {
+                snapshot = new Object[]{eventId, arrivalTime, states.toArray(new String[states.size()]),
+                        information.toArray(new String[information.size()]), lastTimestamp, lastOutputData.clone()};
+            }
+            return snapshot;
+        }
+
+        private static PendingFusion fromSnapshot(Object[] snapshot) {
+            PendingFusion fusion = new PendingFusion((String) snapshot[0], (Long) snapshot[1]);
+            fusion.states.addAll(Arrays.asList((String[]) snapshot[2]));
+            fusion.information.addAll(Arrays.asList((String[]) snapshot[3]));
+            fusion.lastTimestamp = (Long) snapshot[4];
+            fusion.lastOutputData = (Object[]) snapshot[5];
+            fusion.snapshot = snapshot;
+            return fusion;
+        }
     }
-}
\ No newline at end of file
+}
@@ -20,20 +20,28 @@ package org.wso2.siddhi.extension.geo.geoeventfuser;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.siddhi.core.config.ExecutionPlanContext;
+import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
 import org.wso2.siddhi.core.executor.ExpressionExecutor;
 import org.wso2.siddhi.core.query.processor.stream.function.StreamFunctionProcessor;
 import org.wso2.siddhi.query.api.definition.AbstractDefinition;
 import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.exception.ExecutionPlanValidationException;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Subscribes the execution plan to a {@link FusionGroup}, so that the fusion waits for an event from it.
+ * <p/>
+ * geo:subscribe([groupName])
+ */
 public class ExecutionPlanSubscriber extends StreamFunctionProcessor {
 
     private static final Log log = LogFactory.getLog(ExecutionPlanSubscriber.class);
     private Boolean initialized = false;
+    private FusionGroup group;
     private Map<String, Integer> paramPositions = new HashMap<String, Integer>();
 
     /**
@@ -68,7 +76,20 @@ public class ExecutionPlanSubscriber extends StreamFunctionProcessor {
      */
     @Override
     protected List<Attribute> init(AbstractDefinition abstractDefinition, ExpressionExecutor[] expressionExecutors, ExecutionPlanContext executionPlanContext) {
+        if (attributeExpressionExecutors.length > 1) {
+            throw new ExecutionPlanValidationException("Invalid no of arguments passed to geo:subscribe([<string> " +
+                    "groupName]) function, required 0 or 1 arguments, but found " + attributeExpressionExecutors.length);
+        }
+        String groupName = FusionGroup.DEFAULT_GROUP;
+        if (attributeExpressionExecutors.length == 1) {
+            if (!(attributeExpressionExecutors[0] instanceof ConstantExpressionExecutor) ||
+                    !(((ConstantExpressionExecutor) attributeExpressionExecutors[0]).getValue() instanceof String)) {
+                throw new ExecutionPlanValidationException("groupName of geo:subscribe should be a constant string");
+            }
+            groupName = (String) ((ConstantExpressionExecutor) attributeExpressionExecutors[0]).getValue();
+        }
         if (!initialized) {
+            group = FusionGroup.getGroup(groupName);
             upCount();
             this.initialized = true;
         }
@@ -93,7 +114,10 @@ public class ExecutionPlanSubscriber extends StreamFunctionProcessor {
      */
     @Override
     public void stop() {
-        downCount();
+        if (initialized) {
+            downCount();
+            initialized = false;
+        }
     }
 
     /**
@@ -122,14 +146,14 @@ public class ExecutionPlanSubscriber extends StreamFunctionProcessor {
     }
 
     void upCount() {
-        ExecutionPlansCount.upCount();
-        log.info("upCountNumberOfExecutionPlans current count after update = " + ExecutionPlansCount
-                .getNumberOfExecutionPlans());
+        int count = group.upCount();
+        log.info("upCountNumberOfExecutionPlans of fusion group " + group.getName() + " current count after update = "
+                + count);
     }
 
     void downCount() {
-        ExecutionPlansCount.downCount();
-        log.info("downCountNumberOfExecutionPlans current count after update = " + ExecutionPlansCount
-                .getNumberOfExecutionPlans());
+        int count = group.downCount();
+        log.info("downCountNumberOfExecutionPlans of fusion group " + group.getName() + " current count after " +
+                "update = " + count);
     }
 }
@@ -0,0 +1,76 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.wso2.siddhi.extension.geo.geoeventfuser;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Execution plans whose events are fused together, see {@link ExecutionPlanSubscriber} and
+ * {@link EventFusionProcessor}. Groups are looked up by name so that independent pipelines deployed on the same node
+ * are fused separately.
+ */
+public class FusionGroup {
+
+    public static final String DEFAULT_GROUP = "default";
+
+    private static final ConcurrentMap<String, FusionGroup> groups = new ConcurrentHashMap<String, FusionGroup>();
+
+    private final String name;
+    private final AtomicInteger numberOfExecutionPlans = new AtomicInteger();
+
+    private FusionGroup(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param name name of the group
+     * @return the group with the given name, created on first use
+     */
+    public static FusionGroup getGroup(String name) {
+        FusionGroup group = groups.get(name);
+        if (group == null) {
+            FusionGroup newGroup = new FusionGroup(name);
+            group = groups.putIfAbsent(name, newGroup);
+            if (group == null) {
+                group = newGroup;
+            }
+        }
+        return group;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return number of execution plans currently subscribed to the group
+     */
+    public int getNumberOfExecutionPlans() {
+        return numberOfExecutionPlans.get();
+    }
+
+    public int upCount() {
+        return numberOfExecutionPlans.incrementAndGet();
+    }
+
+    public int downCount() {
+        return numberOfExecutionPlans.decrementAndGet();
+    }
+}
@@ -20,18 +20,37 @@
 
 package org.wso2.siddhi.extension.geo.geoeventnotifier;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.wso2.siddhi.core.config.ExecutionPlanContext;
 import org.wso2.siddhi.core.exception.ExecutionPlanRuntimeException;
+import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
 import org.wso2.siddhi.core.executor.ExpressionExecutor;
 import org.wso2.siddhi.core.executor.function.FunctionExecutor;
 import org.wso2.siddhi.query.api.definition.Attribute;
 import org.wso2.siddhi.query.api.exception.ExecutionPlanValidationException;
-import java.util.HashMap;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tells whether the information of an id changed since its previous event.
+ * <p/>
+ * geoDashboard:needToNotify(id, information [, triggerFirst [, cacheSize]])
+ * <p/>
+ * Only a 64 bit hash of the last information is kept per id, in a cache holding the cacheSize (100000 by default)
+ * most recently seen ids. An id evicted from the cache is treated as seen for the first time.
+ */
 public class NotifyAlert extends FunctionExecutor{
 
+    private static final Log log = LogFactory.getLog(NotifyAlert.class);
+    private static final int DEFAULT_CACHE_SIZE = 100000;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
     private Attribute.Type returnType = Attribute.Type.BOOL;
-    private HashMap<String, String> informationBuffer = new HashMap<String, String>();
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+    private Map<String, Long> informationBuffer = createInformationBuffer(DEFAULT_CACHE_SIZE);
 
     @Override
     protected void init(ExpressionExecutor[] attributeExpressionExecutors,
@@ -67,13 +86,72 @@ public class NotifyAlert extends FunctionExecutor{
                         "" + "required " + Attribute.Type.STRING +" but found " + attributeExpressionExecutors[2]
                         .getReturnType().toString());
             }
+        }else if (attributeExpressionExecutors.length == 4) {
+            if (attributeExpressionExecutors[0].getReturnType() != Attribute.Type.STRING ||
+                    attributeExpressionExecutors[1].getReturnType() != Attribute.Type.STRING ||
+                    attributeExpressionExecutors[2].getReturnType() != Attribute.Type.STRING) {
+                throw new ExecutionPlanValidationException("Invalid parameter type found for the first three " +
+                        "arguments of geoDashboard:needToNotify(id,information,triggerFirst,cacheSize) function, " +
+                        "required " + Attribute.Type.STRING);
+            }
+            if (!(attributeExpressionExecutors[3] instanceof ConstantExpressionExecutor) ||
+                    attributeExpressionExecutors[3].getReturnType() != Attribute.Type.INT) {
+                throw new ExecutionPlanValidationException("Invalid parameter found for the fourth argument of " +
+                        "geoDashboard:needToNotify(id,information,triggerFirst,cacheSize) function, required a " +
+                        "constant " + Attribute.Type.INT);
+            }
+            cacheSize = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[3]).getValue();
+            if (cacheSize <= 0) {
+                throw new ExecutionPlanValidationException("cacheSize of geoDashboard:needToNotify should be " +
+                        "positive, but found " + cacheSize);
+            }
+            informationBuffer = createInformationBuffer(cacheSize);
         }else {
             throw new ExecutionPlanValidationException("Invalid no of arguments passed to geoDashboard:needToNotify() " +
-                    "function, required 2,3, but found " + attributeExpressionExecutors.length);
+                    "function, required 2,3,4, but found " + attributeExpressionExecutors.length);
         }
 
     }
 
+    /**
+     * @return a map from ids to information hashes, synchronized and evicting the least recently used id when full
+     */
+    private static Map<String, Long> createInformationBuffer(final int cacheSize) {
+        return new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @return 64 bit FNV-1a hash of the characters of the given string
+     */
+    static long hash(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Records the information hash of the given id.
+     *
+     * @return true if the id was in the cache with a different information hash
+     */
+    private boolean isChanged(String id, String information) {
+        long hash = hash(information);
+        Long previousHash;
+        synchronized (this) {
+            previousHash = informationBuffer.put(id, hash);
+        }
+        return previousHash != null && previousHash != hash;
+    }
+
     @Override
     protected Object execute(Object[] data) {
         boolean returnValue = false;
@@ -88,14 +166,8 @@ public class NotifyAlert extends FunctionExecutor{
                         "information) function" + ". Second " + "argument cannot be null");
             }
 
-            String id = (String) data[0];
-            String currentInformation = (String) data[1];
-            if (informationBuffer.containsKey(id) && !informationBuffer.get(id).equals(currentInformation)) {
-                returnValue = true;
-            }
-            informationBuffer.put(id, currentInformation);
         }
-        if (data.length == 3) {
+        if (data.length >= 3) {
 
             if (data[0] == null) {
                 throw new ExecutionPlanRuntimeException("Invalid input given to geoDashboard:needToNotify(id," +
@@ -110,16 +182,12 @@ public class NotifyAlert extends FunctionExecutor{
                         "information,triggerFirst) function" + ". Third " + "argument cannot be null");
             }
         }
-        if (data.length == 3) {
+        if (data.length >= 3) {
             returnValue = Boolean.valueOf(((String)data[2]).equals("sendFirst"));
         }
-        String id = (String) data[0];
-        String currentInformation = (String) data[1];
-
-        if (informationBuffer.containsKey(id) && !informationBuffer.get(id).equals(currentInformation)) {
+        if (isChanged((String) data[0], (String) data[1])) {
             returnValue = true;
         }
-        informationBuffer.put(id, currentInformation);
         return returnValue;
     }
 
@@ -143,13 +211,34 @@ public class NotifyAlert extends FunctionExecutor{
         return returnType;
     }
 
+    /**
+     * @return the cached ids and their information hashes, from the least to the most recently used
+     */
     @Override
-    public Object[] currentState() {
-        return new Object[0];
+    public synchronized Object[] currentState() {
+        String[] ids = new String[informationBuffer.size()];
+        long[] hashes = new long[ids.length];
+        int i = 0;
+        for (Map.Entry<String, Long> entry : informationBuffer.entrySet()) {
+            ids[i] = entry.getKey();
+            hashes[i] = entry.getValue();
+            i++;
+        }
+        return new Object[]{ids, hashes};
     }
 
     @Override
-    public void restoreState(Object[] state) {
-
+    public synchronized void restoreState(Object[] state) {
+        informationBuffer.clear();
+        if (state.length != 2 || !(state[0] instanceof String[]) || !(state[1] instanceof long[])) {
+            // State persisted by an earlier version of the extension did not hold the information buffer
+            log.warn("Information of geoDashboard:needToNotify could not be restored from the persisted state.");
+            return;
+        }
+        String[] ids = (String[]) state[0];
+        long[] hashes = (long[]) state[1];
+        for (int i = 0; i < ids.length; i++) {
+            informationBuffer.put(ids[i], hashes[i]);
+        }
     }
 }
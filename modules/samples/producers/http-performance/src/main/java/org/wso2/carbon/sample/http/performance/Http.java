@@ -20,49 +20,94 @@ package org.wso2.carbon.sample.http.performance;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.http.client.HttpClient;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.SystemDefaultHttpClient;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.apache.axiom.om.util.Base64;
-import com.google.gson.JsonObject;
+import org.wso2.carbon.sample.load.EventGenerator;
+import org.wso2.carbon.sample.load.EventSender;
+import org.wso2.carbon.sample.load.EventSenderFactory;
+import org.wso2.carbon.sample.load.JsonEventWriter;
+import org.wso2.carbon.sample.load.LoadConfig;
+import org.wso2.carbon.sample.load.LoadEvent;
+import org.wso2.carbon.sample.load.LoadRunner;
+import org.wso2.carbon.sample.load.SchemaEventGenerator;
+import org.wso2.carbon.sample.load.SensorEventGenerator;
 
-import java.text.DecimalFormat;
+import java.io.IOException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class Http implements Runnable {
+/**
+ * Posts events in the JSON format to the CEP http receiver.
+ * <p/>
+ * All publisher threads share one pool of persistent connections. Each thread can run up to concurrentRequests
+ * blocking requests at the same time on its own request threads, and can send batchSize events per request as a JSON
+ * array. The requests are not pipelined: every request holds its own connection until the response is read. With the
+ * defaults of one concurrent request and one event per request, each event is posted by the publisher thread itself.
+ */
+public class Http implements EventSenderFactory {
     private static Log log = LogFactory.getLog(Http.class);
-    static String url;
-    static String username;
-    static String password;
-    static long noOfEvents;
-    long count;
-    static int elapsedCount;
-    static int noOfPublishers;
-
-    public Http() {
-        count = 0;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int batchSize;
+    private final int concurrentRequests;
+    private final CloseableHttpClient httpClient;
+
+    public Http(String url, String username, String password, int threads, int batchSize, int concurrentRequests) {
+        if (concurrentRequests < 1) {
+            throw new IllegalArgumentException("Number of concurrent requests should be positive, but found "
+                    + concurrentRequests);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.batchSize = batchSize;
+        this.concurrentRequests = concurrentRequests;
+
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", SSLConnectionSocketFactory.getSystemSocketFactory())
+                .build();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+        connectionManager.setMaxTotal(threads * concurrentRequests);
+        connectionManager.setDefaultMaxPerRoute(threads * concurrentRequests);
+        httpClient = HttpClients.custom().setConnectionManager(connectionManager).useSystemProperties().build();
     }
 
     public static void main(String args[]) {
         log.info("Starting WSO2 Http Client");
-        url = args[0];
-        username = args[1];
-        password = args[2];
         try {
-            noOfEvents = Long.parseLong(args[3]);
-            elapsedCount = Integer.parseInt(args[4]);
-            noOfPublishers = Integer.parseInt(args[5]);
-            ExecutorService executor = Executors.newFixedThreadPool(noOfPublishers);
-            for (int i = 0; i < noOfPublishers; i++) {
-                Runnable publisher = new Http();
-                executor.execute(publisher);
+            LoadConfig config = LoadConfig.fromSystemProperties();
+            config.setEventCount(Long.parseLong(args[3]));
+            config.setThreads(Integer.parseInt(args[4]));
+            if (LoadRunner.coordinate(config, Http.class, args)) {
+                return;
             }
-            executor.shutdown();
-
+            int concurrentRequests = Integer.getInteger("load.concurrentRequests", 1);
+            EventGenerator generator = SchemaEventGenerator.fromSystemProperties(new SensorEventGenerator());
+            new LoadRunner(config, generator, new Http(args[0], args[1], args[2], config.getThreads(),
+                    config.getBatchSize(), concurrentRequests)).run(Http.class, args);
         } catch (NumberFormatException e) {
             log.error("Entered value for no of events is invalid. Please enter an integer", e);
+        } catch (InterruptedException e) {
+            log.error("Interrupted while sending the messages", e);
+        } catch (IOException e) {
+            log.error("Error when reading the stream definition or coordinating the load agents", e);
         }
     }
 
@@ -73,55 +118,128 @@ public class Http implements Runnable {
         }
     }
 
-    private static JsonObject getRandomEvent(long count) {
-        JsonObject event = new JsonObject();
-        JsonObject metaData = new JsonObject();
-        JsonObject correlationData = new JsonObject();
-        JsonObject payLoadData = new JsonObject();
-        metaData.addProperty("timestamp", System.currentTimeMillis());
-        metaData.addProperty("isPowerSaverEnabled", false);
-        metaData.addProperty("sensorId", count);
-        metaData.addProperty("sensorName", "temperature");
-        correlationData.addProperty("longitude", 2332.424);
-        correlationData.addProperty("latitude", 2323.23232);
-        payLoadData.addProperty("humidity", 2.3f);
-        payLoadData.addProperty("sensorValue", 23423.234);
-        event.add("metaData", metaData);
-        event.add("correlationData", correlationData);
-        event.add("payloadData", payLoadData);
-        return event;
+    @Override
+    public EventSender createSender(int workerId) {
+        return new HttpEventSender(workerId);
+    }
+
+    @Override
+    public void measurementStarted() {
     }
 
     @Override
-    public void run() {
-        HttpClient httpClient = new SystemDefaultHttpClient();
+    public void shutdown() {
         try {
-            HttpPost method = new HttpPost(url);
-            log.info("Sending messages..");
-            long lastTime = System.currentTimeMillis();
-            DecimalFormat decimalFormat = new DecimalFormat("#");
-            while (count < noOfEvents) {
-                count++;
-                String temp = "{\"event\": " + getRandomEvent(count).toString() + "}";
-                StringEntity entity = new StringEntity(temp);
-                method.setEntity(entity);
-                if (url.startsWith("https")) {
-                    processAuthentication(method, username, password);
-                }
-                httpClient.execute(method).getEntity().getContent().close();
-                if (count % elapsedCount == 0) {
-                    long currentTime = System.currentTimeMillis();
-                    long elapsedTime = currentTime - lastTime;
-                    double throughputPerSecond = (((double) elapsedCount) / elapsedTime) * 1000;
-                    lastTime = currentTime;
-                    log.info("Sent " + elapsedCount + " sensor events in " + elapsedTime +
-                             " milliseconds with total throughput of " + decimalFormat.format(throughputPerSecond) +
-                             " events per second.");
+            httpClient.close();
+        } catch (IOException e) {
+            log.error("Error when closing the http connections", e);
+        }
+    }
+
+    private void post(String message) throws IOException {
+        HttpPost method = new HttpPost(url);
+        if (url.startsWith("https")) {
+            processAuthentication(method, username, password);
+        }
+        method.setEntity(new StringEntity(message, ContentType.APPLICATION_JSON));
+        CloseableHttpResponse response = httpClient.execute(method);
+        try {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode / 100 != 2) {
+                throw new IOException("Http receiver responded with " + response.getStatusLine());
+            }
+            EntityUtils.consume(response.getEntity());
+        } finally {
+            response.close();
+        }
+    }
+
+    private class HttpEventSender implements EventSender {
+        private final StringBuilder builder = new StringBuilder(256 * batchSize);
+        private final ExecutorService executor;
+        private final Semaphore permits = new Semaphore(concurrentRequests);
+        private volatile Exception failure;
+        private int batchedEvents = 0;
+
+        private HttpEventSender(final int workerId) {
+            if (concurrentRequests > 1) {
+                executor = Executors.newFixedThreadPool(concurrentRequests, new ThreadFactory() {
+                    private final AtomicInteger threadCount = new AtomicInteger(0);
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "http-request-" + workerId + "-"
+                                + threadCount.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            } else {
+                executor = null;
+            }
+        }
+
+        @Override
+        public void send(LoadEvent event) throws Exception {
+            if (batchSize > 1) {
+                builder.append(batchedEvents == 0 ? '[' : ',');
+            }
+            JsonEventWriter.append(builder, event);
+            if (++batchedEvents == batchSize) {
+                sendBatch();
+            }
+        }
+
+        private void sendBatch() throws Exception {
+            if (batchSize > 1) {
+                builder.append(']');
+            }
+            final String message = builder.toString();
+            builder.setLength(0);
+            batchedEvents = 0;
+
+            if (executor == null) {
+                post(message);
+                return;
+            }
+            checkFailure();
+            permits.acquire();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        post(message);
+                    } catch (Exception e) {
+                        failure = e;
+                    } finally {
+                        permits.release();
+                    }
                 }
+            });
+        }
+
+        private void checkFailure() throws Exception {
+            if (failure != null) {
+                throw new Exception("Error when posting events to " + url, failure);
+            }
+        }
+
+        @Override
+        public void flush() throws Exception {
+            if (batchedEvents > 0) {
+                sendBatch();
+            }
+            // Wait for the running requests to complete
+            permits.acquire(concurrentRequests);
+            permits.release(concurrentRequests);
+            checkFailure();
+        }
+
+        @Override
+        public void close() {
+            if (executor != null) {
+                executor.shutdownNow();
             }
-        } catch (Throwable t) {
-            log.error("Error when sending the messages", t);
         }
     }
 }
-
@@ -15,136 +15,304 @@
 * specific language governing permissions and limitations
 * under the License.
 */
+
 package org.wso2.carbon.sample.jmsclient;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.sample.load.EventGenerator;
+import org.wso2.carbon.sample.load.EventSchema;
+import org.wso2.carbon.sample.load.EventSender;
+import org.wso2.carbon.sample.load.EventSenderFactory;
+import org.wso2.carbon.sample.load.LoadConfig;
+import org.wso2.carbon.sample.load.LoadEvent;
+import org.wso2.carbon.sample.load.LoadRunner;
+import org.wso2.carbon.sample.load.SchemaEventGenerator;
+import org.wso2.carbon.sample.load.SensorEventGenerator;
 
 import javax.jms.*;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
- * JMS client reads a text file or a csv file with multiple messages and publish to a Map or Text message to a broker
+ * JMS client publishes generated sensor events as Map messages to a topic of a broker
  * (ActiveMQ, WSO2 Message Broker, Qpid Broker)
+ * <p/>
+ * By default each publisher thread has its own connection and session. When a number of sessions is given, the
+ * threads instead share a fixed pool of sessions on one connection and hold a session for one message, or for one
+ * batch in transacted mode. With a batch size larger than one the sessions are transacted and committed every batch.
+ * Async send lets the broker client return before the broker confirms each message; the messages are then confirmed
+ * at each commit or when the session is closed.
  */
-public class JMSClient {
-
-    static int threads = 4;
-    static int sessionsPerThread = 5;
-    static int msgsPerSession = 20000;
+public class JMSClient implements EventSenderFactory {
 
     private static Log log = LogFactory.getLog(JMSClient.class);
 
+    private final String topicName;
+    private final String broker;
+    private final int batchSize;
+    private final boolean asyncSend;
+    private final int deliveryMode;
+    private final TopicConnection sharedConnection;
+    private final BlockingQueue<PooledSession> sessionPool;
+
+    /**
+     * @param batchSize  messages per transaction, or 1 to send without transactions
+     * @param sessions   number of sessions shared by all the publisher threads, or 0 for a session per thread
+     * @param asyncSend  true to enable the async send of the broker client, if it supports it
+     * @param persistent true to send persistent messages
+     */
+    public JMSClient(String topicName, String broker, int batchSize, int sessions, boolean asyncSend,
+                     boolean persistent) throws Exception {
+        this.topicName = topicName;
+        this.broker = broker;
+        this.batchSize = batchSize;
+        this.asyncSend = asyncSend;
+        this.deliveryMode = persistent ? DeliveryMode.PERSISTENT : DeliveryMode.NON_PERSISTENT;
+        if (sessions > 0) {
+            sharedConnection = createTopicConnection(broker, asyncSend);
+            sharedConnection.start();
+            sessionPool = new ArrayBlockingQueue<PooledSession>(sessions);
+            for (int i = 0; i < sessions; i++) {
+                sessionPool.add(new PooledSession(sharedConnection));
+            }
+        } else {
+            sharedConnection = null;
+            sessionPool = null;
+        }
+    }
+
     public static void main(String[] args) {
 
-        final String topicName = args[0];
-        String broker0 = args[1];
+        String topicName = args[0];
+        String broker = args[1];
+
+        if (broker == null || broker.equalsIgnoreCase("")) {
+            broker = "activemq";
+        }
 
-        if (broker0 == null || broker0.equalsIgnoreCase("")) {
-            broker0 = "activemq";
+        try {
+            LoadConfig config = LoadConfig.fromSystemProperties();
+            config.setEventCount(Long.parseLong(args[2]));
+            config.setThreads(Integer.parseInt(args[3]));
+            if (LoadRunner.coordinate(config, JMSClient.class, args)) {
+                return;
+            }
+            JMSClient jmsClient = new JMSClient(topicName, broker, config.getBatchSize(),
+                    Integer.getInteger("load.jms.sessions", 0), Boolean.getBoolean("load.jms.asyncSend"),
+                    !"false".equalsIgnoreCase(System.getProperty("load.jms.persistent")));
+            EventGenerator generator = SchemaEventGenerator.fromSystemProperties(new SensorEventGenerator());
+            new LoadRunner(config, generator, jmsClient).run(JMSClient.class, args);
+            log.info("All Messages sent");
+        } catch (NumberFormatException e) {
+            log.error("Entered value for no of events is invalid. Please enter an integer", e);
+        } catch (InterruptedException e) {
+            log.error("Interrupted while sending the messages", e);
+        } catch (IOException e) {
+            log.error("Error when reading the stream definition or coordinating the load agents", e);
+        } catch (Exception e) {
+            log.error("Error when connecting to the " + broker + " broker", e);
         }
+    }
 
-        final String broker = broker0;
+    @Override
+    public EventSender createSender(int workerId) throws Exception {
+        if (sessionPool != null) {
+            return new PooledSessionSender();
+        }
+        final TopicConnection topicConnection = createTopicConnection(broker, asyncSend);
+        topicConnection.start();
+        final PooledSession session = new PooledSession(topicConnection);
+        return new EventSender() {
+            @Override
+            public void send(LoadEvent event) throws JMSException {
+                session.send(event);
+            }
 
-        for (int i = 0; i < threads; i++) {
-            new Thread() {
-                public void run() {
-                    publishMessages(topicName,  broker);
+            @Override
+            public void flush() throws JMSException {
+                session.commit();
+            }
 
+            @Override
+            public void close() {
+                try {
+                    session.close();
+                    topicConnection.stop();
+                    topicConnection.close();
+                } catch (JMSException e) {
+                    log.error("Error when closing the JMS connection" + e.getMessage(), e);
                 }
-            }.start();
-        }
+            }
+        };
+    }
 
-        log.info("All Messages sent");
+    @Override
+    public void measurementStarted() {
     }
 
-    public static void publishMessages(String topicName, String broker) {
-        try {
+    @Override
+    public void shutdown() {
+        if (sessionPool != null) {
+            try {
+                for (PooledSession session : sessionPool) {
+                    session.close();
+                }
+                sharedConnection.stop();
+                sharedConnection.close();
+            } catch (JMSException e) {
+                log.error("Error when closing the JMS connection" + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * A session with its producer. A session may be used by one thread at a time only.
+     */
+    private class PooledSession {
+        private final Session session;
+        private final MessageProducer producer;
+        private int uncommittedMessages = 0;
 
-//            filePath = JMSClientUtil.getEventFilePath(sampleNumber, format, topicName, filePath);
-
-            TopicConnection topicConnection = null;
-            Session session = null;
-
-            Properties properties = new Properties();
-            if (broker.equalsIgnoreCase("activemq")) {
-                properties.load(ClassLoader.getSystemClassLoader().getResourceAsStream("activemq.properties"));
-                Context context = new InitialContext(properties);
-                TopicConnectionFactory connFactory = (TopicConnectionFactory) context.lookup("ConnectionFactory");
-                topicConnection = connFactory.createTopicConnection();
-                topicConnection.start();
-                session = topicConnection.createTopicSession(false, Session.AUTO_ACKNOWLEDGE);
-            } else if (broker.equalsIgnoreCase("mb")) {
-                properties.load(ClassLoader.getSystemClassLoader().getResourceAsStream("mb.properties"));
-                Context context = new InitialContext(properties);
-                TopicConnectionFactory connFactory = (TopicConnectionFactory) context.lookup("qpidConnectionFactory");
-                topicConnection = connFactory.createTopicConnection();
-                topicConnection.start();
-                session = topicConnection.createTopicSession(false, Session.AUTO_ACKNOWLEDGE);
-            } else if (broker.equalsIgnoreCase("qpid")) {
-                properties.load(ClassLoader.getSystemClassLoader().getResourceAsStream("qpid.properties"));
-                Context context = new InitialContext(properties);
-                TopicConnectionFactory connFactory = (TopicConnectionFactory) context.lookup("qpidConnectionFactory");
-                topicConnection = connFactory.createTopicConnection();
-                topicConnection.start();
-                session = topicConnection.createTopicSession(false, Session.AUTO_ACKNOWLEDGE);
-            } else {
-                log.info("Please enter a valid JMS message broker. (ex: activemq, mb, qpid");
+        private PooledSession(TopicConnection topicConnection) throws JMSException {
+            boolean transacted = batchSize > 1;
+            session = topicConnection.createTopicSession(transacted,
+                    transacted ? Session.SESSION_TRANSACTED : Session.AUTO_ACKNOWLEDGE);
+            Topic topic = session.createTopic(topicName);
+            producer = session.createProducer(topic);
+            producer.setDeliveryMode(deliveryMode);
+        }
+
+        /**
+         * @return true if the message completed a batch, which was committed
+         */
+        private boolean send(LoadEvent event) throws JMSException {
+            producer.send(createMapMessage(session, event));
+            if (batchSize > 1 && ++uncommittedMessages == batchSize) {
+                session.commit();
+                uncommittedMessages = 0;
             }
+            return uncommittedMessages == 0;
+        }
 
-            if (session != null) {
-                Topic topic = session.createTopic(topicName);
-                MessageProducer producer = session.createProducer(topic);
+        private void commit() throws JMSException {
+            if (uncommittedMessages > 0) {
+                session.commit();
+                uncommittedMessages = 0;
+            }
+        }
 
-                try {
+        /**
+         * Discards the messages sent since the last commit, after a failure.
+         */
+        private void rollback() throws JMSException {
+            if (batchSize > 1) {
+                session.rollback();
+                uncommittedMessages = 0;
+            }
+        }
 
-                        List<Map<String, Object>> messageList = new ArrayList<Map<String, Object>>();
+        private void close() throws JMSException {
+            producer.close();
+            session.close();
+        }
+    }
 
-                        Random random = new Random();
-                        for (int j = 0; j < sessionsPerThread; j++) {
-                            for (int i = 0; i < msgsPerSession; i++) {
-                                HashMap<String, Object> map = new HashMap<String, Object>();
+    private class PooledSessionSender implements EventSender {
+        private PooledSession session;
 
-                                map.put("id", random.nextInt() +"");
-                                map.put("value", random.nextInt());
-                                map.put("content", "sample content");
-                                map.put("client", "jmsQueueClient");
-                                // setting the timestamp later
-                                messageList.add(map);
-                            }
+        @Override
+        public void send(LoadEvent event) throws Exception {
+            if (session == null) {
+                session = sessionPool.take();
+            }
+            if (session.send(event)) {
+                // Keep the session only while it holds an open transaction
+                sessionPool.put(session);
+                session = null;
+            }
+        }
 
-                            publishMapMessage(producer, session, messageList);
+        @Override
+        public void flush() throws Exception {
+            if (session != null) {
+                session.commit();
+                sessionPool.put(session);
+                session = null;
+            }
+        }
 
-                        }
-                } catch (JMSException e) {
-                    log.error("Can not subscribe." + e.getMessage(), e);
-                } catch (IOException e) {
-                    log.error("Error when reading the data file." + e.getMessage(), e);
-                } finally {
-                    producer.close();
-                    session.close();
-                    topicConnection.stop();
-                }
+        @Override
+        public void close() {
+            if (session == null) {
+                return;
+            }
+            // The thread failed during a batch, give the session back to the other threads without its messages
+            try {
+                session.rollback();
+            } catch (JMSException e) {
+                log.error("Error when rolling back the JMS session" + e.getMessage(), e);
+            } finally {
+                sessionPool.offer(session);
+                session = null;
             }
-        } catch (Exception e) {
-            log.error("Error when publishing message" + e.getMessage(), e);
         }
     }
 
-    public static void publishMapMessage(MessageProducer producer, Session session, List<Map<String, Object>> messagesList)
-            throws IOException, JMSException {
-        for (Map<String, Object> message : messagesList) {
-            MapMessage mapMessage = session.createMapMessage();
-            message.put("time", System.currentTimeMillis());
-            for (Map.Entry<String, Object> entry : message.entrySet()) {
-                mapMessage.setObject(entry.getKey(), entry.getValue());
+    public static TopicConnection createTopicConnection(String broker) throws Exception {
+        return createTopicConnection(broker, false);
+    }
+
+    public static TopicConnection createTopicConnection(String broker, boolean asyncSend) throws Exception {
+        Properties properties = new Properties();
+        String connectionFactoryName;
+        if (broker.equalsIgnoreCase("activemq")) {
+            properties.load(ClassLoader.getSystemClassLoader().getResourceAsStream("activemq.properties"));
+            connectionFactoryName = "ConnectionFactory";
+        } else if (broker.equalsIgnoreCase("mb")) {
+            properties.load(ClassLoader.getSystemClassLoader().getResourceAsStream("mb.properties"));
+            connectionFactoryName = "qpidConnectionFactory";
+        } else if (broker.equalsIgnoreCase("qpid")) {
+            properties.load(ClassLoader.getSystemClassLoader().getResourceAsStream("qpid.properties"));
+            connectionFactoryName = "qpidConnectionFactory";
+        } else {
+            throw new IllegalArgumentException("Please enter a valid JMS message broker. (ex: activemq, mb, qpid");
+        }
+        Context context = new InitialContext(properties);
+        TopicConnectionFactory connFactory = (TopicConnectionFactory) context.lookup(connectionFactoryName);
+        if (asyncSend) {
+            // JMS 1.1 has no async send API, hence enable it on the connection factories which support it (ActiveMQ)
+            try {
+                connFactory.getClass().getMethod("setUseAsyncSend", boolean.class).invoke(connFactory, true);
+            } catch (NoSuchMethodException e) {
+                log.warn("Async send is not supported by the " + broker + " connection factory, sending "
+                        + "non-persistent messages has a similar effect.");
             }
-            producer.send(mapMessage);
         }
-        log.info("messages sent (per-thread):" + messagesList.size());
+        return connFactory.createTopicConnection();
+    }
+
+    /**
+     * Creates a Map message holding all the event attributes by name, with the sent time under "time".
+     */
+    public static MapMessage createMapMessage(Session session, LoadEvent event) throws JMSException {
+        MapMessage mapMessage = session.createMapMessage();
+        EventSchema schema = event.getSchema();
+        setAttributes(mapMessage, schema.getMetaDataNames(), event.getMetaData());
+        setAttributes(mapMessage, schema.getCorrelationDataNames(), event.getCorrelationData());
+        setAttributes(mapMessage, schema.getPayloadDataNames(), event.getPayloadData());
+        mapMessage.setLong("time", event.getTimestamp());
+        return mapMessage;
+    }
+
+    private static void setAttributes(MapMessage mapMessage, String[] names, Object[] values) throws JMSException {
+        for (int i = 0; i < names.length; i++) {
+            mapMessage.setObject(names[i], values[i]);
+        }
     }
 
 }
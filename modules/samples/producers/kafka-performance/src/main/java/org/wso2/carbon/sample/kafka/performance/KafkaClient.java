@@ -18,124 +18,96 @@
 
 package org.wso2.carbon.sample.kafka.performance;
 
-import com.google.gson.JsonObject;
 import kafka.javaapi.producer.Producer;
 import kafka.producer.KeyedMessage;
 import kafka.producer.ProducerConfig;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-
-import java.text.DecimalFormat;
+import org.wso2.carbon.sample.load.EventGenerator;
+import org.wso2.carbon.sample.load.EventSender;
+import org.wso2.carbon.sample.load.EventSenderFactory;
+import org.wso2.carbon.sample.load.JsonEventWriter;
+import org.wso2.carbon.sample.load.LoadConfig;
+import org.wso2.carbon.sample.load.LoadEvent;
+import org.wso2.carbon.sample.load.LoadRunner;
+import org.wso2.carbon.sample.load.SchemaEventGenerator;
+import org.wso2.carbon.sample.load.SensorEventGenerator;
+
+import java.io.IOException;
 import java.util.Properties;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
 
-public class KafkaClient {
+public class KafkaClient implements EventSenderFactory {
     private static Log log = LogFactory.getLog(KafkaClient.class);
-    private static String url;
-    private static String topic;
-    private static long noOfEvents;
-    private static int elapsedCount;
-    private static int noOfPublishers;
+    private final String url;
+    private final String topic;
 
-    //Atomic Variables
-    private static AtomicLong count = new AtomicLong(0);
-    private AtomicLong lastIndex = new AtomicLong(0);
-    private AtomicBoolean calcInProgress = new AtomicBoolean(false);
+    public KafkaClient(String url, String topic) {
+        this.url = url;
+        this.topic = topic;
+    }
 
     public static void main(String args[]) {
         log.info("Starting Kafka Client");
-        url = args[0];
-        topic = args[1];
         try {
-            noOfEvents = Long.parseLong(args[2]);
-            elapsedCount = Integer.parseInt(args[3]);
-            noOfPublishers = Integer.parseInt(args[4]);
-
-            KafkaClient kafkaClient = new KafkaClient();
-            kafkaClient.start();
+            LoadConfig config = LoadConfig.fromSystemProperties();
+            config.setEventCount(Long.parseLong(args[2]));
+            config.setThreads(Integer.parseInt(args[3]));
+            if (LoadRunner.coordinate(config, KafkaClient.class, args)) {
+                return;
+            }
+            EventGenerator generator = SchemaEventGenerator.fromSystemProperties(new SensorEventGenerator());
+            EventSenderFactory senderFactory;
+            if ("new".equalsIgnoreCase(System.getProperty("load.kafka.producer"))) {
+                senderFactory = new PartitionedKafkaSenderFactory(args[0], args[1],
+                        generator.getSchema(), System.getProperty("load.kafka.key", "sensorId"),
+                        config.getThreads(), System.getProperty("load.kafka.acks", "1"),
+                        Long.getLong("load.kafka.lingerMs", 5), Integer.getInteger("load.kafka.batchBytes", 16384),
+                        config.getReportInterval());
+            } else {
+                senderFactory = new KafkaClient(args[0], args[1]);
+            }
+            new LoadRunner(config, generator, senderFactory).run(KafkaClient.class, args);
         } catch (NumberFormatException e) {
             log.error("Entered value for no of events is invalid. Please enter an integer", e);
+        } catch (InterruptedException e) {
+            log.error("Interrupted while sending the messages", e);
+        } catch (IOException e) {
+            log.error("Error when reading the stream definition or coordinating the load agents", e);
         }
     }
 
-    private void start() {
-        ExecutorService executor = Executors.newFixedThreadPool(noOfPublishers);
-        for (int i = 0; i < noOfPublishers; i++) {
-            executor.execute(new KafkaProducer());
-        }
-    }
-
-    public class KafkaProducer implements Runnable {
-        @Override
-        public void run() {
-            try {
-                Properties props = new Properties();
-                props.put("metadata.broker.list", url);
-                props.put("serializer.class", "kafka.serializer.StringEncoder");
-                props.put("producer.type", "async");
-
-                ProducerConfig config = new ProducerConfig(props);
-                Producer<String, Object> producer = new Producer<String, Object>(config);
-
-                log.info("Sending messages..");
-                long lastTime = System.currentTimeMillis();
-                DecimalFormat decimalFormat = new DecimalFormat("#");
-
-                while (count.getAndIncrement() < noOfEvents) {
-                    String message = "{\"event\": " + getRandomEvent(count.get()).toString() + "}";
-
-                    KeyedMessage<String, Object> data = new KeyedMessage<String, Object>(topic, message);
-                    producer.send(data);
-
-                    long index = count.get() / elapsedCount;
-
-                    if (lastIndex.get() != index) {
-                        if (calcInProgress.compareAndSet(false, true)) {
-                            lastIndex.set(index);
-                            long currentTime = System.currentTimeMillis();
-                            long elapsedTime = currentTime - lastTime;
-                            double throughputPerSecond = (((double) elapsedCount) / elapsedTime) * 1000;
-                            lastTime = currentTime;
-                            log.info("Sent " + elapsedCount + " sensor events in " + elapsedTime +
-                                    " milliseconds with total throughput of " + decimalFormat.format(throughputPerSecond) +
-                                    " events per second.");
-                            calcInProgress.set(false);
-                        }
-                    }
-                }
-                log.info("Sent " + (count.get() - 1) + " sensor events");
-            } catch (Throwable t) {
-                log.error("Error when sending the messages", t);
+    @Override
+    public EventSender createSender(int workerId) {
+        Properties props = new Properties();
+        props.put("metadata.broker.list", url);
+        props.put("serializer.class", "kafka.serializer.StringEncoder");
+        props.put("producer.type", "async");
+
+        ProducerConfig config = new ProducerConfig(props);
+        final Producer<String, Object> producer = new Producer<String, Object>(config);
+        final JsonEventWriter jsonEventWriter = new JsonEventWriter();
+        return new EventSender() {
+            @Override
+            public void send(LoadEvent event) {
+                producer.send(new KeyedMessage<String, Object>(topic, jsonEventWriter.write(event)));
             }
-        }
-
-        private JsonObject getRandomEvent(long count) {
-
-            JsonObject event = new JsonObject();
-
-            JsonObject metaData = new JsonObject();
-            JsonObject correlationData = new JsonObject();
-            JsonObject payLoadData = new JsonObject();
 
-            metaData.addProperty("timestamp", System.currentTimeMillis());
-            metaData.addProperty("isPowerSaverEnabled", false);
-            metaData.addProperty("sensorId", count);
-            metaData.addProperty("sensorName", "temperature");
-
-            correlationData.addProperty("longitude", 2332.424);
-            correlationData.addProperty("latitude", 2323.23232);
+            @Override
+            public void flush() {
+            }
 
-            payLoadData.addProperty("humidity", 2.3f);
-            payLoadData.addProperty("sensorValue", 23423.234);
+            @Override
+            public void close() {
+                producer.close();
+            }
+        };
+    }
 
-            event.add("metaData", metaData);
-            event.add("correlationData", correlationData);
-            event.add("payloadData", payLoadData);
+    @Override
+    public void measurementStarted() {
+    }
 
-            return event;
-        }
+    @Override
+    public void shutdown() {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.kafka.performance;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects the broker acknowledgements of a topic per partition and periodically logs the acknowledged rate, the
+ * ack latency and the number of events acknowledged out of their send order for each partition.
+ * <p/>
+ * Acknowledgements are recorded from the callback thread of a single producer, hence the last sequence seen per
+ * publisher thread and partition is kept in plain arrays.
+ */
+public class PartitionStatistics implements Runnable {
+    private static Log log = LogFactory.getLog(PartitionStatistics.class);
+
+    private final int partitions;
+    private final AtomicLongArray ackedEvents;
+    private final AtomicLongArray ackLatencySum;
+    private final AtomicLongArray maxAckLatency;
+    private final AtomicLongArray reorderedEvents;
+    private final AtomicLong failedEvents = new AtomicLong(0);
+    private final long[][] lastSequences;
+    private final long[] lastAckedEvents;
+    private final long[] lastAckLatencySum;
+    private final DecimalFormat decimalFormat = new DecimalFormat("#.##");
+    private final ScheduledExecutorService executorService;
+    private long lastTime;
+
+    public PartitionStatistics(int partitions, int threads) {
+        this.partitions = partitions;
+        ackedEvents = new AtomicLongArray(partitions);
+        ackLatencySum = new AtomicLongArray(partitions);
+        maxAckLatency = new AtomicLongArray(partitions);
+        reorderedEvents = new AtomicLongArray(partitions);
+        lastAckedEvents = new long[partitions];
+        lastAckLatencySum = new long[partitions];
+        lastSequences = new long[threads][partitions];
+        for (long[] sequences : lastSequences) {
+            Arrays.fill(sequences, -1);
+        }
+        executorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "partition-statistics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Clears what was recorded so far, such as the acknowledgements of the warm-up events, and starts reporting.
+     */
+    public void start(long reportInterval) {
+        synchronized (this) {
+            for (int i = 0; i < partitions; i++) {
+                ackedEvents.set(i, 0);
+                ackLatencySum.set(i, 0);
+                maxAckLatency.set(i, 0);
+                reorderedEvents.set(i, 0);
+                lastAckedEvents[i] = 0;
+                lastAckLatencySum[i] = 0;
+            }
+            failedEvents.set(0);
+            lastTime = System.currentTimeMillis();
+        }
+        executorService.scheduleAtFixedRate(this, reportInterval, reportInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records an event acknowledged by the broker.
+     *
+     * @param workerId   publisher thread which sent the event
+     * @param partition  partition the event was appended to
+     * @param sequence   sequence number of the event within the publisher thread
+     * @param ackLatency nanoseconds between the send and the acknowledgement
+     */
+    public void acked(int workerId, int partition, long sequence, long ackLatency) {
+        ackedEvents.incrementAndGet(partition);
+        ackLatencySum.addAndGet(partition, ackLatency);
+        long currentMax = maxAckLatency.get(partition);
+        while (ackLatency > currentMax && !maxAckLatency.compareAndSet(partition, currentMax, ackLatency)) {
+            currentMax = maxAckLatency.get(partition);
+        }
+        if (sequence < lastSequences[workerId][partition]) {
+            reorderedEvents.incrementAndGet(partition);
+        } else {
+            lastSequences[workerId][partition] = sequence;
+        }
+    }
+
+    public void failed() {
+        failedEvents.incrementAndGet();
+    }
+
+    @Override
+    public synchronized void run() {
+        long currentTime = System.currentTimeMillis();
+        long elapsedTime = Math.max(currentTime - lastTime, 1);
+        lastTime = currentTime;
+        double minRate = Double.MAX_VALUE;
+        double maxRate = 0;
+        for (int i = 0; i < partitions; i++) {
+            long acked = ackedEvents.get(i);
+            long latencySum = ackLatencySum.get(i);
+            long intervalAcked = acked - lastAckedEvents[i];
+            long intervalLatencySum = latencySum - lastAckLatencySum[i];
+            lastAckedEvents[i] = acked;
+            lastAckLatencySum[i] = latencySum;
+
+            double rate = intervalAcked * 1000d / elapsedTime;
+            minRate = Math.min(minRate, rate);
+            maxRate = Math.max(maxRate, rate);
+            log.info("Partition " + i + " acknowledged " + decimalFormat.format(rate) + " events per second with "
+                    + "mean ack latency of " + decimalFormat.format(intervalAcked == 0 ? 0 :
+                    intervalLatencySum / 1000000d / intervalAcked) + " ms and max ack latency of "
+                    + decimalFormat.format(maxAckLatency.getAndSet(i, 0) / 1000000d) + " ms, "
+                    + reorderedEvents.get(i) + " events reordered so far.");
+        }
+        log.info("Partition rates range from " + decimalFormat.format(minRate) + " to " + decimalFormat.format(maxRate)
+                + " events per second, " + failedEvents.get() + " events failed so far.");
+    }
+
+    public void stop() {
+        executorService.shutdown();
+        StringBuilder builder = new StringBuilder("Acknowledged events per partition:");
+        for (int i = 0; i < partitions; i++) {
+            builder.append(' ').append(i).append('=').append(ackedEvents.get(i));
+        }
+        log.info(builder.append(", failed events: ").append(failedEvents.get()));
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.kafka.performance;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.wso2.carbon.sample.load.EventSchema;
+import org.wso2.carbon.sample.load.EventSender;
+import org.wso2.carbon.sample.load.EventSenderFactory;
+import org.wso2.carbon.sample.load.JsonEventWriter;
+import org.wso2.carbon.sample.load.LoadEvent;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends JSON events with the batching Kafka producer, keyed by an event attribute so that the events are spread
+ * over the partitions of the topic. All publisher threads share one producer, which batches the events of each
+ * partition for up to lingerMs or until batchBytes are buffered. The acknowledgements of the measured events are
+ * collected per partition by {@link PartitionStatistics}.
+ */
+public class PartitionedKafkaSenderFactory implements EventSenderFactory {
+
+    private final String topic;
+    private final KafkaProducer<String, String> producer;
+    private final PartitionStatistics statistics;
+    private final int keyIndex;
+    private final KeySection keySection;
+    private final long reportInterval;
+
+    private enum KeySection {
+        META, CORRELATION, PAYLOAD
+    }
+
+    public PartitionedKafkaSenderFactory(String url, String topic, EventSchema schema, String keyAttribute,
+                                         int threads, String acks, long lingerMs, int batchBytes,
+                                         long reportInterval) {
+        this.topic = topic;
+        this.reportInterval = reportInterval;
+        int metaIndex = Arrays.asList(schema.getMetaDataNames()).indexOf(keyAttribute);
+        int correlationIndex = Arrays.asList(schema.getCorrelationDataNames()).indexOf(keyAttribute);
+        int payloadIndex = Arrays.asList(schema.getPayloadDataNames()).indexOf(keyAttribute);
+        if (metaIndex >= 0) {
+            keySection = KeySection.META;
+            keyIndex = metaIndex;
+        } else if (correlationIndex >= 0) {
+            keySection = KeySection.CORRELATION;
+            keyIndex = correlationIndex;
+        } else if (payloadIndex >= 0) {
+            keySection = KeySection.PAYLOAD;
+            keyIndex = payloadIndex;
+        } else {
+            throw new IllegalArgumentException("Key attribute '" + keyAttribute + "' is not defined in stream "
+                    + schema.getStreamId());
+        }
+
+        Properties props = new Properties();
+        props.put("bootstrap.servers", url);
+        props.put("acks", acks);
+        props.put("linger.ms", String.valueOf(lingerMs));
+        props.put("batch.size", String.valueOf(batchBytes));
+        producer = new KafkaProducer<String, String>(props, new StringSerializer(), new StringSerializer());
+        statistics = new PartitionStatistics(producer.partitionsFor(topic).size(), threads);
+    }
+
+    @Override
+    public EventSender createSender(int workerId) {
+        return new KafkaEventSender(workerId);
+    }
+
+    private String getKey(LoadEvent event) {
+        Object value;
+        switch (keySection) {
+            case META:
+                value = event.getMetaData()[keyIndex];
+                break;
+            case CORRELATION:
+                value = event.getCorrelationData()[keyIndex];
+                break;
+            default:
+                value = event.getPayloadData()[keyIndex];
+        }
+        return String.valueOf(value);
+    }
+
+    @Override
+    public void measurementStarted() {
+        // Leave the acknowledgements of the warm-up events out of the statistics
+        statistics.start(reportInterval);
+    }
+
+    @Override
+    public void shutdown() {
+        producer.close();
+        statistics.stop();
+    }
+
+    private class KafkaEventSender implements EventSender {
+        private final int workerId;
+        private final JsonEventWriter jsonEventWriter = new JsonEventWriter();
+        private final AtomicLong pendingEvents = new AtomicLong(0);
+        private final Object flushMonitor = new Object();
+        private volatile Exception failure;
+
+        private KafkaEventSender(int workerId) {
+            this.workerId = workerId;
+        }
+
+        @Override
+        public void send(LoadEvent event) throws Exception {
+            checkFailure();
+            pendingEvents.incrementAndGet();
+            producer.send(new ProducerRecord<String, String>(topic, getKey(event), jsonEventWriter.write(event)),
+                    new AckCallback(this, event.getSequence()));
+        }
+
+        private void checkFailure() throws Exception {
+            if (failure != null) {
+                throw new Exception("Error when sending events to topic " + topic, failure);
+            }
+        }
+
+        @Override
+        public void flush() throws Exception {
+            // This producer version has no flush, so wait until all the sent events are acknowledged
+            synchronized (flushMonitor) {
+                while (pendingEvents.get() > 0) {
+                    flushMonitor.wait();
+                }
+            }
+            checkFailure();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private class AckCallback implements Callback {
+        private final KafkaEventSender sender;
+        private final long sequence;
+        private final long sendTime = System.nanoTime();
+
+        private AckCallback(KafkaEventSender sender, long sequence) {
+            this.sender = sender;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void onCompletion(RecordMetadata metadata, Exception exception) {
+            if (exception == null) {
+                statistics.acked(sender.workerId, metadata.partition(), sequence, System.nanoTime() - sendTime);
+            } else {
+                statistics.failed();
+                sender.failure = exception;
+            }
+            if (sender.pendingEvents.decrementAndGet() == 0) {
+                synchronized (sender.flushMonitor) {
+                    sender.flushMonitor.notifyAll();
+                }
+            }
+        }
+    }
+}
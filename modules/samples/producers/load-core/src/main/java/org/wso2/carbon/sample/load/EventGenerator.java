@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.load;
+
+/**
+ * Fills events with synthetic values. Implementations are shared by all publisher threads and must be thread safe.
+ */
+public interface EventGenerator {
+
+    EventSchema getSchema();
+
+    /**
+     * Overwrites the attributes and the timestamp of the given event.
+     *
+     * @param event     reusable event owned by the calling thread
+     * @param sequence  position of the event in the calling thread's sequence
+     * @param timestamp time to stamp the event with, which is the intended send time in open loop mode
+     */
+    void next(LoadEvent event, long sequence, long timestamp);
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.load;
+
+/**
+ * Stream id and attribute names of the events produced by an {@link EventGenerator}.
+ */
+public class EventSchema {
+
+    private final String streamName;
+    private final String streamVersion;
+    private final String[] metaDataNames;
+    private final String[] correlationDataNames;
+    private final String[] payloadDataNames;
+
+    public EventSchema(String streamName, String streamVersion, String[] metaDataNames,
+                       String[] correlationDataNames, String[] payloadDataNames) {
+        this.streamName = streamName;
+        this.streamVersion = streamVersion;
+        this.metaDataNames = metaDataNames;
+        this.correlationDataNames = correlationDataNames;
+        this.payloadDataNames = payloadDataNames;
+    }
+
+    public String getStreamName() {
+        return streamName;
+    }
+
+    public String getStreamVersion() {
+        return streamVersion;
+    }
+
+    public String getStreamId() {
+        return streamName + ":" + streamVersion;
+    }
+
+    public String[] getMetaDataNames() {
+        return metaDataNames;
+    }
+
+    public String[] getCorrelationDataNames() {
+        return correlationDataNames;
+    }
+
+    public String[] getPayloadDataNames() {
+        return payloadDataNames;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.load;
+
+/**
+ * Transport specific part of a performance producer. A sender is created for and used by a single publisher thread.
+ */
+public interface EventSender {
+
+    /**
+     * Sends the given event. The event is reused once this method returns.
+     *
+     * @param event event to send
+     * @throws Exception when the event cannot be handed over to the transport
+     */
+    void send(LoadEvent event) throws Exception;
+
+    /**
+     * Called after the last warm-up event and after the last event of the publisher thread, before {@link #close()}.
+     *
+     * @throws Exception when the buffered events cannot be sent
+     */
+    void flush() throws Exception;
+
+    /**
+     * Called when the publisher thread ends, also when it failed, to release what the sender holds.
+     */
+    void close();
+}
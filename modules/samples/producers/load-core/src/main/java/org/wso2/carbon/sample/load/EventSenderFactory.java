@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.load;
+
+/**
+ * Creates the {@link EventSender}s of a transport and owns the resources they share, such as connections.
+ */
+public interface EventSenderFactory {
+
+    /**
+     * @param workerId index of the publisher thread, starting from zero
+     * @return sender to be used only by the given publisher thread
+     * @throws Exception when the transport cannot be initialised
+     */
+    EventSender createSender(int workerId) throws Exception;
+
+    /**
+     * Called once all the publisher threads have finished their warm-up, just before the measured events are sent.
+     */
+    void measurementStarted();
+
+    /**
+     * Called once all the publisher threads have finished.
+     */
+    void shutdown();
+}
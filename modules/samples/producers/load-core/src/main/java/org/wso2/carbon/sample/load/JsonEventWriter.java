@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.load;
+
+/**
+ * Writes events in the default JSON mapping format accepted by the CEP event receivers, ex:
+ * {"event": {"metaData": {...}, "correlationData": {...}, "payloadData": {...}}}.
+ * An instance keeps its buffer between events and must be confined to one thread.
+ */
+public class JsonEventWriter {
+
+    private final StringBuilder builder = new StringBuilder(256);
+
+    /**
+     * @param event event to write
+     * @return the JSON message
+     */
+    public String write(LoadEvent event) {
+        builder.setLength(0);
+        append(builder, event);
+        return builder.toString();
+    }
+
+    public static void append(StringBuilder builder, LoadEvent event) {
+        EventSchema schema = event.getSchema();
+        builder.append("{\"event\": {");
+        appendAttributes(builder, "metaData", schema.getMetaDataNames(), event.getMetaData());
+        builder.append(',');
+        appendAttributes(builder, "correlationData", schema.getCorrelationDataNames(), event.getCorrelationData());
+        builder.append(',');
+        appendAttributes(builder, "payloadData", schema.getPayloadDataNames(), event.getPayloadData());
+        builder.append("}}");
+    }
+
+    private static void appendAttributes(StringBuilder builder, String section, String[] names, Object[] values) {
+        builder.append('"').append(section).append("\":{");
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append('"').append(names[i]).append("\":");
+            appendValue(builder, values[i]);
+        }
+        builder.append('}');
+    }
+
+    private static void appendValue(StringBuilder builder, Object value) {
+        if (value == null) {
+            builder.append("null");
+        } else if (value instanceof String) {
+            String string = (String) value;
+            builder.append('"');
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                if (c == '"' || c == '\\') {
+                    builder.append('\\');
+                }
+                builder.append(c);
+            }
+            builder.append('"');
+        } else {
+            builder.append(value);
+        }
+    }
+}
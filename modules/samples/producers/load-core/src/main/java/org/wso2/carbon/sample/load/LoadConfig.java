@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.load;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Workload settings shared by all performance producers. Values can be given as system properties prefixed with
+ * "load." (ex: -Dload.rate=50000) and individual producers may override them from their own arguments.
+ */
+public class LoadConfig {
+
+    public static final String PROPERTY_PREFIX = "load.";
+
+    private long eventCount = 100000;
+    private long warmUpCount = 0;
+    private int threads = 1;
+    private double rate = 0;
+    private long reportInterval = 1000;
+    private boolean openLoop = false;
+    private double rampStartRate = 0;
+    private long rampTime = 0;
+    private int batchSize = 1;
+    private int eventPoolSize = 0;
+    private int agents = 1;
+    private int agentId = 0;
+    private String coordinator;
+    private long producerId = (long) ThreadLocalRandom.current().nextInt(1 << 30) << 16;
+
+    public static LoadConfig fromSystemProperties() {
+        LoadConfig config = new LoadConfig();
+        config.setEventCount(getLong("eventCount", config.getEventCount()));
+        config.setWarmUpCount(getLong("warmUpCount", config.getWarmUpCount()));
+        config.setThreads((int) getLong("threads", config.getThreads()));
+        config.setRate(getDouble("rate", config.getRate()));
+        config.setReportInterval(getLong("reportInterval", config.getReportInterval()));
+        config.setOpenLoop(Boolean.parseBoolean(getString("openLoop", String.valueOf(config.isOpenLoop()))));
+        config.setRampStartRate(getDouble("rampStartRate", config.getRampStartRate()));
+        config.setRampTime(getLong("rampTime", config.getRampTime()));
+        config.setBatchSize((int) getLong("batchSize", config.getBatchSize()));
+        config.setEventPoolSize((int) getLong("eventPoolSize", config.getEventPoolSize()));
+        config.setAgents((int) getLong("agents", config.getAgents()));
+        config.setAgentId((int) getLong("agentId", config.getAgentId()));
+        config.setCoordinator(getString("coordinator", config.getCoordinator()));
+        config.setProducerId(getLong("producerId", config.getProducerId()));
+        return config;
+    }
+
+    /**
+     * @return total number of measured events sent by all threads
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    public void setEventCount(long eventCount) {
+        this.eventCount = eventCount;
+    }
+
+    /**
+     * @return total number of events sent by all threads before the measurement starts
+     */
+    public long getWarmUpCount() {
+        return warmUpCount;
+    }
+
+    public void setWarmUpCount(long warmUpCount) {
+        this.warmUpCount = warmUpCount;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of publisher threads should be positive, but found " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * @return target events per second across all threads, or zero to publish as fast as possible
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    public void setRate(double rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * @return time between two throughput reports in milliseconds
+     */
+    public long getReportInterval() {
+        return reportInterval;
+    }
+
+    public void setReportInterval(long reportInterval) {
+        this.reportInterval = reportInterval;
+    }
+
+    /**
+     * @return true to publish on a fixed schedule of intended send times instead of pacing each event after the
+     * previous one was sent, see {@link OpenLoopSchedule}
+     */
+    public boolean isOpenLoop() {
+        return openLoop;
+    }
+
+    public void setOpenLoop(boolean openLoop) {
+        this.openLoop = openLoop;
+    }
+
+    /**
+     * @return events per second across all threads at the start of the open loop rate ramp
+     */
+    public double getRampStartRate() {
+        return rampStartRate;
+    }
+
+    public void setRampStartRate(double rampStartRate) {
+        this.rampStartRate = rampStartRate;
+    }
+
+    /**
+     * @return duration of the open loop rate ramp in milliseconds
+     */
+    public long getRampTime() {
+        return rampTime;
+    }
+
+    public void setRampTime(long rampTime) {
+        this.rampTime = rampTime;
+    }
+
+    /**
+     * @return number of events a producer sends together in one transport message, request or transaction, for the
+     * transports which support it
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size should be positive, but found " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return number of events each publisher thread allocates up front and cycles through, for the transports which
+     * queue the sent events and serialise them later, or 0 to size the pool from the transport's queue
+     */
+    public int getEventPoolSize() {
+        return eventPoolSize;
+    }
+
+    public void setEventPoolSize(int eventPoolSize) {
+        if (eventPoolSize < 0) {
+            throw new IllegalArgumentException("Event pool size should not be negative, but found " + eventPoolSize);
+        }
+        this.eventPoolSize = eventPoolSize;
+    }
+
+    /**
+     * @return number of agent JVMs sharing the workload, see {@link LoadCoordinator}
+     */
+    public int getAgents() {
+        return agents;
+    }
+
+    public void setAgents(int agents) {
+        if (agents < 1) {
+            throw new IllegalArgumentException("Number of agents should be positive, but found " + agents);
+        }
+        this.agents = agents;
+    }
+
+    /**
+     * @return index of this agent JVM, starting from zero
+     */
+    public int getAgentId() {
+        return agentId;
+    }
+
+    public void setAgentId(int agentId) {
+        this.agentId = agentId;
+    }
+
+    /**
+     * @return host:port of the coordinator when running as an agent, or null otherwise
+     */
+    public String getCoordinator() {
+        return coordinator;
+    }
+
+    public void setCoordinator(String coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    /**
+     * @return producer id of the first publisher thread of the run, the others following it in order of agent and
+     * thread. Random by default, so that the events of different runs are told apart.
+     */
+    public long getProducerId() {
+        return producerId;
+    }
+
+    public void setProducerId(long producerId) {
+        this.producerId = producerId;
+    }
+
+    /**
+     * @return producer id stamped on the events of the given publisher thread of this agent
+     */
+    public long getProducerId(int thread) {
+        return producerId + (long) agentId * threads + thread;
+    }
+
+    /**
+     * @return true if this JVM runs a share of the workload on behalf of a coordinator
+     */
+    public boolean isAgent() {
+        return coordinator != null;
+    }
+
+    /**
+     * @return true if this JVM should start and coordinate agent JVMs instead of publishing itself
+     */
+    public boolean isCoordinator() {
+        return agents > 1 && coordinator == null;
+    }
+
+    /**
+     * @return the share of the workload run by this agent: the event counts and rates are divided by the number of
+     * agents and all other settings are kept
+     */
+    public LoadConfig getAgentShare() {
+        LoadConfig share = new LoadConfig();
+        share.setEventCount(eventCount / agents + (agentId < eventCount % agents ? 1 : 0));
+        share.setWarmUpCount(warmUpCount / agents + (agentId < warmUpCount % agents ? 1 : 0));
+        share.setThreads(threads);
+        share.setRate(rate / agents);
+        share.setReportInterval(reportInterval);
+        share.setOpenLoop(openLoop);
+        share.setRampStartRate(rampStartRate / agents);
+        share.setRampTime(rampTime);
+        share.setBatchSize(batchSize);
+        share.setEventPoolSize(eventPoolSize);
+        share.setAgents(agents);
+        share.setAgentId(agentId);
+        share.setCoordinator(coordinator);
+        share.setProducerId(producerId);
+        return share;
+    }
+
+    protected static String getString(String name, String defaultValue) {
+        String value = System.getProperty(PROPERTY_PREFIX + name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    protected static long getLong(String name, long defaultValue) {
+        String value = getString(name, null);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    protected static double getDouble(String name, double defaultValue) {
+        String value = getString(name, null);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    @Override
+    public String toString() {
+        return "eventCount=" + eventCount + ", warmUpCount=" + warmUpCount + ", threads=" + threads + ", rate="
+                + (rate > 0 ? rate + " events/s" : "unbounded") + ", reportInterval=" + reportInterval + " ms"
+                + (batchSize > 1 ? ", batchSize=" + batchSize : "")
+                + (agents > 1 ? ", agents=" + agents + (isAgent() ? ", agentId=" + agentId : "") : "")
+                + (openLoop ? ", openLoop=true, rampStartRate=" + rampStartRate + ", rampTime=" + rampTime + " ms" : "");
+    }
+}
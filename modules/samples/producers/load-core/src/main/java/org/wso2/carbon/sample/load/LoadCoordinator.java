@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.load;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a workload from several agent JVMs on this machine, for servers that a single producer JVM cannot saturate.
+ * <p/>
+ * The coordinator starts load.agents JVMs running the same producer with the same arguments, each of which publishes
+ * its share of the events at its share of the rate. Agents connect back to the coordinator and report once they have
+ * warmed up; when all of them are ready the coordinator gives them a common start time, and at the end it merges their
+ * results into one report. The messages are single text lines:
+ * <pre>
+ * agent -> coordinator: READY agentId
+ * coordinator -> agent: START startTimeMillis
+ * agent -> coordinator: RESULT agentId sentEvents elapsedTime failedThreads maxSendLag
+ * </pre>
+ */
+public class LoadCoordinator {
+    private static Log log = LogFactory.getLog(LoadCoordinator.class);
+
+    /**
+     * Time given to the agents between the start message and the start of the measurement.
+     */
+    private static final long START_DELAY = 500;
+
+    /**
+     * Time the coordinator waits on a socket before checking whether the agent JVMs are still running.
+     */
+    private static final int AGENT_CHECK_INTERVAL = 1000;
+
+    private final LoadConfig config;
+    private final Class<?> mainClass;
+    private final String[] args;
+    private final DecimalFormat decimalFormat = new DecimalFormat("#");
+
+    public LoadCoordinator(LoadConfig config, Class<?> mainClass, String[] args) {
+        this.config = config;
+        this.mainClass = mainClass;
+        this.args = args;
+    }
+
+    public LoadResult run() throws IOException, InterruptedException {
+        int agents = config.getAgents();
+        ServerSocket serverSocket = new ServerSocket(0, agents, InetAddress.getLoopbackAddress());
+        serverSocket.setSoTimeout(AGENT_CHECK_INTERVAL);
+        List<Process> processes = new ArrayList<Process>(agents);
+        List<Socket> sockets = new ArrayList<Socket>(agents);
+        try {
+            for (int i = 0; i < agents; i++) {
+                processes.add(startAgent(i, serverSocket.getLocalPort()));
+            }
+            log.info("Started " + agents + " load agents, waiting for them to warm up");
+
+            List<BufferedReader> readers = new ArrayList<BufferedReader>(agents);
+            List<PrintWriter> writers = new ArrayList<PrintWriter>(agents);
+            for (int i = 0; i < agents; i++) {
+                Socket socket = accept(serverSocket, processes);
+                socket.setSoTimeout(AGENT_CHECK_INTERVAL);
+                sockets.add(socket);
+                readers.add(new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8")));
+                writers.add(new PrintWriter(socket.getOutputStream(), true));
+            }
+            for (BufferedReader reader : readers) {
+                readMessage(reader, "READY", processes);
+            }
+
+            long startTime = System.currentTimeMillis() + START_DELAY;
+            for (PrintWriter writer : writers) {
+                writer.println("START " + startTime);
+            }
+            log.info("All load agents are ready, starting the measurement");
+
+            long sentEvents = 0;
+            long elapsedTime = 0;
+            int failedThreads = 0;
+            long maxSendLag = 0;
+            for (BufferedReader reader : readers) {
+                String[] result = readMessage(reader, "RESULT", processes);
+                long agentSentEvents = Long.parseLong(result[2]);
+                long agentElapsedTime = Long.parseLong(result[3]);
+                log.info("Agent " + result[1] + " sent " + agentSentEvents + " events in " + agentElapsedTime
+                        + " milliseconds.");
+                sentEvents += agentSentEvents;
+                elapsedTime = Math.max(elapsedTime, agentElapsedTime);
+                failedThreads += Integer.parseInt(result[4]);
+                maxSendLag = Math.max(maxSendLag, Long.parseLong(result[5]));
+            }
+            for (int i = 0; i < processes.size(); i++) {
+                int exitValue = processes.get(i).waitFor();
+                if (exitValue != 0) {
+                    log.warn("Load agent " + i + " exited with code " + exitValue);
+                }
+            }
+
+            LoadResult loadResult = new LoadResult(sentEvents, elapsedTime, failedThreads, maxSendLag);
+            log.info("All " + agents + " agents sent a total of " + sentEvents + " events in " + elapsedTime
+                    + " milliseconds with average throughput of " + decimalFormat.format(loadResult.getThroughput())
+                    + " events per second, " + failedThreads + " publisher threads failed."
+                    + (config.isOpenLoop() ? " Max send lag behind schedule was "
+                    + decimalFormat.format(maxSendLag / 1000000d) + " milliseconds." : ""));
+            return loadResult;
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            serverSocket.close();
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+    }
+
+    private Process startAgent(int agentId, int port) throws IOException {
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        String jvmArgs = System.getProperty(LoadConfig.PROPERTY_PREFIX + "agentJvmArgs");
+        if (jvmArgs != null && !jvmArgs.trim().isEmpty()) {
+            for (String jvmArg : jvmArgs.trim().split("\\s+")) {
+                command.add(jvmArg);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        for (Map.Entry<Object, Object> property : System.getProperties().entrySet()) {
+            String name = property.getKey().toString();
+            if (name.startsWith(LoadConfig.PROPERTY_PREFIX) && !name.equals(LoadConfig.PROPERTY_PREFIX + "agents")
+                    && !name.equals(LoadConfig.PROPERTY_PREFIX + "agentId")
+                    && !name.equals(LoadConfig.PROPERTY_PREFIX + "coordinator")
+                    && !name.equals(LoadConfig.PROPERTY_PREFIX + "producerId")) {
+                command.add("-D" + name + "=" + property.getValue());
+            }
+        }
+        command.add("-D" + LoadConfig.PROPERTY_PREFIX + "agents=" + config.getAgents());
+        command.add("-D" + LoadConfig.PROPERTY_PREFIX + "agentId=" + agentId);
+        command.add("-D" + LoadConfig.PROPERTY_PREFIX + "coordinator=127.0.0.1:" + port);
+        command.add("-D" + LoadConfig.PROPERTY_PREFIX + "producerId=" + config.getProducerId());
+        command.add(mainClass.getName());
+        for (String arg : args) {
+            command.add(arg);
+        }
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    private static Socket accept(ServerSocket serverSocket, List<Process> processes) throws IOException {
+        while (true) {
+            try {
+                return serverSocket.accept();
+            } catch (SocketTimeoutException e) {
+                // No agent is expected to exit before all of them have connected
+                checkAgents(processes, true);
+            }
+        }
+    }
+
+    private static String[] readMessage(BufferedReader reader, String type, List<Process> processes)
+            throws IOException {
+        while (true) {
+            try {
+                return readMessage(reader, type);
+            } catch (SocketTimeoutException e) {
+                // An agent which already reported may have exited normally, its connection being read later
+                checkAgents(processes, false);
+            }
+        }
+    }
+
+    /**
+     * Fails if an agent JVM has exited, or has exited with an error when failOnNormalExit is false, so that the
+     * coordinator does not wait for a message which will never come.
+     */
+    private static void checkAgents(List<Process> processes, boolean failOnNormalExit) throws IOException {
+        for (int i = 0; i < processes.size(); i++) {
+            int exitValue;
+            try {
+                exitValue = processes.get(i).exitValue();
+            } catch (IllegalThreadStateException e) {
+                // Still running
+                continue;
+            }
+            if (exitValue != 0 || failOnNormalExit) {
+                throw new IOException("Load agent " + i + " exited with code " + exitValue
+                        + " before reporting to the coordinator");
+            }
+        }
+    }
+
+    private static String[] readMessage(BufferedReader reader, String type) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            throw new IOException("A load agent disconnected while waiting for " + type);
+        }
+        String[] message = line.split(" ");
+        if (!message[0].equals(type)) {
+            throw new IOException("Expected " + type + " from a load agent, but received " + line);
+        }
+        return message;
+    }
+
+    /**
+     * Connection of an agent JVM to its coordinator.
+     */
+    public static class AgentConnection {
+        private final int agentId;
+        private final Socket socket;
+        private final BufferedReader reader;
+        private final PrintWriter writer;
+
+        public AgentConnection(String coordinator, int agentId) throws IOException {
+            this.agentId = agentId;
+            int separator = coordinator.lastIndexOf(':');
+            socket = new Socket(coordinator.substring(0, separator),
+                    Integer.parseInt(coordinator.substring(separator + 1)));
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            writer = new PrintWriter(socket.getOutputStream(), true);
+        }
+
+        /**
+         * Reports that this agent has warmed up and waits for the other agents.
+         *
+         * @return time in milliseconds at which all agents start the measurement
+         */
+        public long awaitStart() throws IOException {
+            writer.println("READY " + agentId);
+            return Long.parseLong(readMessage(reader, "START")[1]);
+        }
+
+        public void sendResult(LoadResult result) throws IOException {
+            writer.println("RESULT " + agentId + " " + result.getSentEvents() + " " + result.getElapsedTime() + " "
+                    + result.getFailedThreads() + " " + result.getMaxSendLag());
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.load;
+
+/**
+ * A transport neutral event. Each publisher thread reuses a single instance, so an {@link EventSender} must copy
+ * whatever it needs before {@link EventSender#send(LoadEvent)} returns.
+ */
+public class LoadEvent {
+
+    private final EventSchema schema;
+    private final Object[] metaData;
+    private final Object[] correlationData;
+    private final Object[] payloadData;
+    private long timestamp;
+    private long sequence;
+    private long producerId;
+
+    public LoadEvent(EventSchema schema) {
+        this.schema = schema;
+        this.metaData = new Object[schema.getMetaDataNames().length];
+        this.correlationData = new Object[schema.getCorrelationDataNames().length];
+        this.payloadData = new Object[schema.getPayloadDataNames().length];
+    }
+
+    public EventSchema getSchema() {
+        return schema;
+    }
+
+    public Object[] getMetaData() {
+        return metaData;
+    }
+
+    public Object[] getCorrelationData() {
+        return correlationData;
+    }
+
+    public Object[] getPayloadData() {
+        return payloadData;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return position of this event in the sequence of events sent by the current publisher thread
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return id of the publisher thread sending this event, unique across the threads and agents of a run
+     */
+    public long getProducerId() {
+        return producerId;
+    }
+
+    public void setProducerId(long producerId) {
+        this.producerId = producerId;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.load;
+
+/**
+ * Outcome of a {@link LoadRunner} run.
+ */
+public class LoadResult {
+
+    private final long sentEvents;
+    private final long elapsedTime;
+    private final int failedThreads;
+    private final long maxSendLag;
+
+    public LoadResult(long sentEvents, long elapsedTime, int failedThreads, long maxSendLag) {
+        this.sentEvents = sentEvents;
+        this.elapsedTime = elapsedTime;
+        this.failedThreads = failedThreads;
+        this.maxSendLag = maxSendLag;
+    }
+
+    /**
+     * @return number of measured events sent, excluding the warm-up events
+     */
+    public long getSentEvents() {
+        return sentEvents;
+    }
+
+    /**
+     * @return duration of the measured phase in milliseconds
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    public int getFailedThreads() {
+        return failedThreads;
+    }
+
+    /**
+     * @return largest delay in nanoseconds behind the open loop send schedule, or zero in closed loop mode
+     */
+    public long getMaxSendLag() {
+        return maxSendLag;
+    }
+
+    public double getThroughput() {
+        return elapsedTime > 0 ? sentEvents * 1000d / elapsedTime : 0;
+    }
+}
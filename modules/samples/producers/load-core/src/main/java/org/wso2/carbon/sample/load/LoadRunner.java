@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.load;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a workload against a transport: splits the warm-up and measured events over the publisher threads, waits
+ * until every thread has finished its warm-up, then starts all the threads together and publishes the measured events
+ * at the configured rate while a {@link ThroughputReporter} logs the progress.
+ * <p/>
+ * When load.agents is more than one, producers call {@link #coordinate(LoadConfig, Class, String[])} before creating
+ * their sender factory, which hands over to a {@link LoadCoordinator} running the producer's main class in that many
+ * agent JVMs and merging their results, so that the coordinator JVM opens no connections of its own.
+ */
+public class LoadRunner {
+    private static Log log = LogFactory.getLog(LoadRunner.class);
+
+    private final LoadConfig config;
+    private final EventGenerator generator;
+    private final EventSenderFactory senderFactory;
+    private final CountDownLatch warmUpLatch;
+    private final CountDownLatch startLatch = new CountDownLatch(1);
+    private final CountDownLatch finishLatch;
+    private final AtomicInteger failedThreads = new AtomicInteger(0);
+    private final ThroughputReporter reporter;
+    private volatile long startTime;
+    private volatile long startTimeMillis;
+
+    public LoadRunner(LoadConfig config, EventGenerator generator, EventSenderFactory senderFactory) {
+        this.config = config.isAgent() ? config.getAgentShare() : config;
+        this.generator = generator;
+        this.senderFactory = senderFactory;
+        this.warmUpLatch = new CountDownLatch(config.getThreads());
+        this.finishLatch = new CountDownLatch(config.getThreads());
+        this.reporter = new ThroughputReporter(config.getThreads(), config.isOpenLoop());
+    }
+
+    /**
+     * Runs the workload from agent JVMs if the configuration asks for more than one agent and this JVM is not an
+     * agent itself. To be called before creating the sender factory.
+     *
+     * @param mainClass main class of the producer, started in the agent JVMs
+     * @param args      arguments of the producer, passed on to the agent JVMs
+     * @return true if this JVM coordinated the agents, and the producer should not publish itself
+     */
+    public static boolean coordinate(LoadConfig config, Class<?> mainClass, String[] args)
+            throws InterruptedException, IOException {
+        if (!config.isCoordinator()) {
+            return false;
+        }
+        new LoadCoordinator(config, mainClass, args).run();
+        return true;
+    }
+
+    /**
+     * @param mainClass main class of the producer
+     * @param args      arguments of the producer
+     * @return result of this JVM
+     */
+    public LoadResult run(Class<?> mainClass, String[] args) throws InterruptedException, IOException {
+        if (config.isCoordinator()) {
+            senderFactory.shutdown();
+            throw new IllegalStateException("Coordinator mode should be run with LoadRunner.coordinate before the "
+                    + "sender factory is created");
+        }
+
+        log.info("Starting load test with " + config);
+        LoadCoordinator.AgentConnection coordinator = null;
+        if (config.isAgent()) {
+            coordinator = new LoadCoordinator.AgentConnection(config.getCoordinator(), config.getAgentId());
+        }
+        int threads = config.getThreads();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(new Worker(i, share(config.getWarmUpCount(), i), share(config.getEventCount(),
+                    i)), "publisher-" + i);
+            thread.start();
+        }
+        warmUpLatch.await();
+        if (coordinator != null) {
+            // Start the measurement at the same wall clock time as the other agents
+            long commonStartTime = coordinator.awaitStart();
+            long delay = commonStartTime - System.currentTimeMillis();
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+        }
+        startTime = System.nanoTime();
+        startTimeMillis = System.currentTimeMillis();
+        senderFactory.measurementStarted();
+        reporter.start(config.getReportInterval());
+        startLatch.countDown();
+        finishLatch.await();
+        LoadResult result = reporter.stop(failedThreads.get());
+        senderFactory.shutdown();
+        if (coordinator != null) {
+            coordinator.sendResult(result);
+        }
+        return result;
+    }
+
+    private long share(long total, int workerId) {
+        int threads = config.getThreads();
+        return total / threads + (workerId < total % threads ? 1 : 0);
+    }
+
+    private class Worker implements Runnable {
+        private final int workerId;
+        private final long warmUpCount;
+        private final long eventCount;
+        private final LoadEvent event;
+        private long sequence = 0;
+
+        private Worker(int workerId, long warmUpCount, long eventCount) {
+            this.workerId = workerId;
+            this.warmUpCount = warmUpCount;
+            this.eventCount = eventCount;
+            this.event = new LoadEvent(generator.getSchema());
+            this.event.setProducerId(config.getProducerId(workerId));
+        }
+
+        @Override
+        public void run() {
+            boolean warmedUp = false;
+            EventSender sender = null;
+            try {
+                sender = senderFactory.createSender(workerId);
+                while (sequence < warmUpCount) {
+                    generator.next(event, sequence++, System.currentTimeMillis());
+                    sender.send(event);
+                }
+                // Complete the warm-up events and release what the sender holds, such as a pooled session
+                sender.flush();
+                warmUpLatch.countDown();
+                warmedUp = true;
+                startLatch.await();
+
+                if (config.isOpenLoop()) {
+                    publishOpenLoop(sender);
+                } else {
+                    publishClosedLoop(sender);
+                }
+                sender.flush();
+            } catch (Throwable t) {
+                failedThreads.incrementAndGet();
+                log.error("Error when sending the messages from publisher " + workerId, t);
+            } finally {
+                if (!warmedUp) {
+                    warmUpLatch.countDown();
+                }
+                if (sender != null) {
+                    sender.close();
+                }
+                finishLatch.countDown();
+            }
+        }
+
+        private void publishClosedLoop(EventSender sender) throws Exception {
+            RateLimiter rateLimiter = new RateLimiter(config.getRate() / config.getThreads());
+            AtomicLong counter = reporter.getCounter(workerId);
+            for (long sent = 0; sent < eventCount; ) {
+                rateLimiter.acquire();
+                generator.next(event, sequence++, System.currentTimeMillis());
+                sender.send(event);
+                counter.lazySet(++sent);
+            }
+        }
+
+        private void publishOpenLoop(EventSender sender) throws Exception {
+            int threads = config.getThreads();
+            OpenLoopSchedule schedule = new OpenLoopSchedule(startTime, config.getRate() / threads,
+                    config.getRampStartRate() / threads, config.getRampTime(),
+                    (workerId * config.getAgents() + config.getAgentId()) / (double) (threads * config.getAgents()));
+            AtomicLong counter = reporter.getCounter(workerId);
+            AtomicLong maxLag = reporter.getMaxLag(workerId);
+            for (long sent = 0; sent < eventCount; ) {
+                long sendTime = schedule.getSendTime(sent);
+                RateLimiter.waitUntil(sendTime);
+                generator.next(event, sequence++, startTimeMillis + (sendTime - startTime) / 1000000);
+                sender.send(event);
+                counter.lazySet(++sent);
+
+                long lag = System.nanoTime() - sendTime;
+                long currentMaxLag = maxLag.get();
+                while (lag > currentMaxLag && !maxLag.compareAndSet(currentMaxLag, lag)) {
+                    currentMaxLag = maxLag.get();
+                }
+            }
+        }
+    }
+}
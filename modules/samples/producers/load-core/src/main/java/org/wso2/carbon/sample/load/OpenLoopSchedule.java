@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.load;
+
+/**
+ * Fixed schedule of intended send times for one publisher thread. The schedule does not depend on when events were
+ * actually sent, so a slow receiver cannot slow down the offered load; events which fall behind are sent as soon as
+ * possible and keep their intended send time as timestamp, which makes the measured latency include the time they
+ * waited on the publisher (coordinated omission correction).
+ * <p/>
+ * The rate can ramp linearly from a start rate to the target rate over the ramp time, after which it stays constant.
+ */
+public class OpenLoopSchedule {
+
+    private static final double NANOS_PER_SECOND = 1000000000d;
+
+    private final long startTime;
+    private final double startRate;
+    private final double rate;
+    private final double rampTime;
+    private final double rampEvents;
+    private final double acceleration;
+    private final double offset;
+
+    /**
+     * @param startTime     System.nanoTime() at which the schedule starts
+     * @param rate          target events per second of this thread
+     * @param startRate     events per second of this thread at the start of the ramp
+     * @param rampTime      duration of the ramp in milliseconds, or zero to start at the target rate
+     * @param phase         fraction of an interval in [0, 1) to delay the schedule with, so that the threads sharing a
+     *                      rate do not send at the same instant
+     */
+    public OpenLoopSchedule(long startTime, double rate, double startRate, long rampTime, double phase) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Open loop publishing requires a positive rate, but found " + rate);
+        }
+        this.startTime = startTime;
+        this.rate = rate;
+        this.rampTime = rampTime / 1000d;
+        this.startRate = rampTime > 0 ? Math.max(startRate, 0) : rate;
+        this.rampEvents = this.rampTime * (this.startRate + rate) / 2;
+        this.acceleration = this.rampTime > 0 ? (rate - this.startRate) / (2 * this.rampTime) : 0;
+        this.offset = phase;
+    }
+
+    /**
+     * @param index position of the event in the measured phase, starting from zero
+     * @return System.nanoTime() at which the event should be sent
+     */
+    public long getSendTime(long index) {
+        double events = index + offset;
+        double seconds;
+        if (events >= rampEvents) {
+            seconds = rampTime + (events - rampEvents) / rate;
+        } else if (acceleration == 0) {
+            seconds = events / startRate;
+        } else {
+            // Solve events = startRate * t + acceleration * t^2 for t
+            seconds = (Math.sqrt(startRate * startRate + 4 * acceleration * events) - startRate) / (2 * acceleration);
+        }
+        return startTime + (long) (seconds * NANOS_PER_SECOND);
+    }
+}
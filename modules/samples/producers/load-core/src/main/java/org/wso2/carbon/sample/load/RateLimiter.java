@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.load;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces a single publisher thread to a fixed rate. When the thread falls behind, the missed slots are dropped instead
+ * of being sent as a burst.
+ */
+public class RateLimiter {
+
+    private static final long SPIN_THRESHOLD_NANOS = 50000;
+
+    private final long intervalNanos;
+    private long nextSendTime;
+
+    /**
+     * @param eventsPerSecond rate of the thread, or zero for no limit
+     */
+    public RateLimiter(double eventsPerSecond) {
+        this.intervalNanos = eventsPerSecond > 0 ? (long) (1000000000L / eventsPerSecond) : 0;
+    }
+
+    public void acquire() {
+        if (intervalNanos == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (nextSendTime == 0 || now - nextSendTime > intervalNanos) {
+            nextSendTime = now;
+        }
+        waitUntil(nextSendTime);
+        nextSendTime += intervalNanos;
+    }
+
+    /**
+     * Waits until the given {@link System#nanoTime()}, parking for most of the time and yielding close to it.
+     *
+     * @param deadline time to wait for in nanoseconds, returns immediately if it has passed
+     */
+    public static void waitUntil(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        while (remaining > 0) {
+            if (remaining > SPIN_THRESHOLD_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+            } else {
+                Thread.yield();
+            }
+            remaining = deadline - System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.load;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates events for any stream, given its stream definition JSON as found in the eventstreams directory of an
+ * artifact. Attribute values are synthesised by type, with a configurable number of distinct values, string length
+ * and share of null values per attribute. A LONG attribute named "timestamp" always carries the event timestamp, and an
+ * INT or LONG attribute named "producerId" and a LONG attribute named "sequence" carry the producer id and sequence
+ * number of the event, which the performance consumers use to detect lost, duplicated and reordered events.
+ * <p/>
+ * Like {@link SensorEventGenerator}, each event is derived from the seed, its producer id and its sequence number, so
+ * the producers of a run publish different values. Values are taken from tables built up front so that generating an
+ * event does not allocate, apart from boxing the timestamp, producerId and sequence stamps. Attributes with more
+ * distinct values than fit in their table create the remaining values on demand.
+ */
+public class SchemaEventGenerator implements EventGenerator {
+
+    private static final String SETTINGS_PREFIX = "schema.";
+    private static final String TIMESTAMP = "timestamp";
+    private static final String PRODUCER_ID = "producerId";
+    private static final String SEQUENCE = "sequence";
+    private static final int MAX_TABLE_SIZE = 1 << 16;
+    private static final int MAX_TABLE_CHARS = 1 << 22;
+    private static final char[] ALPHABET =
+            "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-_".toCharArray();
+
+    private final EventSchema schema;
+    private final AttributeValues[] metaData;
+    private final AttributeValues[] correlationData;
+    private final AttributeValues[] payloadData;
+    private final long seed;
+
+    /**
+     * @param streamDefinition   stream definition JSON with the name, version and attributes of the stream
+     * @param seed               seed of the generated values, the same seed gives the same events
+     * @param defaultSettings    value settings of the attributes which are not given in attributeSettings
+     * @param attributeSettings  value settings by attribute name
+     */
+    public SchemaEventGenerator(String streamDefinition, long seed, ValueSettings defaultSettings,
+                                Map<String, ValueSettings> attributeSettings) {
+        this.seed = seed;
+        JsonObject definition = new JsonParser().parse(streamDefinition).getAsJsonObject();
+        String[][] names = new String[3][];
+        AttributeValues[][] values = new AttributeValues[3][];
+        String[] sections = {"metaData", "correlationData", "payloadData"};
+        int attributeNumber = 0;
+        for (int i = 0; i < sections.length; i++) {
+            JsonElement attributes = definition.get(sections[i]);
+            JsonArray attributeArray = attributes == null || attributes.isJsonNull() ? new JsonArray()
+                    : attributes.getAsJsonArray();
+            names[i] = new String[attributeArray.size()];
+            values[i] = new AttributeValues[attributeArray.size()];
+            for (int j = 0; j < attributeArray.size(); j++) {
+                JsonObject attribute = attributeArray.get(j).getAsJsonObject();
+                String name = attribute.get("name").getAsString();
+                ValueSettings settings = attributeSettings.get(name);
+                names[i][j] = name;
+                values[i][j] = new AttributeValues(name, Type.valueOf(attribute.get("type").getAsString()
+                        .toUpperCase()), settings == null ? defaultSettings : settings, mix(seed + ++attributeNumber));
+            }
+        }
+        this.schema = new EventSchema(definition.get("name").getAsString(), definition.get("version").getAsString(),
+                names[0], names[1], names[2]);
+        this.metaData = values[0];
+        this.correlationData = values[1];
+        this.payloadData = values[2];
+    }
+
+    /**
+     * Creates a generator for the stream definition file given with -Dload.streamDefinition. Value settings are read
+     * from -Dload.schema.cardinality, -Dload.schema.stringLength (ex: 8 or 8-64) and -Dload.schema.nullRatio, and can
+     * be overridden per attribute (ex: -Dload.schema.attribute.sensorName.cardinality=10).
+     *
+     * @param defaultGenerator generator to use when no stream definition is given
+     * @return the schema generator, or the default generator
+     */
+    public static EventGenerator fromSystemProperties(EventGenerator defaultGenerator) throws IOException {
+        String streamDefinitionFile = LoadConfig.getString("streamDefinition", null);
+        if (streamDefinitionFile == null) {
+            return defaultGenerator;
+        }
+        String streamDefinition = new String(Files.readAllBytes(new File(streamDefinitionFile).toPath()), "UTF-8");
+        ValueSettings defaultSettings = new ValueSettings();
+        defaultSettings.set("cardinality", LoadConfig.getString(SETTINGS_PREFIX + "cardinality", null));
+        defaultSettings.set("stringLength", LoadConfig.getString(SETTINGS_PREFIX + "stringLength", null));
+        defaultSettings.set("nullRatio", LoadConfig.getString(SETTINGS_PREFIX + "nullRatio", null));
+
+        String attributePrefix = LoadConfig.PROPERTY_PREFIX + SETTINGS_PREFIX + "attribute.";
+        Map<String, ValueSettings> attributeSettings = new HashMap<String, ValueSettings>();
+        for (String property : System.getProperties().stringPropertyNames()) {
+            int separator = property.lastIndexOf('.');
+            if (property.startsWith(attributePrefix) && separator > attributePrefix.length()) {
+                String attribute = property.substring(attributePrefix.length(), separator);
+                ValueSettings settings = attributeSettings.get(attribute);
+                if (settings == null) {
+                    settings = new ValueSettings(defaultSettings);
+                    attributeSettings.put(attribute, settings);
+                }
+                settings.set(property.substring(separator + 1), System.getProperty(property).trim());
+            }
+        }
+        return new SchemaEventGenerator(streamDefinition, LoadConfig.getLong("seed",
+                ThreadLocalRandom.current().nextLong()), defaultSettings, attributeSettings);
+    }
+
+    @Override
+    public EventSchema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public void next(LoadEvent event, long sequence, long timestamp) {
+        long eventBits = seed + mix(event.getProducerId()) + sequence * 0x9E3779B97F4A7C15L;
+        event.setTimestamp(timestamp);
+        event.setSequence(sequence);
+        fill(event.getMetaData(), metaData, eventBits, event);
+        fill(event.getCorrelationData(), correlationData, eventBits, event);
+        fill(event.getPayloadData(), payloadData, eventBits, event);
+    }
+
+    private static void fill(Object[] data, AttributeValues[] values, long eventBits, LoadEvent event) {
+        for (int i = 0; i < values.length; i++) {
+            AttributeValues attributeValues = values[i];
+            switch (attributeValues.stamp) {
+                case TIMESTAMP_STAMP:
+                    data[i] = event.getTimestamp();
+                    break;
+                case PRODUCER_ID_STAMP:
+                    data[i] = attributeValues.type == Type.INT ? (Object) (int) event.getProducerId()
+                            : (Object) event.getProducerId();
+                    break;
+                case SEQUENCE_STAMP:
+                    data[i] = event.getSequence();
+                    break;
+                default:
+                    data[i] = attributeValues.get(mix(eventBits + attributeValues.salt));
+            }
+        }
+    }
+
+    /**
+     * Finalizer of the SplitMix64 generator, which spreads consecutive inputs over all the bits.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * How the values of an attribute are distributed.
+     */
+    public static class ValueSettings {
+        private long cardinality = 1024;
+        private int minStringLength = 16;
+        private int maxStringLength = 16;
+        private double nullRatio = 0;
+
+        public ValueSettings() {
+        }
+
+        public ValueSettings(ValueSettings settings) {
+            this.cardinality = settings.cardinality;
+            this.minStringLength = settings.minStringLength;
+            this.maxStringLength = settings.maxStringLength;
+            this.nullRatio = settings.nullRatio;
+        }
+
+        /**
+         * @return number of distinct non null values of the attribute
+         */
+        public long getCardinality() {
+            return cardinality;
+        }
+
+        public void setCardinality(long cardinality) {
+            if (cardinality < 1) {
+                throw new IllegalArgumentException("Cardinality should be positive, but found " + cardinality);
+            }
+            this.cardinality = cardinality;
+        }
+
+        public int getMinStringLength() {
+            return minStringLength;
+        }
+
+        public int getMaxStringLength() {
+            return maxStringLength;
+        }
+
+        public void setStringLength(int minStringLength, int maxStringLength) {
+            if (minStringLength < 0 || maxStringLength < minStringLength) {
+                throw new IllegalArgumentException("Invalid string length range " + minStringLength + "-"
+                        + maxStringLength);
+            }
+            this.minStringLength = minStringLength;
+            this.maxStringLength = maxStringLength;
+        }
+
+        /**
+         * @return share of the events in which the attribute is null, from 0 to 1
+         */
+        public double getNullRatio() {
+            return nullRatio;
+        }
+
+        public void setNullRatio(double nullRatio) {
+            if (nullRatio < 0 || nullRatio > 1) {
+                throw new IllegalArgumentException("Null ratio should be between 0 and 1, but found " + nullRatio);
+            }
+            this.nullRatio = nullRatio;
+        }
+
+        private void set(String setting, String value) {
+            if (value == null) {
+                return;
+            }
+            if ("cardinality".equals(setting)) {
+                setCardinality(Long.parseLong(value));
+            } else if ("stringLength".equals(setting)) {
+                int separator = value.indexOf('-');
+                if (separator < 0) {
+                    setStringLength(Integer.parseInt(value), Integer.parseInt(value));
+                } else {
+                    setStringLength(Integer.parseInt(value.substring(0, separator).trim()),
+                            Integer.parseInt(value.substring(separator + 1).trim()));
+                }
+            } else if ("nullRatio".equals(setting)) {
+                setNullRatio(Double.parseDouble(value));
+            } else {
+                throw new IllegalArgumentException("Unknown attribute value setting '" + setting + "'");
+            }
+        }
+    }
+
+    private enum Type {
+        INT, LONG, FLOAT, DOUBLE, BOOL, STRING
+    }
+
+    private static final int NO_STAMP = 0;
+    private static final int TIMESTAMP_STAMP = 1;
+    private static final int PRODUCER_ID_STAMP = 2;
+    private static final int SEQUENCE_STAMP = 3;
+
+    /**
+     * Values of one attribute, indexed from zero to the cardinality of the attribute.
+     */
+    private static class AttributeValues {
+        private final Type type;
+        private final int stamp;
+        private final long cardinality;
+        private final int nullThreshold;
+        private final int minStringLength;
+        private final int stringLengths;
+        private final long salt;
+        private final Object[] table;
+
+        private AttributeValues(String name, Type type, ValueSettings settings, long salt) {
+            this.type = type;
+            if (type == Type.LONG && TIMESTAMP.equals(name)) {
+                this.stamp = TIMESTAMP_STAMP;
+            } else if ((type == Type.INT || type == Type.LONG) && PRODUCER_ID.equals(name)) {
+                this.stamp = PRODUCER_ID_STAMP;
+            } else if (type == Type.LONG && SEQUENCE.equals(name)) {
+                this.stamp = SEQUENCE_STAMP;
+            } else {
+                this.stamp = NO_STAMP;
+            }
+            this.cardinality = type == Type.BOOL ? Math.min(2, settings.getCardinality()) : settings.getCardinality();
+            // Compared with 24 random bits
+            this.nullThreshold = (int) Math.round(settings.getNullRatio() * (1 << 24));
+            this.minStringLength = settings.getMinStringLength();
+            this.stringLengths = settings.getMaxStringLength() - settings.getMinStringLength() + 1;
+            this.salt = salt;
+            long tableSize = Math.min(cardinality, MAX_TABLE_SIZE);
+            if (type == Type.STRING) {
+                tableSize = Math.max(1, Math.min(tableSize, MAX_TABLE_CHARS / Math.max(1, settings
+                        .getMaxStringLength())));
+            }
+            this.table = new Object[(int) tableSize];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = create(i);
+            }
+        }
+
+        private Object get(long bits) {
+            if ((int) (bits >>> 40) < nullThreshold) {
+                return null;
+            }
+            long index = (bits & 0xFFFFFFFFFFL) % cardinality;
+            return index < table.length ? table[(int) index] : create(index);
+        }
+
+        private Object create(long index) {
+            long bits = mix(salt + index);
+            switch (type) {
+                case INT:
+                    return (int) bits;
+                case LONG:
+                    return bits;
+                case FLOAT:
+                    return (bits >>> 40) / (float) (1 << 24);
+                case DOUBLE:
+                    return (bits >>> 11) * 0x1.0p-53;
+                case BOOL:
+                    return index == 1;
+                default:
+                    char[] chars = new char[minStringLength + (int) ((bits >>> 1) % stringLengths)];
+                    for (int i = 0; i < chars.length; i++) {
+                        if (i % 10 == 0) {
+                            bits = mix(bits + i);
+                        }
+                        chars[i] = ALPHABET[(int) (bits >>> (6 * (i % 10))) & 63];
+                    }
+                    return new String(chars);
+            }
+        }
+    }
+}
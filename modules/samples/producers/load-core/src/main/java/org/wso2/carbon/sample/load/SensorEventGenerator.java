@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.load;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates random events for the org.wso2.event.sensor.stream:1.0.0 stream used by the performance samples.
+ * <p/>
+ * The attribute values are drawn from tables of boxed values created once, and a single long hashed from the seed, the
+ * producer id and the sequence of the event selects all of them, so generating an event neither boxes nor allocates
+ * apart from the meta timestamp. Generators with the same seed produce the same attribute values for the same producer
+ * and sequence, while the threads and agents of a run, which have distinct producer ids, publish different values.
+ */
+public class SensorEventGenerator implements EventGenerator {
+
+    public static final EventSchema SENSOR_STREAM = new EventSchema("org.wso2.event.sensor.stream", "1.0.0",
+            new String[]{"timestamp", "isPowerSaverEnabled", "sensorId", "sensorName"},
+            new String[]{"longitude", "latitude"},
+            new String[]{"humidity", "sensorValue"});
+
+    private static final int VALUE_BITS = 10;
+    private static final int VALUE_COUNT = 1 << VALUE_BITS;
+    private static final int VALUE_MASK = VALUE_COUNT - 1;
+
+    private final Integer[] sensorIds = new Integer[VALUE_COUNT];
+    private final String[] sensorNames = new String[VALUE_COUNT];
+    private final Double[] longitudes = new Double[VALUE_COUNT];
+    private final Double[] latitudes = new Double[VALUE_COUNT];
+    private final Float[] humidities = new Float[VALUE_COUNT];
+    private final Double[] sensorValues = new Double[VALUE_COUNT];
+    private final long seed;
+
+    public SensorEventGenerator() {
+        this(ThreadLocalRandom.current().nextLong());
+    }
+
+    public SensorEventGenerator(long seed) {
+        this.seed = seed;
+        Random random = new Random(seed);
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            sensorIds[i] = random.nextInt();
+            sensorNames[i] = "temperature-" + i;
+            longitudes[i] = random.nextDouble();
+            latitudes[i] = random.nextDouble();
+            humidities[i] = random.nextFloat();
+            sensorValues[i] = random.nextDouble();
+        }
+    }
+
+    @Override
+    public EventSchema getSchema() {
+        return SENSOR_STREAM;
+    }
+
+    @Override
+    public void next(LoadEvent event, long sequence, long timestamp) {
+        long bits = mix(seed + mix(event.getProducerId()) + sequence * 0x9E3779B97F4A7C15L);
+        event.setTimestamp(timestamp);
+        event.setSequence(sequence);
+
+        Object[] metaData = event.getMetaData();
+        metaData[0] = timestamp;
+        metaData[1] = bits < 0 ? Boolean.TRUE : Boolean.FALSE;
+        metaData[2] = sensorIds[(int) bits & VALUE_MASK];
+        metaData[3] = sensorNames[(int) sequence & VALUE_MASK];
+
+        Object[] correlationData = event.getCorrelationData();
+        correlationData[0] = longitudes[(int) (bits >>> VALUE_BITS) & VALUE_MASK];
+        correlationData[1] = latitudes[(int) (bits >>> (2 * VALUE_BITS)) & VALUE_MASK];
+
+        Object[] payloadData = event.getPayloadData();
+        payloadData[0] = humidities[(int) (bits >>> (3 * VALUE_BITS)) & VALUE_MASK];
+        payloadData[1] = sensorValues[(int) (bits >>> (4 * VALUE_BITS)) & VALUE_MASK];
+    }
+
+    /**
+     * Finalizer of the SplitMix64 generator, which spreads consecutive inputs over all the bits.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.load;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.text.DecimalFormat;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically logs the throughput of the publisher threads. Each thread owns one counter which only it writes to,
+ * so counting adds no contention to the publishing path. In open loop mode it also logs how far the threads fell
+ * behind their send schedule, which shows when the publisher itself cannot offer the configured rate.
+ */
+public class ThroughputReporter implements Runnable {
+    private static Log log = LogFactory.getLog(ThroughputReporter.class);
+
+    private final AtomicLong[] counters;
+    private final AtomicLong[] maxLags;
+    private final boolean reportLag;
+    private final DecimalFormat decimalFormat = new DecimalFormat("#");
+    private ScheduledExecutorService scheduler;
+    private long startTime;
+    private long lastTime;
+    private long lastCount;
+    private long totalMaxLag;
+
+    public ThroughputReporter(int threads, boolean reportLag) {
+        this.reportLag = reportLag;
+        counters = new AtomicLong[threads];
+        maxLags = new AtomicLong[threads];
+        for (int i = 0; i < threads; i++) {
+            counters[i] = new AtomicLong(0);
+            maxLags[i] = new AtomicLong(0);
+        }
+    }
+
+    /**
+     * @param workerId index of the publisher thread
+     * @return counter to be updated only by the given publisher thread
+     */
+    public AtomicLong getCounter(int workerId) {
+        return counters[workerId];
+    }
+
+    /**
+     * @param workerId index of the publisher thread
+     * @return largest delay in nanoseconds between the intended and the actual send time of the thread's events
+     * since the last report
+     */
+    public AtomicLong getMaxLag(int workerId) {
+        return maxLags[workerId];
+    }
+
+    public synchronized void start(long reportInterval) {
+        startTime = System.currentTimeMillis();
+        lastTime = startTime;
+        lastCount = getTotal();
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "throughput-reporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleAtFixedRate(this, reportInterval, reportInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void run() {
+        long currentTime = System.currentTimeMillis();
+        long currentCount = getTotal();
+        long sentEvents = currentCount - lastCount;
+        long elapsedTime = currentTime - lastTime;
+        lastCount = currentCount;
+        lastTime = currentTime;
+        if (elapsedTime > 0) {
+            double throughputPerSecond = (((double) sentEvents) / elapsedTime) * 1000;
+            log.info("Sent " + sentEvents + " sensor events in " + elapsedTime
+                    + " milliseconds with total throughput of " + decimalFormat.format(throughputPerSecond)
+                    + " events per second." + (reportLag ? " Max send lag behind schedule is "
+                    + decimalFormat.format(getAndResetMaxLag() / 1000000d) + " milliseconds." : ""));
+        }
+    }
+
+    private long getAndResetMaxLag() {
+        long maxLag = 0;
+        for (AtomicLong lag : maxLags) {
+            maxLag = Math.max(maxLag, lag.getAndSet(0));
+        }
+        totalMaxLag = Math.max(totalMaxLag, maxLag);
+        return maxLag;
+    }
+
+    /**
+     * Stops reporting and summarises the whole measured phase.
+     *
+     * @param failedThreads number of publisher threads which stopped because of an error
+     * @return result of the run
+     */
+    public synchronized LoadResult stop(int failedThreads) {
+        long elapsedTime = System.currentTimeMillis() - startTime;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            run();
+        }
+        LoadResult result = new LoadResult(getTotal(), elapsedTime, failedThreads, totalMaxLag);
+        log.info("Sent a total of " + result.getSentEvents() + " sensor events in " + result.getElapsedTime()
+                + " milliseconds with average throughput of " + decimalFormat.format(result.getThroughput())
+                + " events per second." + (reportLag ? " Max send lag behind schedule was "
+                + decimalFormat.format(totalMaxLag / 1000000d) + " milliseconds." : ""));
+        return result;
+    }
+
+    private long getTotal() {
+        long total = 0;
+        for (AtomicLong counter : counters) {
+            total += counter.get();
+        }
+        return total;
+    }
+}
@@ -20,6 +20,8 @@ import org.wso2.carbon.sample.tfl.BusStop.BusStop;
 import org.wso2.carbon.sample.tfl.TflStream;
 
 import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
@@ -27,64 +29,169 @@ import java.util.ArrayList;
 
 /**
  * Created by isuru on 2/9/15.
+ * <p/>
+ * Polls the bus predictions of the countdown API, meant to be run periodically on a single thread, see
+ * {@link org.wso2.carbon.sample.tfl.GetData}. Responses are read to the end and closed without disconnecting, so that
+ * the HTTP keep-alive cache reuses the connection for the next poll.
  */
-public class BusStream extends Thread {
+public class BusStream implements Runnable {
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int READ_TIMEOUT = 60000;
+    private static final int RECORDED_FILES = 100;
+
     String url;
+    private final boolean recorded;
+    private int recordedFileIndex = 0;
+    private final CountdownTokenizer tokenizer = new CountdownTokenizer();
+
+    private volatile long polls;
+    private volatile long failedPolls;
+    private volatile long lines;
+    private volatile long skippedStops;
+    private volatile long malformedLines;
 
     public BusStream(String url) {
-        super();
         this.url = url;
+        // Recorded data is served as a sequence of files, one per poll
+        this.recorded = url.contains("localhost");
     }
 
     public void run() {
-        // String url =
-        // "http://countdown.api.tfl.gov.uk/interfaces/ura/instant_V1?LineID=1,2&ReturnList=StopID,LineID,VehicleID,EstimatedTime";
+        String pollUrl = url;
+        if (recorded) {
+            pollUrl += recordedFileIndex + ".txt";
+            recordedFileIndex = (recordedFileIndex + 1) % RECORDED_FILES;
+        }
         try {
-            long time = System.currentTimeMillis();
-            URL obj = new URL(url);
-            HttpURLConnection con = (HttpURLConnection) obj.openConnection();
-
-            // optional default is GET
-            con.setRequestMethod("GET");
-
-            int responseCode = con.getResponseCode();
-            System.out.println("\nSending 'GET' request to URL : " + url);
-            System.out.println("Response Code : " + responseCode);
+            poll(pollUrl);
+        } catch (Exception e) {
+            // Keep polling, an exception would cancel the scheduled poller
+            failedPolls++;
+            System.out.println("Error in polling " + pollUrl + ": " + e);
+        }
+    }
 
-            BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-            String inputLine;
-            inputLine = in.readLine();
-            inputLine = inputLine.replaceAll("[\\[\\]\"]", "");
-            String[] arr = inputLine.split(",");
+    private void poll(String pollUrl) throws IOException {
+        long time = System.currentTimeMillis();
+        HttpURLConnection con = (HttpURLConnection) new URL(pollUrl).openConnection();
+        con.setRequestMethod("GET");
+        con.setConnectTimeout(CONNECT_TIMEOUT);
+        con.setReadTimeout(READ_TIMEOUT);
 
-            TflStream.lastTime = Long.parseLong(arr[2]) + TflStream.timeOffset;
+        int responseCode = con.getResponseCode();
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+            failedPolls++;
+            InputStream error = con.getErrorStream();
+            if (error != null) {
+                drain(error);
+            }
+            System.out.println("Response Code : " + responseCode + " for " + pollUrl);
+            return;
+        }
 
+        int pollLines = 0;
+        int pollSkippedStops = 0;
+        int pollMalformedLines = 0;
+        long parseTime = 0;
+        ArrayList<Bus> newBusses = new ArrayList<Bus>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream(), "UTF-8"), 1 << 16);
+        try {
+            String inputLine = in.readLine();
+            if (inputLine == null) {
+                throw new IOException("Empty response");
+            }
+            if (tokenizer.tokenize(inputLine) < 3) {
+                throw new IOException("Invalid response header: " + inputLine);
+            }
+            TflStream.lastTime = tokenizer.getLong(2) + TflStream.timeOffset;
 
-            ArrayList<Bus> newBusses = new ArrayList<Bus>();
             while ((inputLine = in.readLine()) != null) {
-                inputLine = inputLine.replaceAll("[\\[\\]\"]", "");
-                arr = inputLine.split(",");
-
-                Bus bus = TflStream.busses.get(arr[3]);
-                BusStop bs = TflStream.map.get(arr[1]);
-                if(bs == null) {
-                    continue;
+                long parseStart = System.nanoTime();
+                try {
+                    pollLines++;
+                    // [1,StopID,LineID,VehicleID,EstimatedTime]
+                    if (tokenizer.tokenize(inputLine) < 5) {
+                        pollMalformedLines++;
+                        continue;
+                    }
+                    BusStop bs = TflStream.map.get(tokenizer.getString(1));
+                    if (bs == null) {
+                        pollSkippedStops++;
+                        continue;
+                    }
+                    long estimatedTime;
+                    try {
+                        estimatedTime = tokenizer.getLong(4);
+                    } catch (NumberFormatException e) {
+                        pollMalformedLines++;
+                        continue;
+                    }
+                    String vehicleId = tokenizer.getString(3);
+                    Bus bus = TflStream.busses.get(vehicleId);
+                    if (bus == null) {
+                        bus = new Bus(vehicleId);
+                        TflStream.busses.put(vehicleId, bus);
+                        newBusses.add(bus);
+                    }
+                    bus.setData(bs, estimatedTime);
+                } finally {
+                    // Skipped and malformed lines are parsed too
+                    parseTime += System.nanoTime() - parseStart;
                 }
-                if (bus == null) {
-                    bus = new Bus(arr[3]);
-                    TflStream.busses.put(arr[3], bus);
-                    newBusses.add(bus);
-                }
-                bus.setData(bs, Long.parseLong(arr[4]));
-            }
-            for (Bus newBus : newBusses) {
-                newBus.setNew();
             }
-
+        } finally {
             in.close();
-            System.out.println("Added busses to a hashmap. " + (System.currentTimeMillis() - time) + " millis");
-        } catch (Exception e) {
+        }
+        for (Bus newBus : newBusses) {
+            newBus.setNew();
+        }
 
+        polls++;
+        lines += pollLines;
+        skippedStops += pollSkippedStops;
+        malformedLines += pollMalformedLines;
+        System.out.println("Polled " + pollUrl + ": " + pollLines + " lines, " + pollSkippedStops
+                + " skipped stops, " + pollMalformedLines + " malformed lines, " + newBusses.size() + " new busses, "
+                + "parse " + (parseTime / 1000000) + " ms, total " + (System.currentTimeMillis() - time) + " ms");
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        try {
+            byte[] buffer = new byte[4096];
+            while (in.read(buffer) != -1) {
+                // Read to the end so that the connection can be reused
+            }
+        } finally {
+            in.close();
         }
     }
+
+    /**
+     * @return number of successful polls
+     */
+    public long getPolls() {
+        return polls;
+    }
+
+    public long getFailedPolls() {
+        return failedPolls;
+    }
+
+    /**
+     * @return number of prediction lines read by all polls
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * @return number of prediction lines skipped since their stop is not one of the known stops
+     */
+    public long getSkippedStops() {
+        return skippedStops;
+    }
+
+    public long getMalformedLines() {
+        return malformedLines;
+    }
 }
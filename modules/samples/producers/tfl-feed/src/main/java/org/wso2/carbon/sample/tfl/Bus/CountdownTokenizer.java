@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.sample.tfl.Bus;
+
+/**
+ * Splits a line of the TfL countdown API, ex: [1,"490000077E","61","LX58CFG",1423741234000], into its fields
+ * without regular expressions or intermediate strings. A tokenizer is reused for all the lines of a response and is
+ * not thread safe.
+ */
+public class CountdownTokenizer {
+
+    private String line;
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int fieldCount;
+
+    /**
+     * @return number of fields of the given line
+     */
+    public int tokenize(String line) {
+        this.line = line;
+        fieldCount = 0;
+        int length = line.length();
+        int i = skipSpaces(0);
+        if (i < length && line.charAt(i) == '[') {
+            i++;
+        }
+        while (i < length) {
+            i = skipSpaces(i);
+            int start;
+            int end;
+            if (i < length && line.charAt(i) == '"') {
+                start = ++i;
+                while (i < length && line.charAt(i) != '"') {
+                    if (line.charAt(i) == '\\') {
+                        i++;
+                    }
+                    i++;
+                }
+                end = Math.min(i, length);
+                // Skip the closing quote and anything up to the separator
+                while (i < length && line.charAt(i) != ',' && line.charAt(i) != ']') {
+                    i++;
+                }
+            } else {
+                start = i;
+                while (i < length && line.charAt(i) != ',' && line.charAt(i) != ']') {
+                    i++;
+                }
+                end = i;
+                while (end > start && line.charAt(end - 1) == ' ') {
+                    end--;
+                }
+            }
+            addField(start, end);
+            if (i >= length || line.charAt(i) == ']') {
+                break;
+            }
+            // Skip the comma
+            i++;
+        }
+        return fieldCount;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    public String getString(int field) {
+        checkField(field);
+        return line.substring(starts[field], ends[field]);
+    }
+
+    /**
+     * @return the field parsed as a decimal long, read from the line in place
+     */
+    public long getLong(int field) {
+        checkField(field);
+        int i = starts[field];
+        int end = ends[field];
+        boolean negative = i < end && line.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            throw new NumberFormatException("Invalid long field " + field + " in: " + line);
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Invalid long field " + field + " in: " + line);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    public double getDouble(int field) {
+        return Double.parseDouble(getString(field));
+    }
+
+    private int skipSpaces(int i) {
+        while (i < line.length() && line.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == starts.length) {
+            int[] newStarts = new int[fieldCount * 2];
+            int[] newEnds = new int[fieldCount * 2];
+            System.arraycopy(starts, 0, newStarts, 0, fieldCount);
+            System.arraycopy(ends, 0, newEnds, 0, fieldCount);
+            starts = newStarts;
+            ends = newEnds;
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        fieldCount++;
+    }
+
+    private void checkField(int field) {
+        if (field >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + field + " not found in: " + line);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package org.wso2.carbon.sample.tfl;
 
 import org.wso2.carbon.sample.tfl.Bus.BusStream;
+import org.wso2.carbon.sample.tfl.Bus.CountdownTokenizer;
 import org.wso2.carbon.sample.tfl.BusStop.BusStop;
 import org.wso2.carbon.sample.tfl.Traffic.DisruptionStream;
 
@@ -28,6 +29,9 @@ import java.net.MalformedURLException;
 import java.net.ProtocolException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class GetData extends Thread {
 
@@ -39,6 +43,8 @@ public class GetData extends Thread {
     public static final String LiveBusStopURL = "http://countdown.api.tfl.gov.uk/interfaces/ura/instant_V1?LineID=61,62,63,64,65,66&ReturnList=StopID,Latitude,Longitude";
     public static final String LiveBusURL = "http://countdown.api.tfl.gov.uk/interfaces/ura/instant_V1?LineID=61,62,63,64,65,66&ReturnList=StopID,LineID,VehicleID,EstimatedTime";
 
+    public static final long BusPollInterval = 30000;
+
     public static String TrafficURL;
     public static String BusURL;
     public static String BusStopURL;
@@ -57,7 +63,20 @@ public class GetData extends Thread {
             TrafficURL = LiveTrafficURL;
             BusURL = LiveBusURL;
             BusStopURL = LiveBusStopURL;
+            // Bus lines to follow, ex: -Dtfl.busLines=24,73 or -Dtfl.busLines=all
+            String busLines = System.getProperty("tfl.busLines");
+            if (busLines != null && !busLines.trim().isEmpty()) {
+                BusURL = setBusLines(BusURL, busLines.trim());
+                BusStopURL = setBusLines(BusStopURL, busLines.trim());
+            }
+        }
+    }
+
+    private static String setBusLines(String url, String busLines) {
+        if ("all".equals(busLines)) {
+            return url.replace("LineID=61,62,63,64,65,66&", "");
         }
+        return url.replace("61,62,63,64,65,66", busLines);
     }
 
     public void run() {
@@ -73,39 +92,23 @@ public class GetData extends Thread {
     }
 
     private void getBus() {
-        BusStream b;
-        long time = System.currentTimeMillis();
-        int i = 0;
-        while (true){
-            //System.out.println("Getting Data");
-            String url = BusURL;
-            if (BusURL.contains("localhost"))
-                url += i + ".txt";
-            System.out.println(url);
-            b = new BusStream(url);
-            b.start();
-            try {
-                time += 30000;
-                Thread.sleep(time - System.currentTimeMillis());
-            } catch (InterruptedException e) {
-            }
-
-            i = (i+1) % 100;
-        }
-
+        // A single poller thread, so that a poll taking longer than the interval delays the next one instead of
+        // running alongside it
+        ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor();
+        poller.scheduleAtFixedRate(new BusStream(BusURL), 0, BusPollInterval, TimeUnit.MILLISECONDS);
     }
 
     private static void getDisruptions() {
-        DisruptionStream ds;
+        // One stream is polled on this thread, so that its parser is reused and slow polls do not pile up
+        DisruptionStream ds = new DisruptionStream(TrafficURL);
         long time = System.currentTimeMillis();
 
         while(true){
-            ds = new DisruptionStream(TrafficURL);
             //System.out.println("Getting Disruption Data ");
-            ds.start();
+            ds.run();
             try{
                 time += 300000;
-                Thread.sleep(time - System.currentTimeMillis());
+                Thread.sleep(Math.max(0, time - System.currentTimeMillis()));
             }catch(InterruptedException e){
             }
         }
@@ -114,7 +117,7 @@ public class GetData extends Thread {
 
     private static void getStops() {
         try {
-            String[] arr;
+            CountdownTokenizer tokenizer = new CountdownTokenizer();
 
             URL obj = new URL(BusStopURL);
             HttpURLConnection con = (HttpURLConnection) obj.openConnection();
@@ -132,22 +135,21 @@ public class GetData extends Thread {
             long time = System.currentTimeMillis();
             //System.out.println(time);
             inputLine = in.readLine();
-            inputLine = inputLine.replaceAll("[\\[\\]\"]", "");
-            arr = inputLine.split(",");
-            TflStream.timeOffset = time - Long.parseLong(arr[2]);
+            tokenizer.tokenize(inputLine);
+            TflStream.timeOffset = time - tokenizer.getLong(2);
 
 
             ArrayList<String> stopJsonList = new ArrayList<String>();
 
             while ((inputLine = in.readLine()) != null) {
-                inputLine = inputLine.replaceAll("[\\[\\]\"]", "");
-                arr = inputLine.split(",");
-                //System.out.println(Double.parseDouble(arr[3]));
-                //System.out.println(Double.parseDouble(arr[2]));
-                BusStop temp = new BusStop(arr[1], Double.parseDouble(arr[2]),
-                        Double.parseDouble(arr[3]));
+                // [0,StopID,Latitude,Longitude]
+                if (tokenizer.tokenize(inputLine) < 4) {
+                    continue;
+                }
+                String stopId = tokenizer.getString(1);
+                BusStop temp = new BusStop(stopId, tokenizer.getDouble(2), tokenizer.getDouble(3));
                 //System.out.println(temp);
-                TflStream.map.put(arr[1], temp);
+                TflStream.map.put(stopId, temp);
                 stopJsonList.add(temp.toString());
             }
             TflStream.send(stopJsonList, TflStream.endPointBus);
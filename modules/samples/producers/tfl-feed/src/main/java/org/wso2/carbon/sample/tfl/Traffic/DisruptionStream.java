@@ -38,6 +38,7 @@ import java.util.ArrayList;
  */
 public class DisruptionStream extends Thread {
     String TrafficURL;
+    private SAXParser parser;
 
     public DisruptionStream(String url) {
         super();
@@ -62,13 +63,19 @@ public class DisruptionStream extends Thread {
             try {
                 double t = System.currentTimeMillis();
                 //System.out.println("TrafficStream");
-                // Get SAX Parser Factory
-                SAXParserFactory factory = SAXParserFactory.newInstance();
-                // Turn on validation, and turn off namespaces
-                factory.setValidating(true);
-                factory.setNamespaceAware(false);
-                SAXParser parser = factory.newSAXParser();
-                parser.parse(con.getInputStream(), new TrafficXMLHandler(disruptionsList));
+                if (parser == null) {
+                    // Get SAX Parser Factory
+                    SAXParserFactory factory = SAXParserFactory.newInstance();
+                    // Turn on validation, and turn off namespaces
+                    factory.setValidating(true);
+                    factory.setNamespaceAware(false);
+                    parser = factory.newSAXParser();
+                }
+                try {
+                    parser.parse(con.getInputStream(), new TrafficXMLHandler(disruptionsList, "Active"));
+                } finally {
+                    parser.reset();
+                }
                 System.out.println("Number of Disruptions added to the list: " + disruptionsList.size());
                 System.out.println("Time taken for parsing: " + (System.currentTimeMillis() - t));
             } catch (ParserConfigurationException e) {
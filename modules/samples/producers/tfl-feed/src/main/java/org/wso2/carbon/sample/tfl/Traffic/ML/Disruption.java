@@ -29,6 +29,9 @@ import java.util.ArrayList;
 
 /**
  * Created by sanka on 2/6/15.
+ * <p/>
+ * The coordinates are kept as read from the feed and the geometry is only built when first asked for, so that
+ * disruptions filtered out by their state cost no geometry work.
  */
 public class Disruption {
     String id;
@@ -39,11 +42,14 @@ public class Disruption {
     String coordinates = null;
     static GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory();
 
-    Geometry geometry;
+    private Geometry geometry;
+    private boolean geometryBuilt = false;
     public boolean isMultiPolygon = true;
     final static double tolerance = 0.0005;
     ArrayList<Coordinate> coords = new ArrayList<Coordinate>();
     ArrayList<Polygon> polygon = new ArrayList<Polygon>();
+    private ArrayList<String> laneCoords = new ArrayList<String>();
+    private String polyCoords;
 
     public Disruption() {
 
@@ -58,6 +64,10 @@ public class Disruption {
 
     public void setCoordsPoly(String coords) {
         isMultiPolygon = false;
+        polyCoords = coords;
+    }
+
+    private void buildPoly(String coords) {
         String[] temp = coords.split(",");
         StringBuilder sb = new StringBuilder("{ \n 'type': 'Polygon', \n 'coordinates': [[");
         for (int i = 0; i < temp.length - 1; i += 2) {
@@ -92,6 +102,10 @@ public class Disruption {
     }
 
     public void addCoordsLane(String co) {
+        laneCoords.add(co);
+    }
+
+    private void buildLane(String co) {
         String[] temp = co.split(",");
         if (temp.length != 4) {
             System.out.println(co);
@@ -128,13 +142,30 @@ public class Disruption {
             System.out.println("NFE " + co);
         }
     }
-    public void end() {
-        if (isMultiPolygon) {
-            Polygon[] c = new Polygon[polygon.size()];
-            c = polygon.toArray(c);
-            geometry = geometryFactory.createMultiPolygon(c);
+    /**
+     * @return geometry of the disruption, or null if it could not be built from the coordinates of the feed
+     */
+    public Geometry getGeometry() {
+        if (!geometryBuilt) {
+            geometryBuilt = true;
+            try {
+                if (isMultiPolygon) {
+                    for (String co : laneCoords) {
+                        buildLane(co);
+                    }
+                    Polygon[] c = new Polygon[polygon.size()];
+                    c = polygon.toArray(c);
+                    geometry = geometryFactory.createMultiPolygon(c);
+                } else {
+                    buildPoly(polyCoords);
+                }
+            } catch (Exception e) {
+                geometry = null;
+            }
+            laneCoords = null;
+            polygon = null;
         }
-
+        return geometry;
     }/*
     public void end() {
         if (isMultiPolygon) {
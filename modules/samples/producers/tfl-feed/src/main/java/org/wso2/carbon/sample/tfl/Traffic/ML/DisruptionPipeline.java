@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.sample.tfl.Traffic.ML;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Parses the recorded feed files of a sequence of time slots on an executor, ahead of the consumer which takes the
+ * disruptions of the slots in order with {@link #next()}. At most readAhead slots are parsed or waiting to be taken
+ * at any time. Each parsing thread reuses its own SAX parser.
+ */
+public class DisruptionPipeline {
+
+    private static final ThreadLocal<SAXParser> parsers = new ThreadLocal<SAXParser>() {
+        @Override
+        protected SAXParser initialValue() {
+            try {
+                // Get SAX Parser Factory
+                SAXParserFactory factory = SAXParserFactory.newInstance();
+                // Turn on validation, and turn off namespaces
+                factory.setValidating(false);
+                factory.setNamespaceAware(false);
+                return factory.newSAXParser();
+            } catch (Exception e) {
+                throw new RuntimeException("Error in creating the SAX parser", e);
+            }
+        }
+    };
+
+    private final Iterator<File[]> slots;
+    private final String stateFilter;
+    private final ExecutorService executor;
+    private final BlockingQueue<Future<List<Disruption>>> parsed;
+
+    /**
+     * @param slots       candidate feed files of each time slot, the first one which can be parsed being used
+     * @param stateFilter only the disruptions whose state contains it are kept, or null to keep all
+     * @param executor    executor to parse the files on
+     * @param readAhead   maximum number of slots parsed ahead of the consumer
+     */
+    public DisruptionPipeline(List<File[]> slots, String stateFilter, ExecutorService executor, int readAhead) {
+        if (readAhead < 1) {
+            throw new IllegalArgumentException("Read ahead should be positive, but found " + readAhead);
+        }
+        this.slots = slots.iterator();
+        this.stateFilter = stateFilter;
+        this.executor = executor;
+        this.parsed = new ArrayBlockingQueue<Future<List<Disruption>>>(readAhead);
+        while (parsed.remainingCapacity() > 0 && submitNext()) {
+            // Fill the read ahead window
+        }
+    }
+
+    public boolean hasNext() {
+        return !parsed.isEmpty();
+    }
+
+    /**
+     * @return disruptions of the next time slot, waiting for them to be parsed if needed
+     */
+    public List<Disruption> next() throws InterruptedException, ExecutionException {
+        Future<List<Disruption>> next = parsed.remove();
+        submitNext();
+        return next.get();
+    }
+
+    /**
+     * Cancels the slots not taken yet.
+     */
+    public void close() {
+        for (Future<List<Disruption>> future : parsed) {
+            future.cancel(false);
+        }
+        parsed.clear();
+    }
+
+    private boolean submitNext() {
+        if (!slots.hasNext()) {
+            return false;
+        }
+        final File[] files = slots.next();
+        parsed.add(executor.submit(new Callable<List<Disruption>>() {
+            @Override
+            public List<Disruption> call() {
+                return parse(files, stateFilter);
+            }
+        }));
+        return true;
+    }
+
+    /**
+     * @return disruptions of the first of the given feed files which exists and can be parsed, or an empty list
+     */
+    public static List<Disruption> parse(File[] files, String stateFilter) {
+        ArrayList<Disruption> disruptionsList = new ArrayList<Disruption>();
+        SAXParser parser = parsers.get();
+        for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            try {
+                InputStream in = new BufferedInputStream(new FileInputStream(file));
+                try {
+                    parser.parse(in, new TrafficXMLHandler(disruptionsList, stateFilter));
+                } finally {
+                    in.close();
+                }
+                break;
+            } catch (Exception e) {
+                System.out.println("Error in parsing " + file + ": " + e.getMessage());
+                disruptionsList.clear();
+            } finally {
+                parser.reset();
+            }
+        }
+        return disruptionsList;
+    }
+}
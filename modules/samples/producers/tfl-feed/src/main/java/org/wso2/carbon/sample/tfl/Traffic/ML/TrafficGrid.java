@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.sample.tfl.Traffic.ML;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Grid of rectangular cells over an area, cell (i, j) being the i-th cell along the longitude and the j-th along the
+ * latitude. Cells are created on demand so that fine grids over large areas need not be held in memory.
+ */
+public class TrafficGrid {
+
+    private static final double METRES_PER_DEGREE = 111320;
+
+    private final GeometryFactory geometryFactory;
+    private final double longitudeStart;
+    private final double latitudeStart;
+    private final double longitudeUnit;
+    private final double latitudeUnit;
+    private final int rows;
+    private final int cols;
+    private final Geometry area;
+
+    public TrafficGrid(GeometryFactory geometryFactory, double longitudeStart, double latitudeStart,
+                       double longitudeEnd, double latitudeEnd, double longitudeUnit, double latitudeUnit) {
+        if (longitudeUnit <= 0 || latitudeUnit <= 0) {
+            throw new IllegalArgumentException("Grid cell size should be positive, but found " + longitudeUnit + " x "
+                    + latitudeUnit);
+        }
+        this.geometryFactory = geometryFactory;
+        this.longitudeStart = longitudeStart;
+        this.latitudeStart = latitudeStart;
+        this.longitudeUnit = longitudeUnit;
+        this.latitudeUnit = latitudeUnit;
+        this.rows = (int) Math.round((longitudeEnd - longitudeStart) / longitudeUnit);
+        this.cols = (int) Math.round((latitudeEnd - latitudeStart) / latitudeUnit);
+        this.area = geometryFactory.toGeometry(new Envelope(longitudeStart, longitudeEnd, latitudeStart, latitudeEnd));
+    }
+
+    /**
+     * @return a grid of cells of the given size in metres, measured at the middle latitude of the area
+     */
+    public static TrafficGrid withCellMetres(GeometryFactory geometryFactory, double longitudeStart,
+                                             double latitudeStart, double longitudeEnd, double latitudeEnd,
+                                             double cellMetres) {
+        double latitudeUnit = cellMetres / METRES_PER_DEGREE;
+        double longitudeUnit = latitudeUnit / Math.cos(Math.toRadians((latitudeStart + latitudeEnd) / 2));
+        return new TrafficGrid(geometryFactory, longitudeStart, latitudeStart, longitudeEnd, latitudeEnd,
+                longitudeUnit, latitudeUnit);
+    }
+
+    /**
+     * @return number of cells along the longitude
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return number of cells along the latitude
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * @return polygon covering the whole grid
+     */
+    public Geometry getArea() {
+        return area;
+    }
+
+    public Envelope getCellEnvelope(int i, int j) {
+        double longitude = longitudeStart + i * longitudeUnit;
+        double latitude = latitudeStart + j * latitudeUnit;
+        return new Envelope(longitude, longitude + longitudeUnit, latitude, latitude + latitudeUnit);
+    }
+
+    public Geometry getCell(int i, int j) {
+        double longitude = longitudeStart + i * longitudeUnit;
+        double latitude = latitudeStart + j * latitudeUnit;
+        Coordinate[] coords = new Coordinate[5];
+        coords[0] = new Coordinate(longitude, latitude);
+        coords[1] = new Coordinate(longitude + longitudeUnit, latitude);
+        coords[2] = new Coordinate(longitude + longitudeUnit, latitude + latitudeUnit);
+        coords[3] = new Coordinate(longitude, latitude + latitudeUnit);
+        coords[4] = new Coordinate(longitude, latitude);
+        return geometryFactory.createPolygon(geometryFactory.createLinearRing(coords), null);
+    }
+
+    @Override
+    public String toString() {
+        return rows + " x " + cols + " cells of " + longitudeUnit + " x " + latitudeUnit + " degrees from ("
+                + longitudeStart + ", " + latitudeStart + ")";
+    }
+}
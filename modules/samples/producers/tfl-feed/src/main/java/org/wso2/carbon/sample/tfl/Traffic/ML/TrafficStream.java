@@ -20,141 +20,258 @@ package org.wso2.carbon.sample.tfl.Traffic.ML;
  * Created by sanka on 2/6/15.
  */
 
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.geom.GeometryFactory;
-import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
 import org.geotools.geometry.jts.JTSFactoryFinder;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.FactoryConfigurationError;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+/**
+ * Builds the traffic dataset of the disruptions recorded from the TfL feed: one line per grid cell and time slot,
+ * telling whether an active disruption intersected the cell. Settings are given as system properties prefixed with
+ * "tfl." (ex: -Dtfl.dataDir=/data/tfl -Dtfl.cellMetres=50), see {@link #main(String[])}.
+ * <p/>
+ * Days are processed in parallel, each into its own part file which are joined in order at the end. For each time
+ * slot the active disruptions are indexed in an STRtree, so that a cell is only tested against the disruptions whose
+ * envelopes it touches. The feed files of each day are parsed ahead by a {@link DisruptionPipeline}.
+ */
 public class TrafficStream {
 
-    private static GeometryFactory geometryFactory;
+    public static final String PROPERTY_PREFIX = "tfl.";
 
+    private final File dataDir;
+    private final File output;
+    private final String month;
+    private final int startDay;
+    private final int endDay;
+    private final int period;
+    private final TrafficGrid grid;
+    private ExecutorService parseExecutor;
+    private int readAhead = 8;
+    private final long startTime = System.currentTimeMillis();
+
+    public TrafficStream(File dataDir, File output, String month, int startDay, int endDay, int period,
+                         TrafficGrid grid) {
+        this.dataDir = dataDir;
+        this.output = output;
+        this.month = month;
+        this.startDay = startDay;
+        this.endDay = endDay;
+        this.period = period;
+        this.grid = grid;
+    }
+
+    /**
+     * Supported system properties, all optional:
+     * dataDir - directory holding a directory of recorded feed files per day, ex: 2015-02-03/2015-02-03-10.05.txt
+     * output - the dataset file to write
+     * month - year and month of the recorded days, ex: 2015-02
+     * startDay, endDay - first and last day of the month to process
+     * period - length of a time slot in minutes
+     * bounds - longitudeStart,latitudeStart,longitudeEnd,latitudeEnd of the grid
+     * cellMetres - size of a grid cell in metres, or else
+     * unit - size of a grid cell in degrees
+     * threads - number of days processed in parallel
+     * parseThreads - number of threads parsing feed files
+     * readAhead - number of time slots of a day parsed ahead of the grid
+     */
     public static void main(String[] args) {
+        String[] bounds = getString("bounds", "-0.095,51.496,-0.003,51.524").split(",");
+        if (bounds.length != 4) {
+            throw new IllegalArgumentException("Grid bounds should be longitudeStart,latitudeStart,longitudeEnd," +
+                    "latitudeEnd, but found " + getString("bounds", null));
+        }
+        double longitudeStart = Double.parseDouble(bounds[0].trim());
+        double latitudeStart = Double.parseDouble(bounds[1].trim());
+        double longitudeEnd = Double.parseDouble(bounds[2].trim());
+        double latitudeEnd = Double.parseDouble(bounds[3].trim());
+        TrafficGrid grid;
+        String cellMetres = getString("cellMetres", null);
+        if (cellMetres != null) {
+            grid = TrafficGrid.withCellMetres(JTSFactoryFinder.getGeometryFactory(), longitudeStart, latitudeStart,
+                    longitudeEnd, latitudeEnd, Double.parseDouble(cellMetres));
+        } else {
+            double unit = Double.parseDouble(getString("unit", "0.005"));
+            grid = new TrafficGrid(JTSFactoryFinder.getGeometryFactory(), longitudeStart, latitudeStart,
+                    longitudeEnd, latitudeEnd, unit, unit);
+        }
+        TrafficStream trafficStream = new TrafficStream(new File(getString("dataDir", "data")),
+                new File(getString("output", "data.csv")), getString("month", "2015-02"),
+                Integer.parseInt(getString("startDay", "3")), Integer.parseInt(getString("endDay", "15")),
+                Integer.parseInt(getString("period", "60")), grid);
+        int threads = Integer.parseInt(getString("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        System.out.println("Grid: " + grid + ", " + ((long) grid.getRows() * grid.getCols()) + " cells");
+        trafficStream.setReadAhead(Integer.parseInt(getString("readAhead", "8")));
+        int parseThreads = Integer.parseInt(getString("parseThreads", String.valueOf(threads)));
         try {
-            //BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(System.out));
-            BufferedWriter bw = new BufferedWriter(new FileWriter(new File("/home/isuru/data.csv")));
-            bw.write("day,hour,latitude,longitude,traffic\n");
-            geometryFactory = JTSFactoryFinder.getGeometryFactory();
-            //double longitudeStart = -0.35, longitudeEnd = 0.25;
-            //double latitudeStart = 51.3, latitudeEnd = 51.6;
-            double longitudeStart = -0.095, longitudeEnd = -0.003;
-            double latitudeStart = 51.496, latitudeEnd = 51.524;
-
-
-            double unit = 0.005;
-            double longitude, latitude;
-
-            int rows = (int) Math.round((longitudeEnd - longitudeStart) / unit);
-            int cols = (int) Math.round((latitudeEnd - latitudeStart) / unit);
-            System.out.println(rows * cols);
-
-            Geometry[][] geometries = new Geometry[rows][cols];
-            Coordinate[] areaC = new Coordinate[5];
-
-            areaC[0] = new Coordinate(longitudeStart, latitudeStart);
-            areaC[1] = new Coordinate(longitudeStart, latitudeEnd);
-            areaC[2] = new Coordinate(longitudeEnd, latitudeEnd);
-            areaC[3] = new Coordinate(longitudeEnd, latitudeStart);
-            areaC[4] = new Coordinate(longitudeStart, latitudeStart);
-            Geometry area = geometryFactory.createPolygon(geometryFactory.createLinearRing(areaC), null);
-
-
-            for (int i = 0; i < rows; i++) {
-                for (int j = 0; j < cols; j++) {
-                    longitude = longitudeStart + i * unit;
-                    latitude = latitudeStart + j * unit;
-                    Coordinate[] coords = new Coordinate[5];
-                    coords[0] = new Coordinate(longitude, latitude);
-                    coords[1] = new Coordinate(longitude + unit, latitude);
-                    coords[2] = new Coordinate(longitude + unit, latitude + unit);
-                    coords[3] = new Coordinate(longitude, latitude + unit);
-                    coords[4] = new Coordinate(longitude, latitude);
-                    geometries[i][j] = geometryFactory.createPolygon(geometryFactory.createLinearRing(coords), null);
-                    System.out.println(geometries[i][j]);
-                    //geometries[i][j] = geometryFactory.createPoint(new Coordinate(longitude, latitude));
+            trafficStream.run(threads, parseThreads);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void setReadAhead(int readAhead) {
+        this.readAhead = readAhead;
+    }
+
+    public void run(int threads, int parseThreads) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        parseExecutor = Executors.newFixedThreadPool(parseThreads);
+        try {
+            pool.invoke(new DaysTask(startDay, endDay + 1));
+        } finally {
+            pool.shutdown();
+            parseExecutor.shutdown();
+        }
+        BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(output));
+        try {
+            out.write("day,hour,latitude,longitude,traffic\n".getBytes("UTF-8"));
+            byte[] buffer = new byte[1 << 16];
+            for (int day = startDay; day <= endDay; day++) {
+                File part = getPartFile(day);
+                InputStream in = new FileInputStream(part);
+                try {
+                    int length;
+                    while ((length = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, length);
+                    }
+                } finally {
+                    in.close();
+                }
+                if (!part.delete()) {
+                    System.out.println("Could not delete " + part);
                 }
             }
-            int period = 60;
-            long time = System.currentTimeMillis();
-            for (int day = 3; day < 16; day++) {
-                //if(day==7||day==8)
-                //    continue;
-                for (int hour = 0; hour < 24; hour++) {
-                    for (int minute = 0; minute < 60; minute += period) {
-                        ArrayList<Disruption> disruptionsList = new ArrayList<Disruption>();
-                        // Get SAX Parser Factory
-                        SAXParserFactory factory = SAXParserFactory.newInstance();
-                        // Turn on validation, and turn off namespaces
-                        factory.setValidating(false);
-                        factory.setNamespaceAware(false);
-                        SAXParser parser = factory.newSAXParser();
-                        for (int i = 0; i < 4; i++) {
-                            String name = "2015-02-" + convert(day) + "-" + convert(hour) + "." + convert(minute + i * 5);
-                            String file = "/home/isuru/data/" + "2015-02-" + convert(day) + "/" + name + ".txt";
-                            //System.out.println(file);
-                            InputStream in = new FileInputStream(new File(file));
-
-                            try {
-                                parser.parse(in, new TrafficXMLHandler(disruptionsList));
-                                break;
-                            } catch (Exception e) {
-                                System.out.println("Error in parsing");
-                                disruptionsList.clear();
-                            }
-                        }
-                        ArrayList<Disruption> disruptionsWithin = new ArrayList<Disruption>();
-                        for (Disruption d : disruptionsList) {
-                            if (d.state.contains("Active") && d.geometry.intersects(area)) {
-                                disruptionsWithin.add(d);
-                            }
-                        }
+        } finally {
+            out.close();
+        }
+        System.out.println("Wrote " + output + " in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
 
-                        boolean found;
-                        System.out.println((day - 3) + "," + ((hour * 60 + minute)/period) +
-                                "," + disruptionsWithin.size() + "," + (System.currentTimeMillis() - time));
-                        for (int i = 0; i < rows; i++) {
-                            for (int j = 0; j < cols; j++) {
-                                found = false;
-                                for (Disruption d : disruptionsWithin) {
-                                    if (geometries[i][j].intersects(d.geometry)) {
-                                        bw.write((day - 3) + "," + ((hour * 60 + minute)/period) + "," + i+","+ j + ",1\n");
-                                        found = true;
-                                        break;
-                                    }
-                                }
-                                if (!found) {
-                                    bw.write((day - 3) + "," + ((hour * 60 + minute) / period) + "," + i + "," + j + ",0\n");
-                                }
-                            }
-                        }
+    private File getPartFile(int day) {
+        return new File(output.getPath() + "." + convert(day) + ".part");
+    }
 
+    private void processDay(int day) throws IOException {
+        Geometry area = grid.getArea();
+        int rows = grid.getRows();
+        int cols = grid.getCols();
+        List<File[]> slots = new ArrayList<File[]>();
+        for (int hour = 0; hour < 24; hour++) {
+            for (int minute = 0; minute < 60; minute += period) {
+                slots.add(getFeedFiles(day, hour, minute));
+            }
+        }
+        DisruptionPipeline pipeline = new DisruptionPipeline(slots, "Active", parseExecutor, readAhead);
+        BufferedWriter bw = new BufferedWriter(new FileWriter(getPartFile(day)), 1 << 16);
+        try {
+            for (int hour = 0; hour < 24; hour++) {
+                for (int minute = 0; minute < 60; minute += period) {
+                    STRtree index = new STRtree();
+                    int active = 0;
+                    for (Disruption d : pipeline.next()) {
+                        Geometry geometry = d.getGeometry();
+                        if (geometry != null && geometry.intersects(area)) {
+                            index.insert(geometry.getEnvelopeInternal(), PreparedGeometryFactory.prepare(geometry));
+                            active++;
+                        }
+                    }
+                    String slot = (day - startDay) + "," + ((hour * 60 + minute) / period) + ",";
+                    System.out.println(slot + active + "," + (System.currentTimeMillis() - startTime));
+                    for (int i = 0; i < rows; i++) {
+                        for (int j = 0; j < cols; j++) {
+                            bw.write(slot);
+                            bw.write(Integer.toString(i));
+                            bw.write(',');
+                            bw.write(Integer.toString(j));
+                            bw.write(active > 0 && isDisrupted(index, i, j) ? ",1\n" : ",0\n");
+                        }
                     }
                 }
             }
-            bw.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the disruptions of day " + day, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error in reading the disruptions of day " + day, e.getCause());
+        } finally {
+            pipeline.close();
             bw.close();
-        } catch (FileNotFoundException e) {
+        }
+    }
 
-        } catch (ParserConfigurationException e) {
-            e.printStackTrace();
-        } catch (SAXException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
+    private boolean isDisrupted(STRtree index, int i, int j) {
+        List candidates = index.query(grid.getCellEnvelope(i, j));
+        if (candidates.isEmpty()) {
+            return false;
         }
+        Geometry cell = grid.getCell(i, j);
+        for (Object candidate : candidates) {
+            if (((PreparedGeometry) candidate).intersects(cell)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the four feed files recorded within the time slot, in the order they are tried
+     */
+    private File[] getFeedFiles(int day, int hour, int minute) {
+        File[] files = new File[4];
+        for (int i = 0; i < 4; i++) {
+            String name = month + "-" + convert(day) + "-" + convert(hour) + "." + convert(minute + i * 5);
+            files[i] = new File(new File(dataDir, month + "-" + convert(day)), name + ".txt");
+        }
+        return files;
     }
 
     private static String convert(int d) {
         return (d + 100 + "").substring(1);
     }
-}
 
+    private static String getString(String name, String defaultValue) {
+        String value = System.getProperty(PROPERTY_PREFIX + name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    /**
+     * Splits a range of days in halves until each task is left with one day.
+     */
+    private class DaysTask extends RecursiveAction {
+        private final int fromDay;
+        private final int toDay;
+
+        private DaysTask(int fromDay, int toDay) {
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+        }
+
+        @Override
+        protected void compute() {
+            if (toDay - fromDay > 1) {
+                int middle = (fromDay + toDay) >>> 1;
+                invokeAll(new DaysTask(fromDay, middle), new DaysTask(middle, toDay));
+            } else if (toDay > fromDay) {
+                try {
+                    processDay(fromDay);
+                } catch (IOException e) {
+                    throw new RuntimeException("Error in writing the traffic of day " + fromDay, e);
+                }
+            }
+        }
+    }
+}
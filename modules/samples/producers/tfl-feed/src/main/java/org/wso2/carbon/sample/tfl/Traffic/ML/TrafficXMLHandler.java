@@ -33,11 +33,20 @@ public class TrafficXMLHandler extends DefaultHandler {
     private boolean inLine = false;
     private boolean inPoly = false;
     private boolean startElement = true;
+    private String stateFilter;
 
     public TrafficXMLHandler(ArrayList<Disruption> list) throws SAXException {
         this.list = list;
     }
 
+    /**
+     * @param stateFilter only the disruptions whose state contains it are added to the list
+     */
+    public TrafficXMLHandler(ArrayList<Disruption> list, String stateFilter) throws SAXException {
+        this.list = list;
+        this.stateFilter = stateFilter;
+    }
+
     public void startDocument() throws SAXException {
        // System.out.println("Started parsing");
     }
@@ -60,11 +69,8 @@ public class TrafficXMLHandler extends DefaultHandler {
     public void endElement(String uri, String localName,
                            String qName) throws SAXException {
         if (qName.equals("Disruption")) {
-            try {
-                current.end();
+            if (stateFilter == null || (current.state != null && current.state.contains(stateFilter))) {
                 list.add(current);
-            } catch (Exception e) {
-                //System.out.println(current.coords.size());
             }
         }
         String string = sb.toString();
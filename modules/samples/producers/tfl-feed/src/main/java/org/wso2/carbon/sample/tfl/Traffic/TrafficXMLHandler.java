@@ -33,11 +33,21 @@ public class TrafficXMLHandler extends DefaultHandler {
     private boolean inLine = false;
     private boolean inPoly = false;
     private boolean startElement = true;
+    private String stateFilter;
 
     public TrafficXMLHandler(ArrayList<Disruption> list) throws SAXException {
         this.list = list;
     }
 
+    /**
+     * @param stateFilter only the disruptions whose state contains it are added to the list, and have their
+     *                    geometry built
+     */
+    public TrafficXMLHandler(ArrayList<Disruption> list, String stateFilter) throws SAXException {
+        this.list = list;
+        this.stateFilter = stateFilter;
+    }
+
     public void startDocument() throws SAXException {
     }
 
@@ -47,7 +57,8 @@ public class TrafficXMLHandler extends DefaultHandler {
         startElement = true;
         if (qName.equals("Disruption")) {
             //System.out.println("disruption");
-            if (current != null) {
+            if (current != null && (stateFilter == null ||
+                    (current.state != null && current.state.contains(stateFilter)))) {
                 current.end();
                 list.add(current);
             }
@@ -22,11 +22,13 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.databridge.agent.AgentHolder;
 import org.wso2.carbon.databridge.agent.DataPublisher;
-import org.wso2.carbon.databridge.commons.Event;
+import org.wso2.carbon.sample.load.EventGenerator;
+import org.wso2.carbon.sample.load.LoadConfig;
+import org.wso2.carbon.sample.load.LoadRunner;
+import org.wso2.carbon.sample.load.SchemaEventGenerator;
+import org.wso2.carbon.sample.load.SensorEventGenerator;
 
-import java.text.DecimalFormat;
 import java.util.Arrays;
-import java.util.Random;
 
 public class Client {
     private static Log log = LogFactory.getLog(Client.class);
@@ -49,18 +51,26 @@ public class Client {
             String warmUpCount = args[7];
             String calcType = args[8];
 
+            LoadConfig config = LoadConfig.fromSystemProperties();
+            config.setEventCount(Long.parseLong(eventCount));
+            config.setWarmUpCount(Long.parseLong(warmUpCount));
+            if ("latency".equalsIgnoreCase(calcType)) {
+                // Send one event every elapsedCount milliseconds from a single thread
+                long sendInterval = Long.parseLong(elapsedCount);
+                config.setThreads(1);
+                config.setRate(sendInterval > 0 ? 1000d / sendInterval : 0);
+            }
+            if (LoadRunner.coordinate(config, Client.class, args)) {
+                return;
+            }
+
             //create data publisher
             DataPublisher dataPublisher = new DataPublisher(protocol, "tcp://" + host + ":" + port, null, username,
                     password);
 
-            //Publish event for a valid stream
-            if ("latency".equalsIgnoreCase(calcType)) {
-                publishEventsForLatency(dataPublisher, Long.parseLong(eventCount), Long.parseLong(elapsedCount),
-                        Long.parseLong(warmUpCount));
-            } else {
-                publishEvents(dataPublisher, Long.parseLong(eventCount), Long.parseLong(elapsedCount),
-                        Long.parseLong(warmUpCount));
-            }
+            EventGenerator generator = SchemaEventGenerator.fromSystemProperties(new SensorEventGenerator());
+            new LoadRunner(config, generator, new DataPublisherSenderFactory(dataPublisher, generator.getSchema(),
+                    DataPublisherSenderFactory.getPoolSize(config, protocol))).run(Client.class, args);
 
             dataPublisher.shutdownWithAgent();
         } catch (Throwable e) {
@@ -68,99 +78,4 @@ public class Client {
         }
     }
 
-    private static void publishEvents(DataPublisher dataPublisher, long eventCount, long elapsedCount,
-                                      long warmUpCount) {
-        long counter = 0;
-        Random randomGenerator = new Random();
-        String streamId = "org.wso2.event.sensor.stream:1.0.0";
-        long lastTime = System.currentTimeMillis();
-        DecimalFormat decimalFormat = new DecimalFormat("#");
-
-        while (counter < eventCount) {
-            boolean isPowerSaveEnabled = randomGenerator.nextBoolean();
-            int sensorId = randomGenerator.nextInt();
-            double longitude = randomGenerator.nextDouble();
-            double latitude = randomGenerator.nextDouble();
-            float humidity = randomGenerator.nextFloat();
-            double sensorValue = randomGenerator.nextDouble();
-            Event event = new Event(streamId, System.currentTimeMillis(),
-                    new Object[]{System.currentTimeMillis(), isPowerSaveEnabled, sensorId,
-                            "temperature-" + counter},
-                    new Object[]{longitude, latitude},
-                    new Object[]{humidity, sensorValue});
-
-            dataPublisher.publish(event);
-
-            if ((counter > warmUpCount) && ((counter + 1) % elapsedCount == 0)) {
-
-                long currentTime = System.currentTimeMillis();
-                long elapsedTime = currentTime - lastTime;
-                double throughputPerSecond = (((double) elapsedCount) / elapsedTime) * 1000;
-                lastTime = currentTime;
-                log.info("Sent " + elapsedCount + " sensor events in " + elapsedTime
-                        + " milliseconds with total throughput of " + decimalFormat.format(throughputPerSecond)
-                        + " events per second.");
-            }
-
-            counter++;
-        }
-    }
-
-    private static void sendWarmUpEvents(DataPublisher dataPublisher, long warmUpCount) {
-        long counter = 0;
-        Random randomGenerator = new Random();
-        String streamId = "org.wso2.event.sensor.stream:1.0.0";
-
-        while (counter < warmUpCount) {
-            boolean isPowerSaveEnabled = randomGenerator.nextBoolean();
-            int sensorId = randomGenerator.nextInt();
-            double longitude = randomGenerator.nextDouble();
-            double latitude = randomGenerator.nextDouble();
-            float humidity = randomGenerator.nextFloat();
-            double sensorValue = randomGenerator.nextDouble();
-            Event event = new Event(streamId, System.currentTimeMillis(),
-                    new Object[]{System.currentTimeMillis(), isPowerSaveEnabled, sensorId,
-                            "warmup-" + counter},
-                    new Object[]{longitude, latitude},
-                    new Object[]{humidity, sensorValue});
-
-            dataPublisher.publish(event);
-            counter++;
-        }
-    }
-
-    private static void publishEventsForLatency(DataPublisher dataPublisher, long eventCount, long elapsedCount,
-                                                long warmUpCount) {
-        sendWarmUpEvents(dataPublisher, warmUpCount);
-        long counter = 0;
-        Random randomGenerator = new Random();
-        String streamId = "org.wso2.event.sensor.stream:1.0.0";
-
-        while (counter < eventCount) {
-            boolean isPowerSaveEnabled = randomGenerator.nextBoolean();
-            int sensorId = randomGenerator.nextInt();
-            double longitude = randomGenerator.nextDouble();
-            double latitude = randomGenerator.nextDouble();
-            float humidity = randomGenerator.nextFloat();
-            double sensorValue = randomGenerator.nextDouble();
-            Event event = new Event(streamId, System.currentTimeMillis(),
-                    new Object[]{System.currentTimeMillis(), isPowerSaveEnabled, sensorId,
-                            "temperature-" + counter},
-                    new Object[]{longitude, latitude},
-                    new Object[]{humidity, sensorValue});
-
-            dataPublisher.publish(event);
-            log.info("Sent event " + counter + " at " + System.currentTimeMillis());
-
-            if (elapsedCount > 0) {
-                try {
-                    Thread.sleep(elapsedCount);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-            counter++;
-        }
-    }
-
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.performance;
+
+import org.wso2.carbon.databridge.agent.DataPublisher;
+import org.wso2.carbon.databridge.commons.Event;
+import org.wso2.carbon.sample.load.EventSchema;
+import org.wso2.carbon.sample.load.EventSender;
+import org.wso2.carbon.sample.load.EventSenderFactory;
+import org.wso2.carbon.sample.load.LoadConfig;
+import org.wso2.carbon.sample.load.LoadEvent;
+
+/**
+ * Sends events through a {@link DataPublisher} shared by all the publisher threads.
+ * <p/>
+ * Each publisher thread owns a ring of {@link Event} instances which are rewritten in place and reused, so sending
+ * does not allocate events or attribute arrays. The data publisher queues events and serialises them later, hence
+ * the ring must be larger than the agent's event queue plus one batch for an event to be sent before it is reused.
+ */
+public class DataPublisherSenderFactory implements EventSenderFactory {
+
+    /**
+     * Twice the largest queue size of the data-agent-config.xml shipped with this sample, for when the agent's queue
+     * size cannot be read.
+     */
+    public static final int DEFAULT_POOL_SIZE = 131072;
+
+    private final DataPublisher dataPublisher;
+    private final EventSchema schema;
+    private final int poolSize;
+
+    public DataPublisherSenderFactory(DataPublisher dataPublisher, EventSchema schema) {
+        this(dataPublisher, schema, DEFAULT_POOL_SIZE);
+    }
+
+    public DataPublisherSenderFactory(DataPublisher dataPublisher, EventSchema schema, int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Event pool size should be positive, but found " + poolSize);
+        }
+        this.dataPublisher = dataPublisher;
+        this.schema = schema;
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * @param protocol agent used by the data publisher, thrift or binary
+     * @return the event pool size of the configuration, or one more than the agent can queue if none is given
+     */
+    public static int getPoolSize(LoadConfig config, String protocol) throws Exception {
+        if (config.getEventPoolSize() > 0) {
+            return config.getEventPoolSize();
+        }
+        int queueCapacity = DataPublisherUtil.getAgentQueueCapacity(protocol);
+        return queueCapacity > 0 ? queueCapacity + 1 : DEFAULT_POOL_SIZE;
+    }
+
+    @Override
+    public EventSender createSender(int workerId) {
+        // The pool is created here so that it is allocated before the warm-up and the measurement begin
+        return new PooledEventSender();
+    }
+
+    @Override
+    public void measurementStarted() {
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    private class PooledEventSender implements EventSender {
+        private final Event[] pool = new Event[poolSize];
+        private int index = 0;
+
+        private PooledEventSender() {
+            for (int i = 0; i < poolSize; i++) {
+                pool[i] = new Event(schema.getStreamId(), 0, new Object[schema.getMetaDataNames().length],
+                        new Object[schema.getCorrelationDataNames().length],
+                        new Object[schema.getPayloadDataNames().length]);
+            }
+        }
+
+        @Override
+        public void send(LoadEvent loadEvent) {
+            Event event = pool[index];
+            index = index + 1 == poolSize ? 0 : index + 1;
+
+            event.setTimeStamp(loadEvent.getTimestamp());
+            copy(loadEvent.getMetaData(), event.getMetaData());
+            copy(loadEvent.getCorrelationData(), event.getCorrelationData());
+            copy(loadEvent.getPayloadData(), event.getPayloadData());
+            dataPublisher.publish(event);
+        }
+
+        private void copy(Object[] source, Object[] target) {
+            System.arraycopy(source, 0, target, 0, target.length);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
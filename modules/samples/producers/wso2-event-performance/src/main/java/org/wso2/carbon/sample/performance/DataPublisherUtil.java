@@ -18,6 +18,10 @@
 
 package org.wso2.carbon.sample.performance;
 
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.*;
 
 public class DataPublisherUtil {
@@ -39,4 +43,27 @@ public class DataPublisherUtil {
         return new File(dataAgentConfigPath).getAbsolutePath();
     }
 
+    /**
+     * @param protocol name of the agent, thrift or binary
+     * @return queue size plus batch size of the agent in the data agent config, the most events its data publisher
+     * holds before serialising them, or -1 if the config does not define the agent
+     */
+    public static int getAgentQueueCapacity(String protocol) throws Exception {
+        NodeList agents = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new File(getDataAgentConfigPath())).getElementsByTagName("Agent");
+        for (int i = 0; i < agents.getLength(); i++) {
+            Element agent = (Element) agents.item(i);
+            if (protocol.equalsIgnoreCase(getChildText(agent, "Name"))) {
+                return Integer.parseInt(getChildText(agent, "QueueSize"))
+                        + Integer.parseInt(getChildText(agent, "BatchSize"));
+            }
+        }
+        return -1;
+    }
+
+    private static String getChildText(Element element, String name) {
+        NodeList children = element.getElementsByTagName(name);
+        return children.getLength() == 0 ? null : children.item(0).getTextContent().trim();
+    }
+
 }
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.performance;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.wso2.carbon.databridge.commons.Attribute;
+import org.wso2.carbon.databridge.commons.AttributeType;
+import org.wso2.carbon.databridge.commons.StreamDefinition;
+import org.wso2.carbon.sample.load.EventSchema;
+import org.wso2.carbon.sample.load.LoadEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the lines of a recorded event file into events of a stream. Two line formats are supported:
+ * <ul>
+ * <li>csv: the recorded time in milliseconds followed by the values of the meta, correlation and payload attributes
+ * in the order of the stream definition, ex: 1453712400000,1453712400000,false,501,temperature,4.5,20.44,2.3,4.5.
+ * Values may be quoted with " and a quote inside a quoted value is written as "".</li>
+ * <li>json: the JSON event format of the CEP receivers with the recorded time added, ex:
+ * {"timestamp": 1453712400000, "event": {"metaData": {...}, "correlationData": {...}, "payloadData": {...}}}</li>
+ * </ul>
+ */
+public class RecordedEventParser {
+
+    public enum Format {
+        CSV, JSON
+    }
+
+    private final Format format;
+    private final EventSchema schema;
+    private final AttributeType[] metaDataTypes;
+    private final AttributeType[] correlationDataTypes;
+    private final AttributeType[] payloadDataTypes;
+    private final int timestampIndex;
+    private final List<String> values = new ArrayList<String>();
+    private final StringBuilder value = new StringBuilder();
+    private final JsonParser jsonParser = new JsonParser();
+
+    public RecordedEventParser(StreamDefinition streamDefinition, Format format) {
+        this.format = format;
+        this.schema = new EventSchema(streamDefinition.getName(), streamDefinition.getVersion(),
+                getNames(streamDefinition.getMetaData()), getNames(streamDefinition.getCorrelationData()),
+                getNames(streamDefinition.getPayloadData()));
+        this.metaDataTypes = getTypes(streamDefinition.getMetaData());
+        this.correlationDataTypes = getTypes(streamDefinition.getCorrelationData());
+        this.payloadDataTypes = getTypes(streamDefinition.getPayloadData());
+        this.timestampIndex = getTimestampIndex(schema.getMetaDataNames(), metaDataTypes);
+    }
+
+    public EventSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return index of the LONG meta attribute named "timestamp", which carries the event timestamp, or -1 if the
+     * stream has none
+     */
+    public int getTimestampIndex() {
+        return timestampIndex;
+    }
+
+    /**
+     * Sets the attributes of the given event from a recorded line.
+     *
+     * @param line  recorded line
+     * @param event event to update
+     * @return recorded time of the event in milliseconds
+     */
+    public long parse(String line, LoadEvent event) {
+        try {
+            return format == Format.CSV ? parseCsv(line, event) : parseJson(line, event);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid recorded event: " + line, e);
+        }
+    }
+
+    private long parseCsv(String line, LoadEvent event) {
+        splitCsv(line);
+        int expected = 1 + metaDataTypes.length + correlationDataTypes.length + payloadDataTypes.length;
+        if (values.size() != expected) {
+            throw new IllegalArgumentException("Expected " + expected + " values, but found " + values.size());
+        }
+        int index = 1;
+        index = setValues(event.getMetaData(), metaDataTypes, index);
+        index = setValues(event.getCorrelationData(), correlationDataTypes, index);
+        setValues(event.getPayloadData(), payloadDataTypes, index);
+        return Long.parseLong(values.get(0).trim());
+    }
+
+    private void splitCsv(String line) {
+        values.clear();
+        value.setLength(0);
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        value.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+    }
+
+    private int setValues(Object[] data, AttributeType[] types, int index) {
+        for (int i = 0; i < types.length; i++) {
+            data[i] = convert(values.get(index++), types[i]);
+        }
+        return index;
+    }
+
+    private Object convert(String value, AttributeType type) {
+        if (type == AttributeType.STRING) {
+            return value;
+        }
+        String trimmed = value.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        switch (type) {
+            case INT:
+                return Integer.valueOf(trimmed);
+            case LONG:
+                return Long.valueOf(trimmed);
+            case FLOAT:
+                return Float.valueOf(trimmed);
+            case DOUBLE:
+                return Double.valueOf(trimmed);
+            default:
+                return Boolean.valueOf(trimmed);
+        }
+    }
+
+    private long parseJson(String line, LoadEvent event) {
+        JsonObject root = jsonParser.parse(line).getAsJsonObject();
+        JsonObject eventObject = root.getAsJsonObject("event");
+        setValues(event.getMetaData(), schema.getMetaDataNames(), metaDataTypes,
+                eventObject.getAsJsonObject("metaData"));
+        setValues(event.getCorrelationData(), schema.getCorrelationDataNames(), correlationDataTypes,
+                eventObject.getAsJsonObject("correlationData"));
+        setValues(event.getPayloadData(), schema.getPayloadDataNames(), payloadDataTypes,
+                eventObject.getAsJsonObject("payloadData"));
+        return root.get("timestamp").getAsLong();
+    }
+
+    private void setValues(Object[] data, String[] names, AttributeType[] types, JsonObject section) {
+        for (int i = 0; i < types.length; i++) {
+            JsonElement element = section == null ? null : section.get(names[i]);
+            if (element == null || element.isJsonNull()) {
+                data[i] = null;
+                continue;
+            }
+            switch (types[i]) {
+                case INT:
+                    data[i] = element.getAsInt();
+                    break;
+                case LONG:
+                    data[i] = element.getAsLong();
+                    break;
+                case FLOAT:
+                    data[i] = element.getAsFloat();
+                    break;
+                case DOUBLE:
+                    data[i] = element.getAsDouble();
+                    break;
+                case BOOL:
+                    data[i] = element.getAsBoolean();
+                    break;
+                default:
+                    data[i] = element.getAsString();
+            }
+        }
+    }
+
+    private static int getTimestampIndex(String[] names, AttributeType[] types) {
+        for (int i = 0; i < names.length; i++) {
+            if ("timestamp".equals(names[i]) && types[i] == AttributeType.LONG) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String[] getNames(List<Attribute> attributes) {
+        if (attributes == null) {
+            return new String[0];
+        }
+        String[] names = new String[attributes.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = attributes.get(i).getName();
+        }
+        return names;
+    }
+
+    private static AttributeType[] getTypes(List<Attribute> attributes) {
+        if (attributes == null) {
+            return new AttributeType[0];
+        }
+        AttributeType[] types = new AttributeType[attributes.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = attributes.get(i).getType();
+        }
+        return types;
+    }
+}
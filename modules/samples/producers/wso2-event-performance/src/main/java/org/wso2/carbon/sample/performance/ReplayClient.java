@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.sample.performance;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.databridge.agent.AgentHolder;
+import org.wso2.carbon.databridge.agent.DataPublisher;
+import org.wso2.carbon.databridge.commons.StreamDefinition;
+import org.wso2.carbon.databridge.commons.utils.EventDefinitionConverterUtils;
+import org.wso2.carbon.sample.load.EventSender;
+import org.wso2.carbon.sample.load.LoadConfig;
+import org.wso2.carbon.sample.load.LoadEvent;
+import org.wso2.carbon.sample.load.MappedLineReader;
+import org.wso2.carbon.sample.load.RateLimiter;
+import org.wso2.carbon.sample.load.ThroughputReporter;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a recorded event file through a {@link DataPublisher}, keeping the recorded gaps between the events
+ * divided by a speed up factor: 1 replays in real time, 10 ten times faster and max without any pause. Recorded
+ * bursts therefore reach the server as bursts, unlike the uniform load of {@link Client}.
+ * <p/>
+ * Events are replayed in file order from a single thread. Their timestamps are the times at which the replay
+ * intended to send them, or the recorded times with -Dload.replay.keepTimestamps=true. A LONG meta attribute named
+ * "timestamp" is rewritten with the same time, as the generated events do.
+ */
+public class ReplayClient {
+    private static Log log = LogFactory.getLog(ReplayClient.class);
+
+    public static void main(String[] args) {
+        log.info(Arrays.deepToString(args));
+        try {
+            log.info("Starting WSO2 Event Replay Client");
+
+            AgentHolder.setConfigPath(DataPublisherUtil.getDataAgentConfigPath());
+            DataPublisherUtil.setTrustStoreParams();
+
+            String protocol = args[0];
+            String host = args[1];
+            String port = args[2];
+            String username = args[3];
+            String password = args[4];
+            File streamDefinitionFile = new File(args[5]);
+            File eventFile = new File(args[6]);
+            RecordedEventParser.Format format = RecordedEventParser.Format.valueOf(args[7].toUpperCase());
+            double speedUp = "max".equalsIgnoreCase(args[8]) ? 0 : Double.parseDouble(args[8]);
+            if (speedUp < 0) {
+                throw new IllegalArgumentException("Speed up factor should be positive or max, but found " + args[8]);
+            }
+
+            StreamDefinition streamDefinition = EventDefinitionConverterUtils.convertFromJson(
+                    new String(Files.readAllBytes(streamDefinitionFile.toPath()), "UTF-8").trim());
+            RecordedEventParser parser = new RecordedEventParser(streamDefinition, format);
+
+            //create data publisher
+            DataPublisher dataPublisher = new DataPublisher(protocol, "tcp://" + host + ":" + port, null, username,
+                    password);
+            LoadConfig config = LoadConfig.fromSystemProperties();
+            EventSender sender = new DataPublisherSenderFactory(dataPublisher, parser.getSchema(),
+                    DataPublisherSenderFactory.getPoolSize(config, protocol)).createSender(0);
+
+            replay(eventFile, parser, sender, speedUp, Boolean.getBoolean("load.replay.keepTimestamps"),
+                    config.getReportInterval());
+
+            dataPublisher.shutdownWithAgent();
+        } catch (Throwable e) {
+            log.error(e);
+        }
+    }
+
+    private static void replay(File eventFile, RecordedEventParser parser, EventSender sender, double speedUp,
+                               boolean keepTimestamps, long reportInterval) throws Exception {
+        ThroughputReporter reporter = new ThroughputReporter(1, speedUp > 0);
+        AtomicLong counter = reporter.getCounter(0);
+        AtomicLong maxLag = reporter.getMaxLag(0);
+        LoadEvent event = new LoadEvent(parser.getSchema());
+        int timestampIndex = keepTimestamps ? -1 : parser.getTimestampIndex();
+        MappedLineReader reader = new MappedLineReader(eventFile);
+        try {
+            long startTime = System.nanoTime();
+            long startTimeMillis = System.currentTimeMillis();
+            reporter.start(reportInterval);
+            long firstRecordedTime = 0;
+            long sent = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                long recordedTime = parser.parse(line, event);
+                if (sent == 0) {
+                    firstRecordedTime = recordedTime;
+                }
+                long timestamp;
+                if (speedUp > 0) {
+                    // Events recorded out of order are sent immediately
+                    long sendTime = startTime + (long) ((recordedTime - firstRecordedTime) * 1000000 / speedUp);
+                    RateLimiter.waitUntil(sendTime);
+                    long lag = System.nanoTime() - sendTime;
+                    if (lag > maxLag.get()) {
+                        maxLag.lazySet(lag);
+                    }
+                    timestamp = startTimeMillis + (sendTime - startTime) / 1000000;
+                } else {
+                    timestamp = System.currentTimeMillis();
+                }
+                if (keepTimestamps) {
+                    event.setTimestamp(recordedTime);
+                } else {
+                    event.setTimestamp(timestamp);
+                    if (timestampIndex >= 0) {
+                        event.getMetaData()[timestampIndex] = timestamp;
+                    }
+                }
+                event.setSequence(sent);
+                sender.send(event);
+                counter.lazySet(++sent);
+            }
+            sender.flush();
+        } finally {
+            reader.close();
+            sender.close();
+            reporter.stop(0);
+        }
+    }
+}